@@ -0,0 +1,30 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.Board;
+import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.boardcomponents.Move;
+
+/**
+ * Gracz komputerowy niezależny od silnika: przeszukiwanie alfa-beta ({@link ComputerPlayer})
+ * albo MCTS ({@link MctsPlayer}). Wystarcza do rozgrywania partii bez interfejsu graficznego,
+ * np. w {@link SelfPlayTournament}.
+ */
+public interface AiPlayer {
+    /**
+     * Wybiera ruch dla gracza na ruchu.
+     * @param board aktualny stan planszy.
+     * @return wybrany ruch lub null, jeśli brak ruchów.
+     */
+    Move getComputerMove(Board board);
+
+    /**
+     * Przygotowuje gracza do nowej partii podanym kolorem: usuwa wyniki przeszukiwań z poprzedniej
+     * partii, dzięki czemu jeden gracz może rozegrać wiele niezależnych partii.
+     */
+    void newGame(PlayerColor color);
+
+    /**
+     * Zwalnia wątki przeszukiwania.
+     */
+    void shutdown();
+}
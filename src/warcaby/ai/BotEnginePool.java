@@ -0,0 +1,296 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.PositionSnapshot;
+import warcaby.gamelogic.boardcomponents.Move;
+import warcaby.utils.GameConstants;
+import warcaby.utils.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wspólne zaplecze przeciwników komputerowych na serwerze. Wszystkie boty liczą ruchy na jednej
+ * ograniczonej puli wątków o niskim priorytecie i korzystają z jednej tablicy transpozycji, książki
+ * debiutowej i bazy końcówek, zamiast tworzyć własne wątki i tablice w każdej sesji gry. Dzięki temu
+ * nawet setki równoczesnych partii z botami zajmują najwyżej {@code threads} rdzeni, a wątki obsługi
+ * graczy-ludzi nie czekają na procesor.
+ *
+ * Każdy bot ma budżet procesora: ruch jest przeszukiwany najwyżej do limitu węzłów i czasu, a czas
+ * procesora zużyty przez bota w partii jest sumowany. Po wyczerpaniu budżetu partii bot dalej gra,
+ * ale przeszukuje tylko ułamek zwykłego limitu węzłów.
+ *
+ * Po swoim ruchu bot może myśleć na czasie przeciwnika ({@link Bot#startPondering}): przewiduje jego
+ * odpowiedź z tablicy transpozycji i przeszukuje pozycję po niej z limitami zwykłego ruchu. Myślenie
+ * jest liczone do budżetu partii i nie zaczyna się po jego wyczerpaniu. Gdy przeciwnik zagra
+ * przewidziany ruch, bot odpowiada wynikiem tego przeszukiwania zamiast liczyć ruch od nowa.
+ */
+public class BotEnginePool {
+    private static final Logger logger = new Logger(BotEnginePool.class);
+
+    private static final int GENERATION_INTERVAL = 64;  // Co tyle przeszukiwań wpisy tablicy zaczynają się starzeć
+    private static final int EXHAUSTED_BUDGET_DIVISOR = 16; // Ułamek limitów dla bota, który wyczerpał budżet partii
+    private static final long MIN_NODES_PER_MOVE = 1000;
+
+    private final ExecutorService executor;
+    private final int threadCount;
+    private final TranspositionTable transpositionTable;
+    // Bezstanowy, współdzielony przez wszystkie boty; wagi jak u komputera w GUI
+    private final Evaluator evaluator = new Evaluator(EvaluationWeights.loadIfExists(Paths.get(GameConstants.AI_EVALUATION_WEIGHTS)));
+    private final long moveTimeMillis;
+    private final long nodesPerMove;
+    private final long cpuBudgetNanos;
+    private final AtomicLong searches = new AtomicLong();
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private volatile OpeningBook openingBook;    // Książka debiutowa lub null
+    private volatile EndgameTablebase tablebase; // Baza końcówek lub null
+
+    /**
+     * @param threads Liczba wątków puli (0 = połowa rdzeni, co najmniej jeden).
+     * @param hashSizeMb Rozmiar wspólnej tablicy transpozycji.
+     * @param moveTimeMillis Limit czasu na ruch bota.
+     * @param nodesPerMove Limit węzłów na ruch bota.
+     * @param cpuBudgetMillis Czas procesora na całą partię jednego bota.
+     */
+    public BotEnginePool(int threads, int hashSizeMb, long moveTimeMillis, long nodesPerMove, long cpuBudgetMillis) {
+        this.threadCount = (threads > 0) ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.transpositionTable = new TranspositionTable(hashSizeMb);
+        this.moveTimeMillis = moveTimeMillis;
+        this.nodesPerMove = nodesPerMove;
+        this.cpuBudgetNanos = cpuBudgetMillis * 1_000_000L;
+        this.executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "warcaby-bot-engine");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY); // Wątki graczy-ludzi mają pierwszeństwo
+            return thread;
+        });
+    }
+
+    /**
+     * Ustawia książkę debiutową botów (null wyłącza korzystanie z książki).
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Ustawia bazę końcówek botów (null wyłącza korzystanie z bazy).
+     */
+    public void setTablebase(EndgameTablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Tworzy nowego bota (na jedną partię).
+     */
+    public Bot newBot() {
+        return new Bot();
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Zamyka pulę wątków. Trwające przeszukiwania kończą się po osiągnięciu swoich limitów.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private long currentThreadCpuNanos() {
+        return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Przeciwnik komputerowy jednej partii: własny silnik (bez własnych wątków) i licznik zużytego czasu procesora.
+     * Bot liczy najwyżej jeden ruch naraz.
+     */
+    public final class Bot {
+        private SearchEngine engine;          // Tworzony przy pierwszym ruchu
+        private final Object engineLock = new Object();
+        private AtomicBoolean pendingStop;    // Sygnał zatrzymania trwającego obliczenia lub null
+        private PositionSnapshot ponderPosition; // Przewidywana pozycja myślenia na czasie przeciwnika lub null
+        private CompletableFuture<Move> ponderMove; // Wynik myślenia na czasie przeciwnika lub null
+        private int ponderHits = 0;
+        private int ponderMisses = 0;
+        private final AtomicLong cpuNanos = new AtomicLong();
+
+        private Bot() {
+        }
+
+        /**
+         * Zleca wybór ruchu w podanej pozycji. Wcześniejsze, jeszcze trwające obliczenie jest anulowane.
+         * @return Przyszły ruch (null, jeśli brak ruchów); po {@link #cancel()} przyszły wynik jest anulowany.
+         */
+        public CompletableFuture<Move> requestMove(PositionSnapshot position) {
+            CompletableFuture<Move> future = new CompletableFuture<>();
+            AtomicBoolean stop = new AtomicBoolean();
+            synchronized (this) {
+                if (ponderMove != null) {
+                    if (position.equals(ponderPosition)) {
+                        ponderHits++;
+                        CompletableFuture<Move> hit = ponderMove; // Przeszukiwanie trwa dalej z własnymi limitami ruchu
+                        clearPondering();
+                        return hit;
+                    }
+                    ponderMisses++;
+                    clearPondering();
+                }
+                if (pendingStop != null) {
+                    pendingStop.set(true);
+                }
+                pendingStop = stop;
+            }
+            OpeningBook book = openingBook;
+            Move bookMove = (book != null) ? book.selectMove(position) : null;
+            if (bookMove != null) {
+                future.complete(bookMove);
+                return future;
+            }
+            executor.execute(() -> {
+                if (stop.get()) {
+                    future.cancel(false);
+                    return;
+                }
+                try {
+                    Move move = search(position, stop);
+                    if (stop.get()) {
+                        future.cancel(false); // Wynik przerwanego przeszukiwania nie jest już potrzebny
+                    } else {
+                        future.complete(move);
+                    }
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            return future;
+        }
+
+        /**
+         * Zaczyna myślenie na czasie przeciwnika w pozycji po ruchu bota. Nic nie robi, jeśli budżet
+         * partii jest wyczerpany albo odpowiedzi przeciwnika nie da się przewidzieć. Myślenie przerywa
+         * następne {@link #requestMove} z inną pozycją niż przewidziana albo {@link #cancel()}.
+         * @param position Pozycja po ruchu bota, na ruchu jest przeciwnik.
+         */
+        public void startPondering(PositionSnapshot position) {
+            if (isBudgetExhausted()) {
+                return;
+            }
+            CompletableFuture<Move> future = new CompletableFuture<>();
+            AtomicBoolean stop = new AtomicBoolean();
+            synchronized (this) {
+                if (pendingStop != null) {
+                    pendingStop.set(true);
+                }
+                pendingStop = stop;
+                ponderMove = future;
+                ponderPosition = null; // Do czasu przewidzenia odpowiedzi każdy ruch przeciwnika jest chybiony
+            }
+            executor.execute(() -> {
+                try {
+                    synchronized (engineLock) {
+                        PositionSnapshot predicted = stop.get() ? null : ComputerPlayer.predictReply(transpositionTable, position);
+                        synchronized (this) {
+                            if (predicted == null || pendingStop != stop) {
+                                future.cancel(false);
+                                if (ponderMove == future) {
+                                    clearPondering();
+                                }
+                                return;
+                            }
+                            ponderPosition = predicted;
+                        }
+                        Move move = searchLocked(predicted, stop);
+                        if (stop.get()) {
+                            future.cancel(false);
+                        } else {
+                            future.complete(move);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+
+        /**
+         * Przerywa trwające obliczenie i myślenie na czasie przeciwnika (np. po zakończeniu partii).
+         */
+        public synchronized void cancel() {
+            if (pendingStop != null) {
+                pendingStop.set(true);
+                pendingStop = null;
+            }
+            if (ponderMove != null) {
+                ponderMove.cancel(false);
+                clearPondering();
+            }
+        }
+
+        private void clearPondering() {
+            ponderPosition = null;
+            ponderMove = null;
+        }
+
+        /**
+         * Zwraca liczbę trafionych przewidywań ruchu przeciwnika.
+         */
+        public synchronized int getPonderHits() {
+            return ponderHits;
+        }
+
+        public synchronized int getPonderMisses() {
+            return ponderMisses;
+        }
+
+        /**
+         * Zwraca czas procesora zużyty przez bota w milisekundach.
+         */
+        public long getCpuMillis() {
+            return cpuNanos.get() / 1_000_000L;
+        }
+
+        public boolean isBudgetExhausted() {
+            return cpuNanos.get() >= cpuBudgetNanos;
+        }
+
+        /**
+         * Przeszukuje pozycję w wątku puli. Silnik bota nie jest bezpieczny wątkowo, więc przeszukiwania
+         * są szeregowane (następne czeka, aż przerwane poprzednie odda silnik).
+         */
+        private Move search(PositionSnapshot position, AtomicBoolean stop) {
+            synchronized (engineLock) {
+                return searchLocked(position, stop);
+            }
+        }
+
+        private Move searchLocked(PositionSnapshot position, AtomicBoolean stop) {
+            if (stop.get()) {
+                return null;
+            }
+            if (engine == null) {
+                engine = new SearchEngine(moveTimeMillis, evaluator, transpositionTable);
+                engine.setMaxDepth(GameConstants.AI_MAX_DEPTH);
+            }
+            boolean exhausted = isBudgetExhausted();
+            engine.setTimeLimitMillis(exhausted ? Math.max(1, moveTimeMillis / EXHAUSTED_BUDGET_DIVISOR) : moveTimeMillis);
+            engine.setNodeLimit(exhausted ? Math.max(MIN_NODES_PER_MOVE, nodesPerMove / EXHAUSTED_BUDGET_DIVISOR) : nodesPerMove);
+            engine.setTablebase(tablebase);
+            if (searches.incrementAndGet() % GENERATION_INTERVAL == 0) {
+                transpositionTable.newSearch(); // Tablica jest wspólna, więc wiek wpisów liczy się w seriach przeszukiwań
+            }
+
+            long cpuStart = currentThreadCpuNanos();
+            SearchResult result = engine.search(position, stop);
+            cpuNanos.addAndGet(currentThreadCpuNanos() - cpuStart);
+            logger.debug("BotEnginePool: " + result + ", czas procesora bota " + getCpuMillis() + " ms" + (exhausted ? " (budżet wyczerpany)" : ""));
+            return result.getBestMove();
+        }
+    }
+}
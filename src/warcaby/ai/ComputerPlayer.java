@@ -2,57 +2,388 @@ package warcaby.ai;
 
 import warcaby.gamelogic.Board;
 import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.PositionSnapshot;
+import warcaby.gamelogic.boardcomponents.IntMoveList;
 import warcaby.gamelogic.boardcomponents.Move;
+import warcaby.utils.GameConstants;
+import warcaby.utils.Logger;
 
-import java.util.List;
-import java.util.Random;
-import java.util.ArrayList;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Prosta implementacja "sztucznej inteligencji" komputera.
- * Wykonuje losowy ruch, ale z priorytetem dla bić, jeśli są dostępne.
+ * Gracz komputerowy. Ruch wybiera przeszukiwanie alfa-beta z iteracyjnym pogłębianiem
+ * ({@link ParallelSearch}, na {@link GameConstants#AI_THREADS} wątkach) w ramach stałego budżetu
+ * czasu na ruch, na kopii pozycji, a nie na planszy widocznej w GUI. Wagi oceny pozycji są wczytywane
+ * przy tworzeniu gracza z pliku {@link GameConstants#AI_EVALUATION_WEIGHTS} (wynik {@link EvaluationTuner}),
+ * a jeśli go nie ma, używane są wagi domyślne.
+ * Silnik (wraz z tablicą transpozycji) żyje tak długo jak gracz, więc wiedza z poprzednich ruchów
+ * partii jest wykorzystywana w kolejnych. Jeśli pozycja jest w książce debiutowej ({@link OpeningBook}),
+ * ruch z książki jest zwracany od razu, bez przeszukiwania, a końcówki z bazy {@link EndgameTablebase}
+ * są rozgrywane dokładnie, najkrótszą drogą do wygranej.
+ * Zwracany ruch jest pełnym ruchem: sekwencja bić jest wykonywana naraz przez Board.makeMove(Move).
+ * {@link #getComputerMoveAsync(Board)} liczy ruch w osobnym wątku, więc nie blokuje wątku Swing;
+ * trwające obliczenia przerywa {@link #cancelPendingMove()}. Obu wersji nie należy używać równocześnie,
+ * bo korzystają z tego samego silnika.
+ *
+ * Gdy ruch ma przeciwnik, {@link #startPondering(Board)} przewiduje jego odpowiedź (najlepszy ruch
+ * z tablicy transpozycji) i przeszukuje pozycję po niej w tle, bez limitu czasu. Jeśli przeciwnik
+ * zagra przewidziany ruch, {@link #getComputerMoveAsync(Board)} przejmuje to przeszukiwanie
+ * (czas myślenia na czasie przeciwnika wlicza się w limit na ruch), a w przeciwnym razie je przerywa.
+ * Pozostała praca i tak nie przepada, bo zostaje we wspólnej tablicy transpozycji.
  */
-public class ComputerPlayer {
+public class ComputerPlayer implements AiPlayer {
+    private static final Logger logger = new Logger(ComputerPlayer.class);
+
     private PlayerColor aiColor;
-    private Random random;
+    private final ParallelSearch engine;
+    private final ExecutorService searchExecutor; // Wątek, w którym liczone są ruchy asynchroniczne
+    private AtomicBoolean pendingStop;            // Sygnał zatrzymania trwającego obliczenia lub null
+    private CompletableFuture<Move> pendingMove;  // Przyszły wynik trwającego obliczenia lub null
+    private OpeningBook openingBook;              // Książka debiutowa lub null
+    private volatile long timeLimitMillis;        // Limit czasu na ruch (przeszukiwanie na czasie przeciwnika go nie ma)
+
+    private AtomicBoolean ponderStop;                    // Sygnał zatrzymania myślenia na czasie przeciwnika lub null
+    private CompletableFuture<SearchResult> ponderResult; // Wynik myślenia na czasie przeciwnika
+    private PositionSnapshot ponderPosition;             // Pozycja po przewidywanej odpowiedzi (null, dopóki nieznana)
+    private long ponderStartMillis;
+    private int ponderHits;
+    private int ponderMisses;
 
     public ComputerPlayer(PlayerColor aiColor) {
+        this(aiColor, GameConstants.AI_TIME_LIMIT_MS, GameConstants.AI_THREADS);
+    }
+
+    /**
+     * @param aiColor Kolor, którym gra komputer.
+     * @param timeLimitMillis Czas na jeden ruch; dłuższy czas oznacza silniejszą grę.
+     * @param threads Liczba wątków przeszukiwania (0 = wszystkie rdzenie).
+     */
+    public ComputerPlayer(PlayerColor aiColor, long timeLimitMillis, int threads) {
+        this(aiColor, timeLimitMillis, threads, EvaluationWeights.loadIfExists(Paths.get(GameConstants.AI_EVALUATION_WEIGHTS)));
+    }
+
+    /**
+     * @param weights Wagi oceny pozycji (domyślnie wczytywane z {@link GameConstants#AI_EVALUATION_WEIGHTS}, jeśli plik istnieje).
+     */
+    public ComputerPlayer(PlayerColor aiColor, long timeLimitMillis, int threads, EvaluationWeights weights) {
+        this(aiColor, timeLimitMillis, threads, weights, OpeningBook.openIfExists(Paths.get(GameConstants.AI_OPENING_BOOK)),
+                EndgameTablebase.openIfExists(Paths.get(GameConstants.AI_TABLEBASE)));
+    }
+
+    /**
+     * Wersja dla wielu graczy korzystających z tych samych, raz otwartych plików.
+     * @param openingBook Książka debiutowa lub null.
+     * @param tablebase Baza końcówek lub null.
+     */
+    public ComputerPlayer(PlayerColor aiColor, long timeLimitMillis, int threads, EvaluationWeights weights,
+                          OpeningBook openingBook, EndgameTablebase tablebase) {
         this.aiColor = aiColor;
-        this.random = new Random();
+        this.timeLimitMillis = timeLimitMillis;
+        this.engine = new ParallelSearch(threads, timeLimitMillis, GameConstants.AI_HASH_SIZE_MB, new Evaluator(weights));
+        this.engine.setMaxDepth(GameConstants.AI_MAX_DEPTH);
+        this.searchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "warcaby-ai");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.openingBook = openingBook;
+        this.engine.setTablebase(tablebase);
+    }
+
+    /**
+     * Ustawia książkę debiutową (null wyłącza korzystanie z książki).
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Ustawia bazę końcówek (null wyłącza korzystanie z bazy).
+     */
+    public void setTablebase(EndgameTablebase tablebase) {
+        engine.setTablebase(tablebase);
+    }
+
+    /**
+     * Ustawia limit czasu na ruch (0 = bez limitu).
+     */
+    public void setTimeLimitMillis(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+        engine.setTimeLimitMillis(timeLimitMillis);
+    }
+
+    /**
+     * Zwraca silnik, np. aby zmienić limit węzłów lub głębokości (limit czasu zmienia {@link #setTimeLimitMillis}).
+     */
+    public ParallelSearch getEngine() {
+        return engine;
     }
 
     /**
      * Wybiera ruch dla komputera.
-     * Najpierw szuka wszystkich dostępnych bić. Jeśli istnieją, losuje jedno z nich.
-     * Jeśli nie ma bić, losuje jeden ze wszystkich dostępnych zwykłych ruchów.
      * @param board aktualny stan planszy.
      * @return wybrany ruch lub null, jeśli brak ruchów.
      */
+    @Override
     public Move getComputerMove(Board board) {
         if (board.getCurrentPlayer() != aiColor) {
             System.err.println("ComputerPlayer: Próba wykonania ruchu, gdy nie jest tura AI!");
             return null;
         }
+        if (board.getWinner() != null) {
+            return null;
+        }
+        stopPondering();
 
-        List<Move> allValidMoves = board.getAllValidMovesForPlayer(aiColor);
+        PositionSnapshot position = board.snapshot();
+        Move bookMove = getBookMove(position);
+        if (bookMove != null) {
+            return bookMove;
+        }
+        SearchResult result = engine.search(position);
+        logger.info("ComputerPlayer: " + result);
+        return result.getBestMove();
+    }
 
-        if (allValidMoves == null || allValidMoves.isEmpty()) {
+    /**
+     * Asynchronicznie wybiera ruch dla komputera. Pozycja jest zapamiętywana (jako migawka) w chwili
+     * wywołania, a samo przeszukiwanie odbywa się w osobnym wątku i trwa najwyżej limit czasu silnika.
+     * Wcześniejsze, jeszcze trwające obliczenie jest anulowane. Jeśli pozycja jest tą, którą komputer
+     * przeszukuje na czasie przeciwnika, przeszukiwanie jest przejmowane, a nie zaczynane od nowa.
+     * @param board aktualny stan planszy (czytany tylko w wątku wywołującym).
+     * @return Przyszły wynik: wybrany ruch lub null, jeśli brak ruchów. Po {@link #cancelPendingMove()}
+     *         przyszły wynik jest anulowany.
+     */
+    public CompletableFuture<Move> getComputerMoveAsync(Board board) {
+        if (board.getCurrentPlayer() != aiColor || board.getWinner() != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        cancelPendingMove();
+        PositionSnapshot position = board.snapshot();
+        CompletableFuture<Move> ponderedMove = takePonderHit(position);
+        if (ponderedMove != null) {
+            return ponderedMove;
+        }
+        stopPondering();
+        Move bookMove = getBookMove(position);
+        if (bookMove != null) {
+            return CompletableFuture.completedFuture(bookMove); // Ruch z książki nie wymaga obliczeń
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        CompletableFuture<Move> future = new CompletableFuture<>();
+        synchronized (this) {
+            pendingStop = stop;
+            pendingMove = future;
+        }
+        searchExecutor.execute(() -> {
+            if (stop.get()) {
+                future.cancel(false);
+                return;
+            }
+            try {
+                SearchResult result = engine.search(position, stop);
+                logger.info("ComputerPlayer: " + result);
+                if (stop.get()) {
+                    future.cancel(false); // Wynik przerwanego przeszukiwania nie jest już potrzebny
+                } else {
+                    future.complete(result.getBestMove());
+                }
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    if (pendingStop == stop) {
+                        pendingStop = null;
+                        pendingMove = null;
+                    }
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Anuluje trwające obliczenie ruchu (np. po rozpoczęciu nowej gry lub poddaniu partii).
+     * Przyszły wynik jest anulowany od razu, a przeszukiwanie zatrzymuje się w ciągu kilku milisekund.
+     */
+    public synchronized void cancelPendingMove() {
+        if (pendingStop != null) {
+            pendingStop.set(true);
+            pendingMove.cancel(false);
+            pendingStop = null;
+            pendingMove = null;
+        }
+    }
+
+    /**
+     * Zaczyna myślenie na czasie przeciwnika: przewiduje jego odpowiedź i przeszukuje pozycję po niej
+     * w tle, aż do {@link #getComputerMoveAsync(Board)} albo {@link #stopPondering()}. Jeśli odpowiedzi
+     * nie da się przewidzieć (np. brak wpisu w tablicy transpozycji), nic się nie dzieje.
+     * @param board aktualny stan planszy, na ruchu musi być przeciwnik komputera.
+     */
+    public void startPondering(Board board) {
+        if (board.getCurrentPlayer() == aiColor || board.getWinner() != null) {
+            return;
+        }
+        stopPondering();
+        PositionSnapshot position = board.snapshot();
+        AtomicBoolean stop = new AtomicBoolean();
+        CompletableFuture<SearchResult> result = new CompletableFuture<>();
+        synchronized (this) {
+            ponderStop = stop;
+            ponderResult = result;
+            ponderPosition = null;
+        }
+        searchExecutor.execute(() -> {
+            PositionSnapshot predicted = stop.get() ? null : predictReply(engine.getTranspositionTable(), position);
+            synchronized (this) {
+                if (predicted == null || ponderStop != stop) {
+                    result.cancel(false);
+                    if (ponderStop == stop) {
+                        clearPondering();
+                    }
+                    return;
+                }
+                ponderPosition = predicted;
+                ponderStartMillis = System.currentTimeMillis();
+            }
+            logger.debug("ComputerPlayer: Myślenie na czasie przeciwnika, przewidywana pozycja:\n" + predicted);
+            engine.setTimeLimitMillis(0); // Przeszukiwanie trwa do ruchu przeciwnika
+            try {
+                result.complete(engine.search(predicted, stop));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                engine.setTimeLimitMillis(timeLimitMillis);
+            }
+        });
+    }
+
+    /**
+     * Przerywa myślenie na czasie przeciwnika (np. po rozpoczęciu nowej gry lub poddaniu partii).
+     */
+    public synchronized void stopPondering() {
+        if (ponderStop != null) {
+            ponderStop.set(true);
+            ponderResult.cancel(false);
+            clearPondering();
+        }
+    }
+
+    /**
+     * Jeśli przeciwnik zagrał przewidziany ruch, przejmuje przeszukiwanie na jego czasie: kończy je,
+     * gdy łączny czas myślenia osiągnie limit na ruch.
+     * @return Przyszły ruch albo null, jeśli przewidywanie było chybione lub nie było myślenia.
+     */
+    private synchronized CompletableFuture<Move> takePonderHit(PositionSnapshot position) {
+        if (ponderStop == null) {
             return null;
         }
+        if (ponderPosition == null || !ponderPosition.equals(position)) {
+            ponderMisses++;
+            return null;
+        }
+        ponderHits++;
+        AtomicBoolean stop = ponderStop;
+        CompletableFuture<SearchResult> result = ponderResult;
+        long remaining = timeLimitMillis - (System.currentTimeMillis() - ponderStartMillis);
+        clearPondering();
+
+        CompletableFuture<Move> future = new CompletableFuture<>();
+        pendingStop = stop;
+        pendingMove = future;
+        if (timeLimitMillis > 0) {
+            if (remaining <= 0) {
+                stop.set(true); // Przeciwnik myślał dłużej niż limit: ruch jest gotowy od razu
+            } else {
+                CompletableFuture.delayedExecutor(remaining, TimeUnit.MILLISECONDS).execute(() -> stop.set(true));
+            }
+        }
+        result.whenComplete((searchResult, error) -> {
+            synchronized (this) {
+                if (pendingStop == stop) {
+                    pendingStop = null;
+                    pendingMove = null;
+                }
+            }
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                logger.info("ComputerPlayer: (trafione przewidywanie) " + searchResult);
+                future.complete(searchResult.getBestMove()); // Bez efektu, jeśli ruch anulowano
+            }
+        });
+        return future;
+    }
+
+    private void clearPondering() {
+        ponderStop = null;
+        ponderResult = null;
+        ponderPosition = null;
+    }
 
-        // Zbierz wszystkie ruchy, które są biciami.
-        List<Move> jumps = new ArrayList<>();
-        for (Move move : allValidMoves) {
-            if (move.isJump) {
-                jumps.add(move);
+    /**
+     * Przewiduje odpowiedź przeciwnika jako najlepszy ruch z tablicy transpozycji.
+     * @return Pozycja po przewidywanej odpowiedzi lub null.
+     */
+    static PositionSnapshot predictReply(TranspositionTable transpositionTable, PositionSnapshot position) {
+        int move = TranspositionTable.moveOf(transpositionTable.probe(position.getPositionKey()));
+        if (move == 0) {
+            return null;
+        }
+        IntMoveList legalMoves = OpeningBook.generateLegalMoves(position);
+        for (int i = 0; i < legalMoves.size(); i++) {
+            if (legalMoves.get(i) == move) {
+                return position.afterMove(legalMoves.toMove(i));
             }
         }
+        return null;
+    }
 
-        // Bicia mają priorytet.
-        if (!jumps.isEmpty()) {
-            return jumps.get(random.nextInt(jumps.size()));
-        } else {
-            return allValidMoves.get(random.nextInt(allValidMoves.size()));
+    /**
+     * Zwraca liczbę trafionych przewidywań ruchu przeciwnika.
+     */
+    public synchronized int getPonderHits() {
+        return ponderHits;
+    }
+
+    public synchronized int getPonderMisses() {
+        return ponderMisses;
+    }
+
+    private Move getBookMove(PositionSnapshot position) {
+        OpeningBook book = openingBook;
+        if (book == null) {
+            return null;
+        }
+        Move move = book.selectMove(position);
+        if (move != null) {
+            logger.info("ComputerPlayer: Ruch z książki debiutowej: " + move);
         }
+        return move;
+    }
+
+    @Override
+    public void newGame(PlayerColor color) {
+        cancelPendingMove();
+        stopPondering();
+        aiColor = color;
+        engine.clear();
+    }
+
+    /**
+     * Zwalnia wątki przeszukiwania (np. przy zamykaniu gry z komputerem).
+     */
+    @Override
+    public void shutdown() {
+        cancelPendingMove();
+        stopPondering();
+        engine.shutdown();
+        searchExecutor.shutdownNow();
     }
-}
\ No newline at end of file
+}
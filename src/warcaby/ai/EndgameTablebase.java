@@ -0,0 +1,161 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.PositionSnapshot;
+import warcaby.utils.GameConstants;
+import warcaby.utils.Logger;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Baza końcówek: wynik i odległość do końca partii dla każdej pozycji z niewielką liczbą pionków,
+ * odczytywane z pliku odwzorowanego w pamięci przez {@link FileChannel#map}. Odczyty nie zmieniają
+ * stanu buforów, więc jedna baza może być używana równocześnie przez wiele wątków (silniki
+ * {@link ParallelSearch}, partie na serwerze).
+ *
+ * Każda pozycja ma jeden bajt: 0 oznacza remis, a inna wartość to liczba pełnych ruchów do końca
+ * partii plus 1. Odległość parzysta oznacza przegraną gracza na ruchu, nieparzysta - wygraną
+ * (gracz na ruchu wykonuje ostatni ruch partii).
+ *
+ * Format pliku (kolejność bajtów big-endian):
+ * <pre>
+ * nagłówek:  int MAGIC, int największa liczba pionków, int flagi zasad, int liczba wycinków
+ * katalog:   int sygnatura wycinka, long przesunięcie danych, long długość danych
+ * dane:      bajt na pozycję, w kolejności indeksów {@link TablebaseIndex}
+ * </pre>
+ * Plik tworzy {@link EndgameTablebaseGenerator}.
+ */
+public class EndgameTablebase {
+    public static final int NOT_FOUND = -1; // Pozycji nie ma w bazie
+    public static final int DRAW = 0;
+
+    static final int MAGIC = 0x57544231; // "WTB1"
+    static final int HEADER_SIZE = 16;
+    static final int DIRECTORY_ENTRY_SIZE = 20;
+    static final int FLAG_MAXIMUM_CAPTURE = 1;
+    static final int MAX_PIECES = 6; // Przy 7 pionkach wycinek 2+2 vs 2+1 ma ok. 4,2 mld pozycji: za dużo na tablicę i jeden bufor
+    static final int MAX_DISTANCE = 254; // Największa odległość mieszcząca się w bajcie
+
+    private static final Logger logger = new Logger(EndgameTablebase.class);
+
+    private final int maxPieces;
+    private final boolean maximumCaptureRule;
+    private final MappedByteBuffer[] slices = new MappedByteBuffer[1 << 16]; // sygnatura -> dane wycinka
+
+    private EndgameTablebase(FileChannel channel) throws IOException {
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE));
+        header.order(ByteOrder.BIG_ENDIAN);
+        if (header.capacity() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("Plik nie jest bazą końcówek.");
+        }
+        this.maxPieces = header.getInt(4);
+        this.maximumCaptureRule = (header.getInt(8) & FLAG_MAXIMUM_CAPTURE) != 0;
+        int sliceCount = header.getInt(12);
+        if (sliceCount < 0 || HEADER_SIZE + (long) sliceCount * DIRECTORY_ENTRY_SIZE > channel.size()) {
+            throw new IOException("Baza końcówek jest uszkodzona (niepełny katalog).");
+        }
+
+        MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) sliceCount * DIRECTORY_ENTRY_SIZE);
+        directory.order(ByteOrder.BIG_ENDIAN);
+        for (int i = 0; i < sliceCount; i++) {
+            int signature = directory.getInt(i * DIRECTORY_ENTRY_SIZE);
+            long offset = directory.getLong(i * DIRECTORY_ENTRY_SIZE + 4);
+            long length = directory.getLong(i * DIRECTORY_ENTRY_SIZE + 12);
+            if ((signature & ~0xFFFF) != 0 || length != TablebaseIndex.sliceSize(signature) || offset + length > channel.size()) {
+                throw new IOException("Baza końcówek jest uszkodzona (wycinek " + EndgameTablebaseGenerator.describe(signature) + ").");
+            }
+            slices[signature] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length); // Każdy wycinek mapowany osobno (limit 2 GB bufora)
+        }
+    }
+
+    /**
+     * Otwiera bazę końcówek, odwzorowując plik w pamięci.
+     * @throws IOException jeśli pliku nie da się odczytać lub nie jest bazą końcówek.
+     */
+    public static EndgameTablebase open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new EndgameTablebase(channel); // Odwzorowania pozostają ważne po zamknięciu kanału
+        }
+    }
+
+    /**
+     * Otwiera bazę, jeśli plik istnieje i została wygenerowana dla zasad gry z {@link GameConstants};
+     * w przeciwnym razie (i przy błędach, które są logowane) wynikiem jest null.
+     */
+    public static EndgameTablebase openIfExists(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            EndgameTablebase tablebase = open(path);
+            if (tablebase.maximumCaptureRule != GameConstants.MAXIMUM_CAPTURE_RULE) {
+                logger.warning("EndgameTablebase: Baza " + path + " została wygenerowana dla innej zasady bicia, pomijam ją.");
+                return null;
+            }
+            logger.info("EndgameTablebase: Wczytano bazę końcówek " + path + " (do " + tablebase.getMaxPieces() + " pionków).");
+            return tablebase;
+        } catch (IOException e) {
+            logger.error("EndgameTablebase: Nie udało się otworzyć bazy " + path, e);
+            return null;
+        }
+    }
+
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    public boolean isMaximumCaptureRule() {
+        return maximumCaptureRule;
+    }
+
+    /**
+     * Odczytuje wynik pozycji z początku tury.
+     * @return {@link #NOT_FOUND}, jeśli pozycji nie ma w bazie, {@link #DRAW} przy remisie,
+     *         a w pozostałych przypadkach kod do odczytu przez {@link #isWin}, {@link #isLoss} i {@link #distance}.
+     */
+    public int probe(int white, int black, int kings, PlayerColor sideToMove) {
+        if (white == 0 || black == 0 || Integer.bitCount(white | black) > maxPieces) {
+            return NOT_FOUND;
+        }
+        MappedByteBuffer slice = slices[TablebaseIndex.signatureOf(white, black, kings)];
+        if (slice == null) {
+            return NOT_FOUND;
+        }
+        return slice.get((int) TablebaseIndex.index(white, black, kings, sideToMove == PlayerColor.BLACK)) & 0xFF;
+    }
+
+    /**
+     * Odczytuje wynik pozycji z migawki; pozycje w trakcie wielokrotnego bicia nie są w bazie.
+     */
+    public int probe(PositionSnapshot position) {
+        if (position.isJumpMadeThisTurn()) {
+            return NOT_FOUND;
+        }
+        return probe(position.getWhiteMask(), position.getBlackMask(), position.getKingsMask(), position.getCurrentPlayer());
+    }
+
+    public static boolean isWin(int code) {
+        return code > 0 && (distance(code) & 1) == 1;
+    }
+
+    public static boolean isLoss(int code) {
+        return code > 0 && (distance(code) & 1) == 0;
+    }
+
+    /**
+     * Liczba pełnych ruchów (obu graczy) do końca partii przy najlepszej grze.
+     */
+    public static int distance(int code) {
+        return code - 1;
+    }
+
+    static int encode(int distance) {
+        return distance + 1;
+    }
+}
@@ -0,0 +1,388 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.boardcomponents.Bitboards;
+import warcaby.gamelogic.boardcomponents.BoardState;
+import warcaby.gamelogic.boardcomponents.IntMoveList;
+import warcaby.gamelogic.boardcomponents.MoveExecutor;
+import warcaby.gamelogic.boardcomponents.MoveLogic;
+import warcaby.gamelogic.boardcomponents.TurnManager;
+import warcaby.utils.ApplicationConfig;
+import warcaby.utils.GameConstants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generuje bazę końcówek {@link EndgameTablebase}: dla każdej pozycji z co najwyżej {@code maxPieces}
+ * pionkami i damkami wyznacza wynik (wygrana, przegrana, remis) i liczbę pełnych ruchów do końca partii
+ * przy najlepszej grze obu stron. Ruchy pochodzą z {@link MoveLogic#generateCompleteMoves}, więc baza
+ * stosuje dokładnie te same zasady co gra (bicia damek z dowolnej odległości, obowiązek bicia
+ * największej liczby pionków).
+ *
+ * Wycinki materiału są rozwiązywane od najmniejszej liczby pionków, a przy tej samej liczbie od
+ * najmniejszej liczby zwykłych pionków. Bicie zmniejsza liczbę pionków, a promocja liczbę zwykłych
+ * pionków, więc ruch wychodzący z wycinka zawsze prowadzi do wycinka już rozwiązanego.
+ * Wycinek jest rozwiązywany przebiegami: w przebiegu {@code p} pozycja jest wygrana, jeśli któryś
+ * ruch prowadzi do pozycji przegranej w {@code p - 1} ruchach, a przegrana, jeśli wszystkie ruchy
+ * prowadzą do pozycji wygranych w co najwyżej {@code p - 1} ruchach. Pozycje nierozstrzygnięte, gdy
+ * przebieg niczego nie zmienia, są remisami. Każdy przebieg jest dzielony na zakresy indeksów
+ * liczone równolegle, każdy wątek na własnej kopii planszy. Jeśli po {@link EndgameTablebase#MAX_DISTANCE}
+ * przebiegach wycinek wciąż się zmienia, generowanie kończy się błędem zamiast zapisać resztę jako remisy.
+ *
+ * Na stercie jest tylko rozwiązywany wycinek: rozwiązany trafia od razu na swoje miejsce w pliku
+ * wynikowym i dalej jest czytany z odwzorowania tego pliku w pamięci, więc pamięć zajmują tylko
+ * strony potrzebne do odczytu ruchów wychodzących z bieżącego wycinka. Nagłówek z {@code MAGIC}
+ * jest zapisywany na końcu przez {@link #finish()}, więc przerwane generowanie nie zostawia pliku,
+ * który dałoby się otworzyć jako bazę.
+ *
+ * Użycie: {@code EndgameTablebaseGenerator <baza.bin> [--pieces N] [--threads N]}
+ */
+public class EndgameTablebaseGenerator implements Closeable {
+    private static final int CHUNK_SIZE = 1 << 14; // Liczba pozycji w jednym zadaniu przebiegu
+
+    private final int maxPieces;
+    private final int threads;
+    private final boolean maximumCaptureRule;
+    private final FileChannel channel;
+    private final List<Integer> signatures;
+    private final long[] offsets = new long[1 << 16]; // sygnatura -> przesunięcie danych wycinka w pliku
+    private final MappedByteBuffer[] slices = new MappedByteBuffer[1 << 16]; // sygnatura -> zapisany wycinek
+    private final int[] sliceDistances = new int[1 << 16]; // sygnatura -> największa odległość w wycinku
+    private final ThreadLocal<Worker> workers;
+    private int maxDistance = 0; // Największa odległość w rozwiązanych wycinkach
+
+    /**
+     * Tworzy plik wynikowy i zapisuje w nim katalog wycinków.
+     * @param path Plik bazy (nadpisywany).
+     * @param maxPieces Największa liczba pionków na planszy (obu stron razem).
+     * @param threads Liczba wątków (0 oznacza liczbę dostępnych rdzeni).
+     * @throws IllegalArgumentException jeśli liczba pionków jest spoza zakresu 2-{@link EndgameTablebase#MAX_PIECES}.
+     */
+    public EndgameTablebaseGenerator(Path path, int maxPieces, int threads) throws IOException {
+        if (maxPieces < 2 || maxPieces > EndgameTablebase.MAX_PIECES) {
+            throw new IllegalArgumentException("Liczba pionków musi być z zakresu 2-" + EndgameTablebase.MAX_PIECES + ".");
+        }
+        this.maxPieces = maxPieces;
+        this.threads = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+        this.maximumCaptureRule = GameConstants.MAXIMUM_CAPTURE_RULE;
+        this.workers = ThreadLocal.withInitial(() -> new Worker(maximumCaptureRule));
+        this.signatures = getSignatures();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            writeDirectory();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Zwraca sygnatury wszystkich wycinków w kolejności rozwiązywania.
+     */
+    public List<Integer> getSignatures() {
+        List<Integer> signatures = new ArrayList<>();
+        for (int whiteMen = 0; whiteMen <= maxPieces; whiteMen++) {
+            for (int whiteKings = 0; whiteMen + whiteKings <= maxPieces; whiteKings++) {
+                for (int blackMen = 0; whiteMen + whiteKings + blackMen <= maxPieces; blackMen++) {
+                    for (int blackKings = 0; whiteMen + whiteKings + blackMen + blackKings <= maxPieces; blackKings++) {
+                        if (whiteMen + whiteKings > 0 && blackMen + blackKings > 0) {
+                            signatures.add(TablebaseIndex.signature(whiteMen, whiteKings, blackMen, blackKings));
+                        }
+                    }
+                }
+            }
+        }
+        signatures.sort(Comparator.<Integer>comparingInt(TablebaseIndex::pieceCount)
+                .thenComparingInt(s -> (s & 0xF) + ((s >>> 8) & 0xF)));
+        return signatures;
+    }
+
+    /**
+     * Rozwiązuje wszystkie wycinki i kończy plik.
+     */
+    public void generate() throws IOException {
+        for (int signature : signatures) {
+            solveSlice(signature);
+        }
+        finish();
+    }
+
+    /**
+     * Rozwiązuje jeden wycinek i zapisuje go do pliku. Wszystkie wycinki, do których prowadzą bicia
+     * i promocje, muszą być już rozwiązane (zapewnia to kolejność z {@link #getSignatures()}).
+     * @return Liczba pozycji wygranych i przegranych w wycinku.
+     * @throws IllegalStateException jeśli wycinek nie ustalił się w {@link EndgameTablebase#MAX_DISTANCE} przebiegach.
+     */
+    public long solveSlice(int signature) throws IOException {
+        byte[] values = new byte[(int) TablebaseIndex.sliceSize(signature)]; // Rozmiar sprawdzony w writeDirectory
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "warcaby-tablebase");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int dependencyDistance = dependencyDistance(signature);
+        int sliceDistance = 0;
+        long decided = 0;
+        boolean stable = false;
+        try {
+            for (int pass = 0; pass <= EndgameTablebase.MAX_DISTANCE && !stable; pass++) {
+                long resolved = runPass(pool, signature, values, pass);
+                decided += resolved;
+                // Nic się nie zmieniło i żaden ruch nie prowadzi do dłuższej końcówki: reszta to remisy
+                stable = resolved == 0 && pass > dependencyDistance;
+                if (resolved > 0) {
+                    sliceDistance = pass;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (!stable) {
+            throw new IllegalStateException("Wycinek " + describe(signature) + " nie ustalił się w "
+                    + EndgameTablebase.MAX_DISTANCE + " przebiegach; odległości nie mieszczą się w formacie bazy.");
+        }
+        writeSlice(signature, values);
+        sliceDistances[signature] = sliceDistance;
+        maxDistance = Math.max(maxDistance, sliceDistance);
+        return decided;
+    }
+
+    /**
+     * Największa odległość w wycinkach, do których można przejść jednym ruchem z podanego wycinka
+     * (bicie dowolnej liczby pionków przeciwnika, ewentualnie z promocją jednego pionka gracza).
+     */
+    private int dependencyDistance(int signature) {
+        int result = 0;
+        for (int mover = 0; mover < 2; mover++) {
+            int ownShift = (mover == 0) ? 0 : 8;
+            int opponentShift = 8 - ownShift;
+            int opponentMen = (signature >>> opponentShift) & 0xF;
+            int opponentKings = (signature >>> (opponentShift + 4)) & 0xF;
+            for (int capturedMen = 0; capturedMen <= opponentMen; capturedMen++) {
+                for (int capturedKings = 0; capturedKings <= opponentKings; capturedKings++) {
+                    int child = signature - (capturedMen << opponentShift) - (capturedKings << (opponentShift + 4));
+                    result = Math.max(result, sliceDistances[child]);
+                    if (((signature >>> ownShift) & 0xF) > 0) {
+                        int promoted = child - (1 << ownShift) + (1 << (ownShift + 4));
+                        result = Math.max(result, sliceDistances[promoted]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private long runPass(ExecutorService pool, int signature, byte[] values, int pass) {
+        AtomicLong resolved = new AtomicLong();
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int start = 0; start < values.length; start += CHUNK_SIZE) {
+            int from = start;
+            int to = Math.min(values.length, start + CHUNK_SIZE);
+            tasks.add(pool.submit(() -> resolved.addAndGet(workers.get().solveRange(signature, values, from, to, pass))));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get(); // Zakończenie zadań gwarantuje widoczność zapisów w następnym przebiegu
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Generowanie bazy końcówek przerwane.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Błąd generowania bazy końcówek.", e.getCause());
+        }
+        return resolved.get();
+    }
+
+    /**
+     * Kod pozycji powstałej po ruchu (z perspektywy gracza, który ma w niej ruch). Ruchy bez bicia
+     * i promocji zostają w rozwiązywanym wycinku i czytają jego częściowe wyniki.
+     */
+    private int childCode(int white, int black, int kings, boolean blackToMove, int signature, byte[] values) {
+        int moverPieces = blackToMove ? black : white;
+        if (moverPieces == 0) {
+            return EndgameTablebase.encode(0); // Gracz bez pionków przegrał
+        }
+        int childSignature = TablebaseIndex.signatureOf(white, black, kings);
+        int index = (int) TablebaseIndex.index(white, black, kings, blackToMove);
+        return ((childSignature == signature) ? values[index] : slices[childSignature].get(index)) & 0xFF;
+    }
+
+    /**
+     * Zapisuje nagłówek bez {@code MAGIC} i katalog wycinków; przesunięcia wynikają z rozmiarów wycinków.
+     */
+    private void writeDirectory() throws IOException {
+        long offset = EndgameTablebase.HEADER_SIZE + (long) signatures.size() * EndgameTablebase.DIRECTORY_ENTRY_SIZE;
+        ByteBuffer directory = ByteBuffer.allocate(EndgameTablebase.HEADER_SIZE + signatures.size() * EndgameTablebase.DIRECTORY_ENTRY_SIZE);
+        directory.order(ByteOrder.BIG_ENDIAN);
+        directory.putInt(0); // MAGIC zapisuje finish()
+        directory.putInt(maxPieces);
+        directory.putInt(maximumCaptureRule ? EndgameTablebase.FLAG_MAXIMUM_CAPTURE : 0);
+        directory.putInt(signatures.size());
+        for (int signature : signatures) {
+            long length = TablebaseIndex.sliceSize(signature);
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Wycinek " + describe(signature) + " jest za duży (" + length + " pozycji).");
+            }
+            directory.putInt(signature);
+            directory.putLong(offset);
+            directory.putLong(length);
+            offsets[signature] = offset;
+            offset += length;
+        }
+        directory.flip();
+        writeFully(directory, 0);
+    }
+
+    /**
+     * Zapisuje rozwiązany wycinek na jego miejsce w pliku i odwzorowuje go do odczytu przez następne wycinki.
+     */
+    private void writeSlice(int signature, byte[] values) throws IOException {
+        writeFully(ByteBuffer.wrap(values), offsets[signature]);
+        slices[signature] = channel.map(FileChannel.MapMode.READ_ONLY, offsets[signature], values.length);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Zapisuje {@code MAGIC} w nagłówku, gdy wszystkie wycinki są już w pliku.
+     */
+    public void finish() throws IOException {
+        for (int signature : signatures) {
+            if (slices[signature] == null) {
+                throw new IllegalStateException("Wycinek " + describe(signature) + " nie został rozwiązany.");
+            }
+        }
+        ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN).putInt(EndgameTablebase.MAGIC);
+        magic.flip();
+        writeFully(magic, 0);
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close(); // Odwzorowania wycinków pozostają ważne do zwolnienia przez GC
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Opis wycinka, np. "2+1 vs 0+1" (pionki+damki białych vs czarnych).
+     */
+    public static String describe(int signature) {
+        return (signature & 0xF) + "+" + ((signature >>> 4) & 0xF) + " vs " + ((signature >>> 8) & 0xF) + "+" + ((signature >>> 12) & 0xF);
+    }
+
+    /**
+     * Stan jednego wątku generatora: własna plansza, generator ruchów i lista ruchów.
+     */
+    private final class Worker {
+        private final BoardState boardState = new BoardState();
+        private final TurnManager turnManager = new TurnManager(boardState);
+        private final MoveLogic moveLogic = new MoveLogic(boardState, turnManager);
+        private final MoveExecutor moveExecutor = new MoveExecutor(boardState, turnManager, moveLogic);
+        private final IntMoveList moves = new IntMoveList();
+        private final int[] position = new int[4];
+
+        Worker(boolean maximumCaptureRule) {
+            moveLogic.setMaximumCaptureRule(maximumCaptureRule);
+        }
+
+        long solveRange(int signature, byte[] values, int from, int to, int pass) {
+            long resolved = 0;
+            for (int index = from; index < to; index++) {
+                if (values[index] != 0) {
+                    continue;
+                }
+                TablebaseIndex.decode(signature, index, position);
+                int white = position[0];
+                int black = position[1];
+                int kings = position[2];
+                if ((white & ~kings & Bitboards.ROW_0) != 0 || (black & ~kings & Bitboards.ROW_7) != 0) {
+                    continue; // Pionek na własnym polu promocji: pozycja niemożliwa
+                }
+                PlayerColor mover = (position[3] != 0) ? PlayerColor.BLACK : PlayerColor.WHITE;
+                boardState.setPosition(white, black, kings);
+                turnManager.restore(mover, false, -1, -1);
+                moveLogic.generateCompleteMoves(mover, moves);
+
+                boolean allChildrenWon = true;
+                boolean childLost = false;
+                for (int i = 0; i < moves.size() && !childLost; i++) {
+                    moveExecutor.make(moves.get(i), moves.getCapturedMask(i));
+                    int code = childCode(boardState.getWhiteMask(), boardState.getBlackMask(), boardState.getKingsMask(),
+                            mover == PlayerColor.WHITE, signature, values);
+                    moveExecutor.unmake();
+                    boolean known = code != 0 && EndgameTablebase.distance(code) < pass; // Wyniki z tego przebiegu jeszcze się nie liczą
+                    if (known && EndgameTablebase.isLoss(code)) {
+                        childLost = true;
+                    } else if (!known) {
+                        allChildrenWon = false;
+                    }
+                }
+                if (childLost || allChildrenWon) {
+                    values[index] = (byte) EndgameTablebase.encode(pass);
+                    resolved++;
+                }
+            }
+            return resolved;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Użycie: EndgameTablebaseGenerator <baza.bin> [--pieces N] [--threads N]");
+            return;
+        }
+        int pieces = 4;
+        int threads = 0;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--pieces": pieces = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                default: System.err.println("Nieznana opcja: " + args[i]); return;
+            }
+        }
+        ApplicationConfig.disableLogging();
+
+        long start = System.currentTimeMillis();
+        long positions = 0;
+        try (EndgameTablebaseGenerator generator = new EndgameTablebaseGenerator(Paths.get(args[0]), pieces, threads)) {
+            for (int signature : generator.getSignatures()) {
+                long decided = generator.solveSlice(signature);
+                positions += TablebaseIndex.sliceSize(signature);
+                System.out.println(describe(signature) + ": " + TablebaseIndex.sliceSize(signature) + " pozycji, rozstrzygniętych " + decided);
+            }
+            generator.finish();
+            System.out.println("Pozycje: " + positions + ", najdłuższa wygrana: " + generator.getMaxDistance()
+                    + " ruchów, czas: " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            System.err.println("Błąd wejścia/wyjścia: " + e.getMessage());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.Board;
+import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.PositionSnapshot;
+import warcaby.gamelogic.boardcomponents.BoardState;
+import warcaby.gamelogic.boardcomponents.IntMoveList;
+import warcaby.gamelogic.boardcomponents.MoveExecutor;
+import warcaby.gamelogic.boardcomponents.MoveLogic;
+import warcaby.gamelogic.boardcomponents.PackedMove;
+import warcaby.gamelogic.boardcomponents.TurnManager;
+import warcaby.utils.ApplicationConfig;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Dostrajanie wag oceny pozycji metodą Texela: wagi {@link EvaluationWeights} są dobierane tak, aby
+ * ocena statyczna pozycji z rozegranych partii jak najlepiej przewidywała wynik partii. Ocena (z punktu
+ * widzenia białych) jest zamieniana na oczekiwany wynik funkcją logistyczną 1 / (1 + 10^(-k*ocena/400)),
+ * a minimalizowana jest logistyczna funkcja straty (entropia krzyżowa) względem wyniku partii.
+ * Ocena jest liniowa względem wag, więc gradient liczy się dokładnie w jednym przejściu po korpusie;
+ * wagi poprawia metoda Adam, a waga pionka jest stała i wyznacza skalę ocen (skalę wyników - stała k).
+ *
+ * Korpus pozycji powstaje z partii ({@code --convert}): z archiwum albo z turnieju
+ * {@link SelfPlayTournament} z opcją {@code --record}, w formacie {@link OpeningBookBuilder} (jedna partia
+ * w wierszu, ruchy w notacji pól i wynik). Partie są odtwarzane strumieniowo, a do pliku trafiają tylko
+ * pozycje spokojne (bez bicia dla gracza na ruchu) z wynikiem partii, po 13 bajtów na pozycję.
+ * Przy strojeniu korpus leży w pamięci w tablicach masek, więc dekodowanie pozycji nic nie alokuje,
+ * a każde przejście jest dzielone na fragmenty liczone równolegle w {@link ForkJoinPool}.
+ *
+ * Użycie: {@code EvaluationTuner --convert <partie.txt> <pozycje.bin> [--skip-plies N]} oraz
+ * {@code EvaluationTuner <pozycje.bin> <wagi.txt> [--threads N] [--iterations N] [--rate R] [--k K] [--start wagi.txt]}
+ */
+public class EvaluationTuner {
+    static final int CORPUS_MAGIC = 0x5750_4F53; // "WPOS"
+    private static final int RECORD_BYTES = 13;  // Maski białych, czarnych i damek oraz bajt wyniku
+    private static final int RESULT_MASK = 3;    // Bity 0-1 bajtu wyniku: wynik białych * 2
+    private static final int BLACK_TO_MOVE = 4;  // Bit 2 bajtu wyniku: na ruchu są czarne
+    private static final int LEAF_SIZE = 1 << 15; // Liczba pozycji w jednym zadaniu ForkJoinPool
+    private static final double LOG_10_OVER_400 = Math.log(10) / 400;
+    private static final double ADAM_BETA1 = 0.9;
+    private static final double ADAM_BETA2 = 0.999;
+    private static final double ADAM_EPSILON = 1e-9;
+
+    private final int[] whiteMasks;
+    private final int[] blackMasks;
+    private final int[] kingsMasks;
+    private final byte[] results; // Bajty wyniku z korpusu (wynik białych * 2 i strona na ruchu)
+    private final int size;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param threads Liczba wątków strojenia (0 = wszystkie rdzenie).
+     */
+    public EvaluationTuner(int[] whiteMasks, int[] blackMasks, int[] kingsMasks, byte[] results, int size, int threads) {
+        this.whiteMasks = whiteMasks;
+        this.blackMasks = blackMasks;
+        this.kingsMasks = kingsMasks;
+        this.results = results;
+        this.size = size;
+        this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Wczytuje korpus pozycji zapisany przez {@link #convertGames}.
+     * @throws IOException jeśli pliku nie da się odczytać lub nie jest korpusem pozycji.
+     */
+    public static EvaluationTuner load(Path corpus, int threads) throws IOException {
+        try (FileChannel channel = FileChannel.open(corpus, StandardOpenOption.READ)) {
+            long records = (channel.size() - Integer.BYTES) / RECORD_BYTES;
+            if (channel.size() < Integer.BYTES || records > Integer.MAX_VALUE) {
+                throw new IOException("Niepoprawny rozmiar korpusu " + corpus);
+            }
+            int count = (int) records;
+            int[] white = new int[count];
+            int[] black = new int[count];
+            int[] kings = new int[count];
+            byte[] results = new byte[count];
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_BYTES * 65536);
+            readFully(channel, buffer, Integer.BYTES);
+            if (buffer.getInt() != CORPUS_MAGIC) {
+                throw new IOException("Plik " + corpus + " nie jest korpusem pozycji.");
+            }
+            int index = 0;
+            while (index < count) {
+                int batch = Math.min(count - index, buffer.capacity() / RECORD_BYTES);
+                readFully(channel, buffer, batch * RECORD_BYTES);
+                for (int i = 0; i < batch; i++, index++) {
+                    white[index] = buffer.getInt();
+                    black[index] = buffer.getInt();
+                    kings[index] = buffer.getInt();
+                    results[index] = buffer.get();
+                }
+            }
+            return new EvaluationTuner(white, black, kings, results, count, threads);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        buffer.clear().limit(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Nieoczekiwany koniec korpusu.");
+            }
+        }
+        buffer.flip();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Średnia strata logistyczna korpusu dla podanych wag i stałej skalującej.
+     */
+    public double loss(double[] weights, double k) {
+        return pool.invoke(new PassTask(weights, k, false, 0, size))[0] / size;
+    }
+
+    /**
+     * Dobiera stałą skalującą k (przy ustalonych wagach) minimalizującą stratę, metodą złotego podziału.
+     */
+    public double fitScalingConstant(double[] weights) {
+        double low = 0.05;
+        double high = 5.0;
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double a = high - ratio * (high - low);
+        double b = low + ratio * (high - low);
+        double lossA = loss(weights, a);
+        double lossB = loss(weights, b);
+        for (int i = 0; i < 30; i++) {
+            if (lossA < lossB) {
+                high = b;
+                b = a;
+                lossB = lossA;
+                a = high - ratio * (high - low);
+                lossA = loss(weights, a);
+            } else {
+                low = a;
+                a = b;
+                lossA = lossB;
+                b = low + ratio * (high - low);
+                lossB = loss(weights, b);
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Stroi wagi metodą Adam. Waga pionka pozostaje stała.
+     * @param start Wagi początkowe.
+     * @param k Stała skalująca (np. z {@link #fitScalingConstant}).
+     * @param iterations Liczba przejść po korpusie.
+     * @param rate Krok metody Adam (w setnych częściach pionka).
+     * @return Dostrojone wagi (zaokrąglone do liczb całkowitych).
+     */
+    public EvaluationWeights tune(EvaluationWeights start, double k, int iterations, double rate) {
+        double[] weights = toDoubles(start);
+        double[] firstMoment = new double[EvaluationWeights.COUNT];
+        double[] secondMoment = new double[EvaluationWeights.COUNT];
+        long startMillis = System.currentTimeMillis();
+        for (int iteration = 1; iteration <= iterations; iteration++) {
+            double[] pass = pool.invoke(new PassTask(weights, k, true, 0, size));
+            for (int i = 0; i < EvaluationWeights.COUNT; i++) {
+                if (i == EvaluationWeights.MAN) {
+                    continue; // Waga pionka wyznacza skalę ocen
+                }
+                double gradient = pass[i + 1] / size;
+                firstMoment[i] = ADAM_BETA1 * firstMoment[i] + (1 - ADAM_BETA1) * gradient;
+                secondMoment[i] = ADAM_BETA2 * secondMoment[i] + (1 - ADAM_BETA2) * gradient * gradient;
+                double correctedFirst = firstMoment[i] / (1 - Math.pow(ADAM_BETA1, iteration));
+                double correctedSecond = secondMoment[i] / (1 - Math.pow(ADAM_BETA2, iteration));
+                weights[i] -= rate * correctedFirst / (Math.sqrt(correctedSecond) + ADAM_EPSILON);
+            }
+            if (iteration % 10 == 0 || iteration == iterations) {
+                System.out.printf("Iteracja %d: strata %.6f, %.1f s%n", iteration, pass[0] / size,
+                        (System.currentTimeMillis() - startMillis) / 1000.0);
+            }
+        }
+        int[] rounded = new int[EvaluationWeights.COUNT];
+        for (int i = 0; i < rounded.length; i++) {
+            rounded[i] = (int) Math.round(weights[i]);
+        }
+        return new EvaluationWeights(rounded);
+    }
+
+    static double[] toDoubles(EvaluationWeights weights) {
+        double[] values = new double[EvaluationWeights.COUNT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = weights.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Jedno przejście po fragmencie korpusu: suma strat i (opcjonalnie) suma gradientów względem wag.
+     * Wynik: [strata, gradient wagi 0, ..., gradient wagi COUNT-1].
+     */
+    private final class PassTask extends RecursiveTask<double[]> {
+        private final double[] weights;
+        private final double k;
+        private final boolean withGradient;
+        private final int from;
+        private final int to;
+
+        PassTask(double[] weights, double k, boolean withGradient, int from, int to) {
+            this.weights = weights;
+            this.k = k;
+            this.withGradient = withGradient;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                PassTask left = new PassTask(weights, k, withGradient, from, middle);
+                left.fork();
+                double[] right = new PassTask(weights, k, withGradient, middle, to).compute();
+                double[] sum = left.join();
+                for (int i = 0; i < sum.length; i++) {
+                    sum[i] += right[i];
+                }
+                return sum;
+            }
+
+            double[] sum = new double[EvaluationWeights.COUNT + 1];
+            int[] features = new int[EvaluationWeights.COUNT];
+            double scale = k * LOG_10_OVER_400;
+            for (int index = from; index < to; index++) {
+                Evaluator.extractFeatures(whiteMasks[index], blackMasks[index], kingsMasks[index], features);
+                double evaluation = 0;
+                for (int i = 0; i < features.length; i++) {
+                    evaluation += weights[i] * features[i];
+                }
+                double expected = 1 / (1 + Math.exp(-scale * evaluation));
+                double result = (results[index] & RESULT_MASK) * 0.5;
+                // Strata logistyczna; wartości graniczne przycięte, aby log(0) nie dał nieskończoności
+                double clipped = Math.min(Math.max(expected, 1e-12), 1 - 1e-12);
+                sum[0] -= result * Math.log(clipped) + (1 - result) * Math.log(1 - clipped);
+                if (withGradient) {
+                    double error = (expected - result) * scale;
+                    for (int i = 0; i < features.length; i++) {
+                        sum[i + 1] += error * features[i];
+                    }
+                }
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Odtwarza partie i zapisuje ich spokojne pozycje do korpusu (wraz z nagłówkiem).
+     * @param games Partie w formacie {@link OpeningBookBuilder}, po jednej w wierszu.
+     * @param skipPlies Liczba początkowych półruchów każdej partii, których pozycje są pomijane (debiut).
+     * @return Liczba zapisanych pozycji.
+     */
+    public static long convertGames(BufferedReader games, DataOutputStream out, int skipPlies) throws IOException {
+        BoardState boardState = new BoardState();
+        TurnManager turnManager = new TurnManager(boardState);
+        MoveLogic moveLogic = new MoveLogic(boardState, turnManager);
+        MoveExecutor moveExecutor = new MoveExecutor(boardState, turnManager, moveLogic);
+        IntMoveList moves = new IntMoveList();
+        PositionSnapshot initial = new Board().snapshot();
+
+        out.writeInt(CORPUS_MAGIC);
+        long written = 0;
+        int gameCount = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = games.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            int result;
+            try {
+                result = (int) Math.round(OpeningBookBuilder.parseResult(tokens[tokens.length - 1]) * 2);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Wiersz " + lineNumber + " pominięty: " + e.getMessage());
+                continue;
+            }
+            boardState.setPosition(initial.getWhiteMask(), initial.getBlackMask(), initial.getKingsMask());
+            turnManager.restore(initial.getCurrentPlayer(), false, -1, -1);
+            for (int ply = 0; ply < tokens.length - 1; ply++) {
+                PlayerColor mover = turnManager.getCurrentPlayer();
+                moveLogic.generateCompleteMoveRoutes(mover, moves); // Partia mogła zapisać dowolną drogę bicia
+                int index = indexOfMove(moves, tokens[ply]);
+                if (index < 0) {
+                    System.err.println("Wiersz " + lineNumber + ": nielegalny ruch \"" + tokens[ply] + "\", dalsza część partii pominięta.");
+                    break;
+                }
+                boolean quiet = !PackedMove.isJump(moves.get(0)) && !PackedMove.isSequence(moves.get(0));
+                if (ply >= skipPlies && quiet) {
+                    out.writeInt(boardState.getWhiteMask());
+                    out.writeInt(boardState.getBlackMask());
+                    out.writeInt(boardState.getKingsMask());
+                    out.writeByte(result | (mover == PlayerColor.BLACK ? BLACK_TO_MOVE : 0));
+                    written++;
+                }
+                moveExecutor.make(moves.get(index), moves.getCapturedMask(index));
+                moveExecutor.clearUndoHistory(); // Partia nie jest cofana
+            }
+            gameCount++;
+        }
+        System.out.println("Partie: " + gameCount + ", pozycje spokojne: " + written);
+        return written;
+    }
+
+    private static int indexOfMove(IntMoveList moves, String notation) {
+        for (int i = 0; i < moves.size(); i++) {
+            if (moves.toMove(i).toString().equals(notation)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) {
+        ApplicationConfig.disableLogging();
+        if (args.length >= 3 && "--convert".equals(args[0])) {
+            int skipPlies = 8;
+            for (int i = 3; i < args.length; i++) {
+                if ("--skip-plies".equals(args[i]) && i + 1 < args.length) {
+                    skipPlies = Integer.parseInt(args[++i]);
+                } else {
+                    System.err.println("Nieznana opcja: " + args[i]);
+                    printUsage();
+                    return;
+                }
+            }
+            try (BufferedReader games = Files.newBufferedReader(Paths.get(args[1]));
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(args[2])), 1 << 16))) {
+                convertGames(games, out, skipPlies);
+            } catch (IOException e) {
+                System.err.println("Błąd wejścia/wyjścia: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length < 2) {
+            printUsage();
+            return;
+        }
+
+        int threads = 0;
+        int iterations = 200;
+        double rate = 1.0;
+        double k = 0; // 0 = dobierana automatycznie
+        String startWeights = null;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+                case "--rate": rate = Double.parseDouble(args[++i]); break;
+                case "--k": k = Double.parseDouble(args[++i]); break;
+                case "--start": startWeights = args[++i]; break;
+                default:
+                    System.err.println("Nieznana opcja: " + args[i]);
+                    printUsage();
+                    return;
+            }
+        }
+        try {
+            EvaluationWeights start = (startWeights != null) ? EvaluationWeights.load(Paths.get(startWeights)) : EvaluationWeights.DEFAULT;
+            long loadStart = System.currentTimeMillis();
+            EvaluationTuner tuner = load(Paths.get(args[0]), threads);
+            System.out.printf("Korpus: %d pozycji, wczytany w %.1f s, %d wątków%n", tuner.size(),
+                    (System.currentTimeMillis() - loadStart) / 1000.0, tuner.pool.getParallelism());
+            if (tuner.size() == 0) {
+                System.err.println("Korpus jest pusty.");
+                return;
+            }
+            if (k <= 0) {
+                k = tuner.fitScalingConstant(toDoubles(start));
+            }
+            double initialLoss = tuner.loss(toDoubles(start), k);
+            System.out.printf("k = %.4f, strata początkowa %.6f (%s)%n", k, initialLoss, start);
+
+            EvaluationWeights tuned = tuner.tune(start, k, iterations, rate);
+            double finalLoss = tuner.loss(toDoubles(tuned), k);
+            System.out.printf("Strata końcowa %.6f (%s)%n", finalLoss, tuned);
+            tuned.save(Paths.get(args[1]), String.format("EvaluationTuner: %d pozycji, k=%.4f, strata %.6f -> %.6f",
+                    tuner.size(), k, initialLoss, finalLoss));
+            System.out.println("Zapisano wagi do " + args[1]);
+        } catch (IOException e) {
+            System.err.println("Błąd wejścia/wyjścia: " + e.getMessage());
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Użycie: EvaluationTuner --convert <partie.txt> <pozycje.bin> [--skip-plies N]");
+        System.err.println("        EvaluationTuner <pozycje.bin> <wagi.txt> [--threads N] [--iterations N] [--rate R] [--k K] [--start wagi.txt]");
+    }
+}
@@ -0,0 +1,160 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.boardcomponents.PieceSquareTable;
+import warcaby.utils.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Wagi składników oceny pozycji {@link Evaluator}. Ocena jest sumą wag pomnożonych przez cechy
+ * pozycji (różnice białe minus czarne, np. liczba pionków czy suma wierszy przebytych w stronę
+ * przemiany), więc jest liniowa względem wag, co pozwala je dostrajać ({@link EvaluationTuner}).
+ * Wagi domyślne odpowiadają stałym {@link PieceSquareTable} i {@link Evaluator}.
+ *
+ * Plik wag to plik tekstowy w formacie {@link Properties} ({@code nazwa=wartość}); wagi, których
+ * w pliku brak, mają wartości domyślne. Obiekt jest niezmienny.
+ */
+public final class EvaluationWeights {
+    private static final Logger logger = new Logger(EvaluationWeights.class);
+
+    public static final int MAN = 0;         // Materiał: pionek
+    public static final int KING = 1;        // Materiał: damka
+    public static final int ADVANCE = 2;     // Pionek: za każdy wiersz przebyty w stronę przemiany
+    public static final int CENTER = 3;      // Pionek na jednym z czterech środkowych pól
+    public static final int WIDE_CENTER = 4; // Pionek na pozostałych polach wierszy 3-4
+    public static final int BACK_RANK = 5;   // Pionek na własnym ostatnim wierszu
+    public static final int KING_CENTER = 6; // Damka na środkowym polu
+    public static final int MOBILITY = 7;    // Za każde wolne pole dostępne jednym krokiem
+    public static final int RUNAWAY = 8;     // Niezatrzymany pionek: za każdy wiersz bliżej przemiany
+    public static final int COUNT = 9;
+
+    private static final String[] NAMES = {
+            "man", "king", "advance", "center", "wide_center", "back_rank", "king_center", "mobility", "runaway"
+    };
+    private static final int PIECE_SQUARE_WEIGHTS = MOBILITY; // Wagi 0..6 składają się na PieceSquareTable
+
+    public static final EvaluationWeights DEFAULT = new EvaluationWeights(new int[]{
+            PieceSquareTable.MAN_VALUE, PieceSquareTable.KING_VALUE, PieceSquareTable.ADVANCE_BONUS,
+            PieceSquareTable.CENTER_BONUS, PieceSquareTable.WIDE_CENTER_BONUS, PieceSquareTable.BACK_RANK_BONUS,
+            PieceSquareTable.KING_CENTER_BONUS, Evaluator.MOBILITY_BONUS, Evaluator.RUNAWAY_BONUS
+    });
+
+    private final int[] values;
+
+    /**
+     * @param values Wagi w kolejności indeksów {@link #MAN} ... {@link #RUNAWAY}.
+     * @throws IllegalArgumentException jeśli liczba wag jest niepoprawna.
+     */
+    public EvaluationWeights(int[] values) {
+        if (values.length != COUNT) {
+            throw new IllegalArgumentException("Oczekiwano " + COUNT + " wag, podano " + values.length);
+        }
+        this.values = values.clone();
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public int[] toArray() {
+        return values.clone();
+    }
+
+    public static String getName(int index) {
+        return NAMES[index];
+    }
+
+    /**
+     * Buduje tablicę wartości pionków na polach z wag materiału i pól ({@link PieceSquareTable#DEFAULT},
+     * jeśli są domyślne), do przyrostowej aktualizacji przez BoardState.
+     */
+    PieceSquareTable toPieceSquareTable() {
+        if (Arrays.equals(Arrays.copyOf(values, PIECE_SQUARE_WEIGHTS), Arrays.copyOf(DEFAULT.values, PIECE_SQUARE_WEIGHTS))) {
+            return PieceSquareTable.DEFAULT;
+        }
+        return new PieceSquareTable(values[MAN], values[KING], values[ADVANCE], values[CENTER], values[WIDE_CENTER],
+                values[BACK_RANK], values[KING_CENTER]);
+    }
+
+    /**
+     * Wczytuje wagi z pliku.
+     * @throws IOException jeśli pliku nie da się odczytać albo zawiera nieznaną nazwę lub niepoprawną wartość.
+     */
+    public static EvaluationWeights load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        int[] values = DEFAULT.toArray();
+        for (String name : properties.stringPropertyNames()) {
+            int index = Arrays.asList(NAMES).indexOf(name);
+            if (index < 0) {
+                throw new IOException("Nieznana waga \"" + name + "\" w pliku " + path);
+            }
+            try {
+                values[index] = Integer.parseInt(properties.getProperty(name).trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Niepoprawna wartość wagi \"" + name + "\" w pliku " + path, e);
+            }
+        }
+        return new EvaluationWeights(values);
+    }
+
+    /**
+     * Wczytuje wagi z pliku, jeśli istnieje; w przeciwnym razie (lub przy błędzie) zwraca {@link #DEFAULT}.
+     */
+    public static EvaluationWeights loadIfExists(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return DEFAULT;
+        }
+        try {
+            EvaluationWeights weights = load(path);
+            logger.info("EvaluationWeights: Wczytano wagi oceny " + path + " (" + weights + ").");
+            return weights;
+        } catch (IOException e) {
+            logger.error("EvaluationWeights: Nie udało się wczytać wag " + path + ", używane są wagi domyślne.", e);
+            return DEFAULT;
+        }
+    }
+
+    /**
+     * Zapisuje wagi do pliku w kolejności indeksów.
+     * @param comment Komentarz na początku pliku (np. skąd pochodzą wagi) lub null.
+     */
+    public void save(Path path, String comment) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            if (comment != null) {
+                writer.write("# " + comment + System.lineSeparator());
+            }
+            for (int i = 0; i < COUNT; i++) {
+                writer.write(NAMES[i] + "=" + values[i] + System.lineSeparator());
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof EvaluationWeights && Arrays.equals(values, ((EvaluationWeights) other).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < COUNT; i++) {
+            sb.append(i == 0 ? "" : ", ").append(NAMES[i]).append('=').append(values[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,197 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.boardcomponents.Bitboards;
+import warcaby.gamelogic.boardcomponents.BoardState;
+import warcaby.gamelogic.boardcomponents.PieceSquareTable;
+
+/**
+ * Statyczna ocena pozycji dla silnika przeszukującego.
+ * Materiał i składniki zależne tylko od pola pionka (zaawansowanie, centrum, linia przemiany)
+ * pochodzą z {@link PieceSquareTable} i są aktualizowane przyrostowo przez {@link BoardState}
+ * przy każdym ruchu. Pozostałe składniki są liczone na maskach bitowych, bez przeglądania pól:
+ * ruchliwość (liczba wolnych pól, na które pionki mogą wejść) i niezatrzymane pionki (pionek blisko
+ * przemiany, przed którym nie ma żadnego pionka).
+ * Wynik jest liczony z punktu widzenia gracza na ruchu (dodatni = lepiej dla niego).
+ *
+ * Wagi składników pochodzą z {@link EvaluationWeights}; tablica wartości pól jest budowana z wag
+ * (także dostrojonych przez {@link EvaluationTuner}) i musi być ustawiona w planszy
+ * ({@link BoardState#setPieceSquareTable}, robi to {@link SearchEngine}). Dla planszy z inną tablicą
+ * ta część oceny jest liczona z masek bitowych. Obiekt jest niezmienny i może być współdzielony.
+ */
+public class Evaluator {
+    public static final int MAN_VALUE = PieceSquareTable.MAN_VALUE;
+    public static final int KING_VALUE = PieceSquareTable.KING_VALUE;
+
+    static final int MOBILITY_BONUS = 1;      // Za każde wolne pole dostępne jednym krokiem
+    static final int RUNAWAY_BONUS = 12;      // Za każdy wiersz bliżej przemiany niezatrzymanego pionka
+    private static final int WHITE_RUNAWAY_ROWS = 0x0000FFF0; // Wiersze 1-3 (białe idą w stronę wiersza 0)
+    private static final int BLACK_RUNAWAY_ROWS = 0x0FFF0000; // Wiersze 4-6 (czarne idą w stronę wiersza 7)
+
+    private static final int[] WHITE_CONES = new int[Bitboards.SQUARES]; // Pola, które mogą zatrzymać pionka białych
+    private static final int[] BLACK_CONES = new int[Bitboards.SQUARES];
+    private static final int FIRST_ROW = 0x0000000F;
+
+    private final EvaluationWeights weights;
+    private final PieceSquareTable pieceSquareTable; // Wartości pól z wag, aktualizowane przyrostowo przez BoardState
+    private final int manWeight;
+    private final int kingWeight;
+    private final int advanceWeight;
+    private final int centerWeight;
+    private final int wideCenterWeight;
+    private final int backRankWeight;
+    private final int kingCenterWeight;
+    private final int mobilityWeight;
+    private final int runawayWeight;
+
+    static {
+        for (int square = 0; square < Bitboards.SQUARES; square++) {
+            int row = Bitboards.rowOf(square);
+            int col = Bitboards.colOf(square);
+            for (int targetRow = 0; targetRow < BoardState.SIZE; targetRow++) {
+                int width = Math.abs(row - targetRow);
+                for (int targetCol = col - width; targetCol <= col + width; targetCol++) {
+                    int target = (targetCol >= 0 && targetCol < BoardState.SIZE) ? Bitboards.toSquare(targetRow, targetCol) : -1;
+                    if (target < 0 || target == square) {
+                        continue;
+                    }
+                    if (targetRow < row) {
+                        WHITE_CONES[square] |= Bitboards.bit(target);
+                    } else if (targetRow > row) {
+                        BLACK_CONES[square] |= Bitboards.bit(target);
+                    }
+                }
+            }
+        }
+    }
+
+    public Evaluator() {
+        this(EvaluationWeights.DEFAULT);
+    }
+
+    public Evaluator(EvaluationWeights weights) {
+        this.weights = weights;
+        this.pieceSquareTable = weights.toPieceSquareTable();
+        this.manWeight = weights.get(EvaluationWeights.MAN);
+        this.kingWeight = weights.get(EvaluationWeights.KING);
+        this.advanceWeight = weights.get(EvaluationWeights.ADVANCE);
+        this.centerWeight = weights.get(EvaluationWeights.CENTER);
+        this.wideCenterWeight = weights.get(EvaluationWeights.WIDE_CENTER);
+        this.backRankWeight = weights.get(EvaluationWeights.BACK_RANK);
+        this.kingCenterWeight = weights.get(EvaluationWeights.KING_CENTER);
+        this.mobilityWeight = weights.get(EvaluationWeights.MOBILITY);
+        this.runawayWeight = weights.get(EvaluationWeights.RUNAWAY);
+    }
+
+    public EvaluationWeights getWeights() {
+        return weights;
+    }
+
+    /**
+     * Zwraca tablicę wartości pól zbudowaną z wag; plansza z tą tablicą jest oceniana bez przeliczania materiału.
+     */
+    public PieceSquareTable getPieceSquareTable() {
+        return pieceSquareTable;
+    }
+
+    /**
+     * Ocenia pozycję z punktu widzenia podanego gracza.
+     * @param boardState Stan planszy.
+     * @param sideToMove Gracz, z którego perspektywy liczona jest ocena.
+     * @return Ocena w setnych częściach pionka.
+     */
+    public int evaluate(BoardState boardState, PlayerColor sideToMove) {
+        int white = boardState.getWhiteMask();
+        int black = boardState.getBlackMask();
+        int kings = boardState.getKingsMask();
+        int empty = ~(white | black);
+
+        int score = (boardState.getPieceSquareTable() == pieceSquareTable)
+                ? boardState.getPieceSquareScore() : pieceSquareScore(white, black, kings);
+        score += (mobility(white & ~kings, white & kings, empty, Bitboards.UP_LEFT, Bitboards.UP_RIGHT)
+                - mobility(black & ~kings, black & kings, empty, Bitboards.DOWN_LEFT, Bitboards.DOWN_RIGHT)) * mobilityWeight;
+        score += (runaways(white & ~kings & WHITE_RUNAWAY_ROWS, white | black, true)
+                - runaways(black & ~kings & BLACK_RUNAWAY_ROWS, white | black, false)) * runawayWeight;
+        return sideToMove == PlayerColor.WHITE ? score : -score;
+    }
+
+    /**
+     * Materiał i wartości pól z bieżących wag, liczone z masek (z punktu widzenia białych).
+     * Daje to samo co {@link PieceSquareTable#computeScore} tablicy zbudowanej z wag.
+     */
+    private int pieceSquareScore(int white, int black, int kings) {
+        int whiteMen = white & ~kings;
+        int blackMen = black & ~kings;
+        int whiteKings = white & kings;
+        int blackKings = black & kings;
+        return (Integer.bitCount(whiteMen) - Integer.bitCount(blackMen)) * manWeight
+                + (Integer.bitCount(whiteKings) - Integer.bitCount(blackKings)) * kingWeight
+                + (advance(whiteMen, true) - advance(blackMen, false)) * advanceWeight
+                + (Integer.bitCount(whiteMen & PieceSquareTable.CENTER) - Integer.bitCount(blackMen & PieceSquareTable.CENTER)) * centerWeight
+                + (Integer.bitCount(whiteMen & PieceSquareTable.WIDE_CENTER) - Integer.bitCount(blackMen & PieceSquareTable.WIDE_CENTER)) * wideCenterWeight
+                + (Integer.bitCount(whiteMen & Bitboards.ROW_7) - Integer.bitCount(blackMen & Bitboards.ROW_0)) * backRankWeight
+                + (Integer.bitCount(whiteKings & PieceSquareTable.CENTER) - Integer.bitCount(blackKings & PieceSquareTable.CENTER)) * kingCenterWeight;
+    }
+
+    /**
+     * Wyznacza cechy pozycji (białe minus czarne), których iloczyn skalarny z wagami
+     * {@link EvaluationWeights} jest oceną z punktu widzenia białych. Nie alokuje pamięci.
+     * @param features Tablica o długości {@link EvaluationWeights#COUNT}, nadpisywana wynikiem.
+     */
+    public static void extractFeatures(int white, int black, int kings, int[] features) {
+        int whiteMen = white & ~kings;
+        int blackMen = black & ~kings;
+        int whiteKings = white & kings;
+        int blackKings = black & kings;
+        int empty = ~(white | black);
+        features[EvaluationWeights.MAN] = Integer.bitCount(whiteMen) - Integer.bitCount(blackMen);
+        features[EvaluationWeights.KING] = Integer.bitCount(whiteKings) - Integer.bitCount(blackKings);
+        features[EvaluationWeights.ADVANCE] = advance(whiteMen, true) - advance(blackMen, false);
+        features[EvaluationWeights.CENTER] = Integer.bitCount(whiteMen & PieceSquareTable.CENTER) - Integer.bitCount(blackMen & PieceSquareTable.CENTER);
+        features[EvaluationWeights.WIDE_CENTER] = Integer.bitCount(whiteMen & PieceSquareTable.WIDE_CENTER) - Integer.bitCount(blackMen & PieceSquareTable.WIDE_CENTER);
+        features[EvaluationWeights.BACK_RANK] = Integer.bitCount(whiteMen & Bitboards.ROW_7) - Integer.bitCount(blackMen & Bitboards.ROW_0);
+        features[EvaluationWeights.KING_CENTER] = Integer.bitCount(whiteKings & PieceSquareTable.CENTER) - Integer.bitCount(blackKings & PieceSquareTable.CENTER);
+        features[EvaluationWeights.MOBILITY] = mobility(whiteMen, whiteKings, empty, Bitboards.UP_LEFT, Bitboards.UP_RIGHT)
+                - mobility(blackMen, blackKings, empty, Bitboards.DOWN_LEFT, Bitboards.DOWN_RIGHT);
+        features[EvaluationWeights.RUNAWAY] = runaways(whiteMen & WHITE_RUNAWAY_ROWS, white | black, true)
+                - runaways(blackMen & BLACK_RUNAWAY_ROWS, white | black, false);
+    }
+
+    /**
+     * Suma wierszy przebytych przez pionki w stronę przemiany (białe idą w stronę wiersza 0).
+     */
+    private static int advance(int men, boolean white) {
+        int rows = 0;
+        for (int row = 1; row < BoardState.SIZE; row++) {
+            rows += row * Integer.bitCount(men & (FIRST_ROW << (4 * (white ? BoardState.SIZE - 1 - row : row))));
+        }
+        return rows;
+    }
+
+    private static int mobility(int men, int kings, int empty, int forwardLeft, int forwardRight) {
+        int targets = Integer.bitCount(Bitboards.shift(men, forwardLeft) & empty)
+                + Integer.bitCount(Bitboards.shift(men, forwardRight) & empty);
+        for (int direction = 0; direction < 4; direction++) {
+            targets += Integer.bitCount(Bitboards.shift(kings, direction) & empty);
+        }
+        return targets;
+    }
+
+    /**
+     * Premia (w jednostkach wagi {@link EvaluationWeights#RUNAWAY}) za pionki, których żaden pionek
+     * nie może zatrzymać przed przemianą. Sprawdzane są tylko pionki z trzech wierszy najbliższych przemiany.
+     */
+    private static int runaways(int candidates, int occupied, boolean white) {
+        int bonus = 0;
+        while (candidates != 0) {
+            int square = Integer.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+            int cone = white ? WHITE_CONES[square] : BLACK_CONES[square];
+            if ((cone & occupied) == 0) {
+                int rowsToGo = white ? Bitboards.rowOf(square) : BoardState.SIZE - 1 - Bitboards.rowOf(square);
+                bonus += BoardState.SIZE / 2 - rowsToGo;
+            }
+        }
+        return bonus;
+    }
+}
@@ -0,0 +1,84 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.Board;
+import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.boardcomponents.Move;
+import warcaby.utils.GameConstants;
+import warcaby.utils.Logger;
+
+import java.nio.file.Paths;
+
+/**
+ * Gracz komputerowy oparty na {@link MctsSearch}, alternatywa dla {@link ComputerPlayer}
+ * (przeszukiwanie alfa-beta) do porównywania siły obu silników, np. w {@link SelfPlayTournament}.
+ * Drzewo żyje tak długo jak gracz, więc przeszukiwanie kolejnego ruchu zaczyna od poddrzewa
+ * pozycji, która faktycznie wystąpiła w partii.
+ */
+public class MctsPlayer implements AiPlayer {
+    private static final Logger logger = new Logger(MctsPlayer.class);
+
+    private PlayerColor aiColor;
+    private final MctsSearch engine;
+
+    public MctsPlayer(PlayerColor aiColor) {
+        this(aiColor, GameConstants.AI_TIME_LIMIT_MS, GameConstants.AI_THREADS, GameConstants.AI_MCTS_TREE_SIZE_MB);
+    }
+
+    /**
+     * @param aiColor Kolor, którym gra komputer.
+     * @param timeLimitMillis Czas na jeden ruch.
+     * @param threads Liczba wątków przeszukiwania (0 = wszystkie rdzenie).
+     * @param treeSizeMb Rozmiar puli węzłów drzewa.
+     */
+    public MctsPlayer(PlayerColor aiColor, long timeLimitMillis, int threads, int treeSizeMb) {
+        this(aiColor, timeLimitMillis, threads, treeSizeMb, EndgameTablebase.openIfExists(Paths.get(GameConstants.AI_TABLEBASE)));
+    }
+
+    /**
+     * @param tablebase Baza końcówek lub null (wielu graczy może korzystać z jednej, raz otwartej bazy).
+     */
+    public MctsPlayer(PlayerColor aiColor, long timeLimitMillis, int threads, int treeSizeMb, EndgameTablebase tablebase) {
+        this.aiColor = aiColor;
+        this.engine = new MctsSearch(threads, timeLimitMillis, treeSizeMb);
+        this.engine.setTablebase(tablebase);
+    }
+
+    /**
+     * Ustawia bazę końcówek (null wyłącza korzystanie z bazy).
+     */
+    public void setTablebase(EndgameTablebase tablebase) {
+        engine.setTablebase(tablebase);
+    }
+
+    /**
+     * Zwraca silnik, np. aby zmienić limit symulacji lub sposób ich rozgrywania.
+     */
+    public MctsSearch getEngine() {
+        return engine;
+    }
+
+    @Override
+    public Move getComputerMove(Board board) {
+        if (board.getCurrentPlayer() != aiColor) {
+            System.err.println("MctsPlayer: Próba wykonania ruchu, gdy nie jest tura AI!");
+            return null;
+        }
+        if (board.getWinner() != null) {
+            return null;
+        }
+        SearchResult result = engine.search(board.snapshot());
+        logger.info("MctsPlayer: " + result);
+        return result.getBestMove();
+    }
+
+    @Override
+    public void newGame(PlayerColor color) {
+        aiColor = color;
+        engine.clearTree();
+    }
+
+    @Override
+    public void shutdown() {
+        engine.shutdown();
+    }
+}
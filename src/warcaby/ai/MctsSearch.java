@@ -0,0 +1,534 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.PositionSnapshot;
+import warcaby.gamelogic.boardcomponents.BoardState;
+import warcaby.gamelogic.boardcomponents.IntMoveList;
+import warcaby.gamelogic.boardcomponents.MoveExecutor;
+import warcaby.gamelogic.boardcomponents.MoveLogic;
+import warcaby.gamelogic.boardcomponents.PackedMove;
+import warcaby.gamelogic.boardcomponents.TurnManager;
+import warcaby.utils.GameConstants;
+import warcaby.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Przeszukiwanie drzewa gry metodą Monte Carlo (MCTS), alternatywa dla przeszukiwania alfa-beta
+ * ({@link ParallelSearch}). Każda iteracja schodzi od korzenia do liścia, wybierając dzieci według
+ * UCT (średni wynik + premia za rzadko odwiedzane ruchy), rozwija liść odwiedzony już wcześniej,
+ * rozgrywa z niego szybką symulację ruchami z {@link MoveLogic} i dopisuje jej wynik wszystkim
+ * węzłom na ścieżce. Symulacja kończy się przegraną gracza bez ruchu, wynikiem z bazy końcówek albo
+ * po {@link #PLAYOUT_PLIES} półruchach oceną statyczną zamienioną na szansę wygranej.
+ *
+ * Węzły leżą w puli (arenie): węzeł to indeks w równoległych tablicach, a dzieci węzła zajmują
+ * kolejne indeksy przydzielane jednym licznikiem, więc drzewo nie tworzy żadnych obiektów dla GC.
+ * Kilka wątków rozwija to samo drzewo (równoległość drzewa): wizyta jest liczona już przy
+ * schodzeniu (wirtualna przegrana), więc pozostałe wątki wybierają w tym czasie inne gałęzie,
+ * a rozwinięcie węzła rezerwuje jeden wątek przez compareAndSet.
+ * Drzewo jest ponownie używane w kolejnym ruchu: jeśli nowa pozycja jest w drzewie (zwykle dwa
+ * półruchy poniżej starego korzenia), jej węzeł staje się korzeniem. Pula nie jest kompaktowana;
+ * gdy zapełni się w połowie, następne przeszukiwanie zaczyna od pustego drzewa.
+ */
+public class MctsSearch {
+    /** Sposób wyboru ruchów w symulacji. */
+    public enum PlayoutPolicy {
+        /** Ruch losowy (bicia i tak są obowiązkowe). */
+        RANDOM,
+        /** Promocja, gdy jest możliwa; w pozostałych przypadkach ruch losowy, ale bez oddawania pionka do bicia, jeśli się da. */
+        CAPTURE_BIASED
+    }
+
+    static final int PLAYOUT_PLIES = 60;            // Półruchy symulacji, po których wynik szacuje ocena statyczna
+    private static final double EXPLORATION = 1.0;  // Stała eksploracji UCT
+    private static final double REWARD_SCALE = 1 << 16; // Wygrana w zapisie stałoprzecinkowym nagród
+    private static final double EVAL_SCALE = 150;   // Ocena statyczna, przy której szansa wygranej wynosi ok. 73%
+    private static final int SAFE_MOVE_ATTEMPTS = 3; // Losowania ruchu, który nie oddaje pionka do bicia
+    private static final int NODE_BYTES = 32;
+    private static final int MAX_TREE_DEPTH = 512;
+
+    private static final int UNEXPANDED = 0;
+    private static final int EXPANDING = 1;
+    private static final int EXPANDED = 2;
+
+    private static final Logger logger = new Logger(MctsSearch.class);
+
+    private final int capacity;
+    private final int[] nodeMoves;         // Ruch (PackedMove) prowadzący do węzła
+    private final int[] nodeCaptured;      // Maska zbitych pionków tego ruchu
+    private final int[] firstChild;        // Indeks pierwszego dziecka (ważny po rozwinięciu)
+    private final int[] childCount;
+    private final AtomicIntegerArray expansion; // UNEXPANDED, EXPANDING lub EXPANDED
+    private final AtomicIntegerArray visits;
+    private final AtomicLongArray rewards;  // Suma wyników z punktu widzenia gracza, który wykonał ruch do węzła
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    private final Worker[] workers;
+    private final ExecutorService helperPool; // null, jeśli przeszukiwanie jest jednowątkowe
+    private final Evaluator evaluator = new Evaluator();
+    private final AtomicLong playouts = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private volatile long timeLimitMillis;
+    private volatile long playoutLimit = 0;  // 0 = bez limitu
+    private volatile EndgameTablebase tablebase;
+    private volatile PlayoutPolicy playoutPolicy = PlayoutPolicy.CAPTURE_BIASED;
+    private volatile boolean reuseTree = true;
+    private volatile AtomicBoolean stopSignal;
+
+    private int root = -1;
+    private PositionSnapshot rootPosition;
+    private boolean maximumCaptureRule = GameConstants.MAXIMUM_CAPTURE_RULE;
+
+    /**
+     * @param threads Liczba wątków (wraz z głównym); 0 oznacza liczbę dostępnych rdzeni.
+     * @param timeLimitMillis Limit czasu na ruch (0 = bez limitu).
+     * @param treeSizeMb Rozmiar puli węzłów drzewa.
+     */
+    public MctsSearch(int threads, long timeLimitMillis, int treeSizeMb) {
+        int threadCount = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+        this.timeLimitMillis = timeLimitMillis;
+        this.capacity = (int) Math.min(Integer.MAX_VALUE - 8, ((long) treeSizeMb << 20) / NODE_BYTES);
+        this.nodeMoves = new int[capacity];
+        this.nodeCaptured = new int[capacity];
+        this.firstChild = new int[capacity];
+        this.childCount = new int[capacity];
+        this.expansion = new AtomicIntegerArray(capacity);
+        this.visits = new AtomicIntegerArray(capacity);
+        this.rewards = new AtomicLongArray(capacity);
+        this.workers = new Worker[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            workers[i] = new Worker(i);
+        }
+        this.helperPool = (threadCount == 1) ? null : Executors.newFixedThreadPool(threadCount - 1, runnable -> {
+            Thread thread = new Thread(runnable, "warcaby-mcts-helper");
+            thread.setDaemon(true); // Nie blokuje zamknięcia aplikacji
+            return thread;
+        });
+    }
+
+    public void setTimeLimitMillis(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    /**
+     * Ustawia limit symulacji na ruch (łącznie na wszystkich wątkach, 0 = bez limitu).
+     */
+    public void setPlayoutLimit(long playoutLimit) {
+        this.playoutLimit = playoutLimit;
+    }
+
+    public void setPlayoutPolicy(PlayoutPolicy playoutPolicy) {
+        this.playoutPolicy = playoutPolicy;
+    }
+
+    /**
+     * Włącza lub wyłącza ponowne użycie drzewa z poprzedniego przeszukiwania.
+     */
+    public void setReuseTree(boolean reuseTree) {
+        this.reuseTree = reuseTree;
+    }
+
+    /**
+     * Ustawia bazę końcówek, z której symulacje biorą dokładny wynik (null wyłącza jej użycie).
+     */
+    public void setTablebase(EndgameTablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    public synchronized void setMaximumCaptureRule(boolean enabled) {
+        this.maximumCaptureRule = enabled;
+        for (Worker worker : workers) {
+            worker.moveLogic.setMaximumCaptureRule(enabled);
+        }
+        root = -1; // Drzewo zbudowane według innych zasad nie nadaje się do ponownego użycia
+    }
+
+    /**
+     * Porzuca drzewo poprzednich przeszukiwań (np. przed nową partią).
+     */
+    public synchronized void clearTree() {
+        root = -1;
+    }
+
+    public SearchResult search(PositionSnapshot position) {
+        return search(position, new AtomicBoolean());
+    }
+
+    /**
+     * Wyszukuje najlepszy ruch na wszystkich wątkach. Wątek wywołujący prowadzi iteracje razem
+     * z pomocnikami i pilnuje limitów; po ich osiągnięciu (albo ustawieniu sygnału zatrzymania)
+     * wybierany jest najczęściej odwiedzany ruch korzenia.
+     * @return Wynik: ruch, ocena (szansa wygranej przeliczona na setne części pionka), największa
+     *         głębokość drzewa i liczba symulacji jako liczba węzłów.
+     */
+    public synchronized SearchResult search(PositionSnapshot position, AtomicBoolean stop) {
+        stopSignal = stop;
+        long start = System.currentTimeMillis();
+        long deadline = (timeLimitMillis > 0) ? start + timeLimitMillis : Long.MAX_VALUE;
+        Worker mainWorker = workers[0];
+        IntMoveList rootMoves = new IntMoveList();
+        mainWorker.setPosition(position);
+        mainWorker.moveLogic.generateCompleteMoves(position.getCurrentPlayer(), rootMoves);
+        if (rootMoves.isEmpty()) {
+            return new SearchResult(null, -SearchEngine.MATE_SCORE, 0, 0, System.currentTimeMillis() - start);
+        }
+        if (rootMoves.size() == 1) {
+            // Ruch wymuszony: nie ma czego przeszukiwać (drzewo zostanie dopasowane w następnym ruchu)
+            return new SearchResult(rootMoves.toMove(0), 0, 0, 0, System.currentTimeMillis() - start);
+        }
+
+        boolean reused = prepareRoot(mainWorker, position);
+        int reusedVisits = visits.get(root);
+        playouts.set(0);
+        maxDepth.set(0);
+
+        AtomicBoolean finished = new AtomicBoolean(); // Sygnał wątku głównego dla pomocników
+        List<Future<?>> helperTasks = new ArrayList<>();
+        for (int i = 1; i < workers.length; i++) {
+            Worker helper = workers[i];
+            helperTasks.add(helperPool.submit(() -> helper.run(position, finished)));
+        }
+        long limit = playoutLimit;
+        while (!stop.get()) {
+            mainWorker.iterate(position);
+            long done = playouts.incrementAndGet();
+            if ((limit > 0 && done >= limit) || ((done & 63) == 0 && System.currentTimeMillis() >= deadline)) {
+                break;
+            }
+        }
+        finished.set(true);
+        for (Future<?> task : helperTasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                logger.error("MctsSearch: Błąd wątku pomocniczego.", e.getCause());
+            }
+        }
+
+        int best = bestChild(root);
+        int bestIndex = 0;
+        for (int i = 0; i < rootMoves.size(); i++) {
+            if (rootMoves.get(i) == nodeMoves[best] && rootMoves.getCapturedMask(i) == nodeCaptured[best]) {
+                bestIndex = i;
+                break;
+            }
+        }
+        SearchResult result = new SearchResult(rootMoves.toMove(bestIndex), scoreOf(best), maxDepth.get(), playouts.get(),
+                System.currentTimeMillis() - start);
+        logger.debug("MctsSearch: " + result + ", węzły drzewa " + Math.min(allocated.get(), capacity)
+                + (reused ? ", drzewo użyte ponownie (" + reusedVisits + " wizyt korzenia)" : ""));
+        return result;
+    }
+
+    /**
+     * Zatrzymuje trwające przeszukiwanie (można wywołać z innego wątku).
+     */
+    public void stop() {
+        AtomicBoolean signal = stopSignal;
+        if (signal != null) {
+            signal.set(true);
+        }
+    }
+
+    /**
+     * Zwraca liczbę węzłów w puli (także tych, które po zmianie korzenia nie należą już do drzewa).
+     */
+    public int getAllocatedNodes() {
+        return Math.min(allocated.get(), capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    /**
+     * Zamyka wątki pomocnicze. Po wywołaniu obiekt nie powinien być już używany.
+     */
+    public void shutdown() {
+        stop();
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Ustawia korzeń drzewa: węzeł starego drzewa z tą samą pozycją albo nowy, pusty węzeł.
+     * Korzeń jest zawsze rozwinięty.
+     * @return true, jeśli drzewo zostało użyte ponownie.
+     */
+    private boolean prepareRoot(Worker worker, PositionSnapshot position) {
+        boolean reused = false;
+        if (reuseTree && root >= 0 && allocated.get() < capacity / 2) {
+            worker.setPosition(rootPosition);
+            int node = worker.findNode(root, position, 2);
+            if (node >= 0) {
+                root = node;
+                reused = true;
+            }
+        }
+        if (!reused) {
+            allocated.set(0);
+            root = allocateNodes(1);
+            initNode(root, 0, 0);
+        }
+        rootPosition = position;
+        if (expansion.get(root) != EXPANDED) {
+            worker.setPosition(position);
+            expansion.set(root, EXPANDING);
+            worker.expand(root);
+        }
+        return reused;
+    }
+
+    private int allocateNodes(int count) {
+        int first = allocated.getAndAdd(count);
+        return (first + count <= capacity) ? first : -1;
+    }
+
+    private void initNode(int node, int move, int capturedMask) {
+        nodeMoves[node] = move;
+        nodeCaptured[node] = capturedMask;
+        firstChild[node] = -1;
+        childCount[node] = 0;
+        visits.set(node, 0);
+        rewards.set(node, 0);
+        expansion.set(node, UNEXPANDED);
+    }
+
+    /**
+     * Wybiera dziecko według UCT; nieodwiedzone dzieci mają pierwszeństwo.
+     */
+    private int selectChild(int parent) {
+        int first = firstChild[parent];
+        int count = childCount[parent];
+        double logParent = Math.log(Math.max(1, visits.get(parent)));
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < first + count; child++) {
+            int childVisits = visits.get(child);
+            if (childVisits == 0) {
+                return child;
+            }
+            double value = rewards.get(child) / (REWARD_SCALE * childVisits) + EXPLORATION * Math.sqrt(logParent / childVisits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private int bestChild(int parent) {
+        int best = firstChild[parent];
+        for (int child = best + 1; child < firstChild[parent] + childCount[parent]; child++) {
+            if (visits.get(child) > visits.get(best)) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Przelicza średni wynik ruchu na ocenę w setnych częściach pionka (odwrotność {@link #winProbability}).
+     */
+    private int scoreOf(int node) {
+        int nodeVisits = visits.get(node);
+        double winRate = (nodeVisits == 0) ? 0.5 : rewards.get(node) / (REWARD_SCALE * nodeVisits);
+        winRate = Math.max(0.001, Math.min(0.999, winRate));
+        return (int) Math.round(EVAL_SCALE * Math.log(winRate / (1 - winRate)));
+    }
+
+    private static double winProbability(int score) {
+        return 1 / (1 + Math.exp(-score / EVAL_SCALE));
+    }
+
+    /**
+     * Stan jednego wątku: własna plansza, generator ruchów, ścieżka bieżącej iteracji i generator liczb losowych.
+     */
+    private final class Worker {
+        private final BoardState boardState = new BoardState();
+        private final TurnManager turnManager = new TurnManager(boardState);
+        private final MoveLogic moveLogic = new MoveLogic(boardState, turnManager);
+        private final MoveExecutor moveExecutor = new MoveExecutor(boardState, turnManager, moveLogic);
+        private final IntMoveList moves = new IntMoveList();
+        private final IntMoveList replies = new IntMoveList();
+        private final int[] path = new int[MAX_TREE_DEPTH + 2];
+        private final boolean[] whiteMoved = new boolean[MAX_TREE_DEPTH + 2]; // Czy ruch do węzła ścieżki wykonały białe
+        private final SplittableRandom random;
+
+        Worker(int index) {
+            this.random = new SplittableRandom(0x5DEECE66DL * (index + 1));
+            moveLogic.setMaximumCaptureRule(maximumCaptureRule);
+        }
+
+        void setPosition(PositionSnapshot position) {
+            boardState.setPosition(position.getWhiteMask(), position.getBlackMask(), position.getKingsMask());
+            turnManager.restore(position.getCurrentPlayer(), position.isJumpMadeThisTurn(),
+                    position.getLastJumpingPieceRow(), position.getLastJumpingPieceCol());
+            moveExecutor.clearUndoHistory();
+        }
+
+        void run(PositionSnapshot position, AtomicBoolean finished) {
+            while (!finished.get()) {
+                iterate(position);
+                playouts.incrementAndGet();
+            }
+        }
+
+        /**
+         * Jedna iteracja MCTS: wybór ścieżki, rozwinięcie liścia, symulacja i propagacja wyniku.
+         */
+        void iterate(PositionSnapshot position) {
+            setPosition(position);
+            int node = root;
+            int depth = 0;
+            path[0] = node;
+            visits.incrementAndGet(node);
+            while (expansion.get(node) == EXPANDED && childCount[node] > 0 && depth < MAX_TREE_DEPTH) {
+                node = selectChild(node);
+                descend(node, ++depth);
+            }
+            if (visits.get(node) > 1 && depth < MAX_TREE_DEPTH && expansion.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+                expand(node);
+                if (childCount[node] > 0) {
+                    node = firstChild[node] + random.nextInt(childCount[node]);
+                    descend(node, ++depth);
+                }
+            }
+            maxDepth.accumulateAndGet(depth, Math::max);
+
+            double whiteScore = playout();
+            for (int i = 1; i <= depth; i++) {
+                double reward = whiteMoved[i] ? whiteScore : 1 - whiteScore;
+                rewards.addAndGet(path[i], Math.round(reward * REWARD_SCALE));
+            }
+        }
+
+        /**
+         * Wykonuje ruch do węzła i od razu liczy jego wizytę (wirtualna przegrana do czasu propagacji wyniku).
+         */
+        private void descend(int node, int depth) {
+            visits.incrementAndGet(node);
+            path[depth] = node;
+            whiteMoved[depth] = turnManager.getCurrentPlayer() == PlayerColor.WHITE;
+            moveExecutor.make(nodeMoves[node], nodeCaptured[node]);
+        }
+
+        /**
+         * Tworzy dzieci węzła dla wszystkich ruchów z bieżącej pozycji. Gdy pula jest pełna, węzeł
+         * pozostaje liściem (bez dzieci), a kolejne iteracje tylko rozgrywają z niego symulacje.
+         */
+        void expand(int node) {
+            moveLogic.generateCompleteMoves(turnManager.getCurrentPlayer(), moves);
+            int first = moves.isEmpty() ? -1 : allocateNodes(moves.size());
+            if (first >= 0) {
+                for (int i = 0; i < moves.size(); i++) {
+                    initNode(first + i, moves.get(i), moves.getCapturedMask(i));
+                }
+                firstChild[node] = first;
+                childCount[node] = moves.size();
+            }
+            expansion.set(node, EXPANDED); // Zapis ulotny publikuje dzieci innym wątkom
+        }
+
+        /**
+         * Rozgrywa symulację z bieżącej pozycji.
+         * @return Wynik z punktu widzenia białych (1 = wygrana, 0 = przegrana).
+         */
+        private double playout() {
+            EndgameTablebase table = tablebase;
+            PlayoutPolicy policy = playoutPolicy;
+            for (int ply = 0; ply < PLAYOUT_PLIES; ply++) {
+                PlayerColor mover = turnManager.getCurrentPlayer();
+                if (table != null && !turnManager.isJumpMadeThisTurn()
+                        && Integer.bitCount(boardState.getOccupiedMask()) <= table.getMaxPieces()) {
+                    int code = table.probe(boardState.getWhiteMask(), boardState.getBlackMask(), boardState.getKingsMask(), mover);
+                    if (code != EndgameTablebase.NOT_FOUND) {
+                        double moverScore = (code == EndgameTablebase.DRAW) ? 0.5 : EndgameTablebase.isWin(code) ? 1 : 0;
+                        return mover == PlayerColor.WHITE ? moverScore : 1 - moverScore;
+                    }
+                }
+                moveLogic.generateCompleteMoves(mover, moves);
+                if (moves.isEmpty()) {
+                    return mover == PlayerColor.WHITE ? 0 : 1; // Gracz bez ruchu przegrywa
+                }
+                int index = (policy == PlayoutPolicy.CAPTURE_BIASED) ? chooseBiasedMove() : random.nextInt(moves.size());
+                moveExecutor.make(moves.get(index), moves.getCapturedMask(index));
+            }
+            return winProbability(evaluator.evaluate(boardState, PlayerColor.WHITE));
+        }
+
+        /**
+         * Wybiera ruch symulacji: promocję, jeśli jest dostępna, a wśród cichych ruchów taki, po którym
+         * przeciwnik nie ma bicia (kilka losowań). Bicia są obowiązkowe, więc wybierane są losowo.
+         */
+        private int chooseBiasedMove() {
+            int size = moves.size();
+            int first = moves.get(0);
+            if (PackedMove.isJump(first) || PackedMove.isSequence(first)) {
+                return random.nextInt(size);
+            }
+            for (int i = 0; i < size; i++) {
+                if (PackedMove.isPromotion(moves.get(i))) {
+                    return i;
+                }
+            }
+            int index = random.nextInt(size);
+            for (int attempt = 1; attempt < SAFE_MOVE_ATTEMPTS && givesCapture(index); attempt++) {
+                index = random.nextInt(size);
+            }
+            return index;
+        }
+
+        private boolean givesCapture(int index) {
+            moveExecutor.make(moves.get(index), moves.getCapturedMask(index));
+            replies.clear();
+            moveLogic.generateJumps(turnManager.getCurrentPlayer(), replies); // Pełny ruch kończy turę: na ruchu jest przeciwnik
+            moveExecutor.unmake();
+            return !replies.isEmpty();
+        }
+
+        /**
+         * Szuka w drzewie (najwyżej {@code depth} półruchów poniżej węzła z bieżącą pozycją) węzła z podaną pozycją.
+         * @return Indeks węzła lub -1.
+         */
+        int findNode(int node, PositionSnapshot target, int depth) {
+            if (boardState.getWhiteMask() == target.getWhiteMask() && boardState.getBlackMask() == target.getBlackMask()
+                    && boardState.getKingsMask() == target.getKingsMask()
+                    && turnManager.getCurrentPlayer() == target.getCurrentPlayer()
+                    && turnManager.isJumpMadeThisTurn() == target.isJumpMadeThisTurn()) {
+                return node;
+            }
+            if (depth == 0 || expansion.get(node) != EXPANDED) {
+                return -1;
+            }
+            for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+                moveExecutor.make(nodeMoves[child], nodeCaptured[child]);
+                int found = findNode(child, target, depth - 1);
+                moveExecutor.unmake();
+                if (found >= 0) {
+                    return found;
+                }
+            }
+            return -1;
+        }
+    }
+}
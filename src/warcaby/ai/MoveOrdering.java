@@ -0,0 +1,128 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.boardcomponents.IntMoveList;
+import warcaby.gamelogic.boardcomponents.PackedMove;
+
+import java.util.Arrays;
+
+/**
+ * Kolejność przeszukiwania ruchów w węźle: najpierw ruch z tablicy transpozycji, potem bicia
+ * (więcej zbitych pionków, zwłaszcza damek, wcześniej), potem ruchy-zabójcy (ciche ruchy, które
+ * niedawno dały odcięcie na tym samym poziomie), a na końcu pozostałe ciche ruchy według tablicy
+ * historii (from x to), w której ruchy zyskują punkty za każde odcięcie.
+ * Ruchy są wybierane leniwie (selection sort): po odcięciu beta reszta listy nie jest sortowana.
+ * Każdy silnik ma własną instancję; nie jest bezpieczna wątkowo.
+ */
+final class MoveOrdering {
+    private static final int HASH_MOVE_SCORE = 1 << 30;
+    private static final int CAPTURE_SCORE = 1 << 24;
+    private static final int KILLER_SCORE = 1 << 22;
+    private static final int PROMOTION_SCORE = 1 << 21;
+    private static final int HISTORY_LIMIT = (1 << 20) - 1; // Historia nie może dogonić ruchów-zabójców
+
+    private final int[][] killers;  // [poziom][slot] -> ruch (PackedMove) lub 0
+    private final int[] history = new int[32 * 32]; // [from * 32 + to] -> punkty za odcięcia
+    private final int[][] scores;   // [poziom][indeks ruchu] -> ocena kolejności
+
+    MoveOrdering(int maxPly) {
+        this.killers = new int[maxPly + 1][2];
+        this.scores = new int[maxPly + 1][64];
+    }
+
+    /**
+     * Przygotowuje heurystyki do nowego przeszukiwania: ruchy-zabójcy są czyszczone, a historia
+     * przycinana o połowę, więc starsze odcięcia tracą znaczenie, ale nie znikają.
+     */
+    void newSearch() {
+        for (int[] slots : killers) {
+            slots[0] = 0;
+            slots[1] = 0;
+        }
+        for (int i = 0; i < history.length; i++) {
+            history[i] >>= 1;
+        }
+    }
+
+    /**
+     * Usuwa ruchy-zabójców i całą historię (przed nową partią).
+     */
+    void clear() {
+        for (int[] slots : killers) {
+            slots[0] = 0;
+            slots[1] = 0;
+        }
+        Arrays.fill(history, 0);
+    }
+
+    /**
+     * Ocenia kolejność wszystkich ruchów listy poziomu {@code ply}.
+     * @param hashMove Ruch z tablicy transpozycji lub 0.
+     * @param kingsMask Maska damek (bicie damki jest ważniejsze niż bicie pionka).
+     */
+    void scoreMoves(IntMoveList moves, int ply, int hashMove, int kingsMask) {
+        if (scores[ply].length < moves.size()) {
+            scores[ply] = new int[Math.max(moves.size(), scores[ply].length * 2)];
+        }
+        int[] plyScores = scores[ply];
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            int score;
+            if (move == hashMove) {
+                score = HASH_MOVE_SCORE;
+            } else if (isCapture(move)) {
+                int captured = PackedMove.isSequence(move) ? moves.getCapturedMask(i) : 1 << PackedMove.capturedSquare(move);
+                score = CAPTURE_SCORE + Integer.bitCount(captured) * 64 + Integer.bitCount(captured & kingsMask) * 16
+                        + (PackedMove.isPromotion(move) ? 8 : 0);
+            } else if (move == killers[ply][0]) {
+                score = KILLER_SCORE + 1;
+            } else if (move == killers[ply][1]) {
+                score = KILLER_SCORE;
+            } else {
+                score = history[historyIndex(move)] + (PackedMove.isPromotion(move) ? PROMOTION_SCORE : 0);
+            }
+            plyScores[i] = score;
+        }
+    }
+
+    /**
+     * Przenosi na pozycję {@code index} najlepiej oceniony z ruchów {@code index..size-1}.
+     */
+    void selectNext(IntMoveList moves, int ply, int index) {
+        int[] plyScores = scores[ply];
+        int best = index;
+        for (int i = index + 1; i < moves.size(); i++) {
+            if (plyScores[i] > plyScores[best]) {
+                best = i;
+            }
+        }
+        if (best != index) {
+            moves.swap(index, best);
+            int score = plyScores[index];
+            plyScores[index] = plyScores[best];
+            plyScores[best] = score;
+        }
+    }
+
+    /**
+     * Zapamiętuje ruch, który dał odcięcie beta. Bicia nie są zapamiętywane (i tak idą na początek).
+     */
+    void recordCutoff(int move, int ply, int depth) {
+        if (isCapture(move)) {
+            return;
+        }
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int index = historyIndex(move);
+        history[index] = Math.min(HISTORY_LIMIT, history[index] + depth * depth);
+    }
+
+    private static boolean isCapture(int move) {
+        return PackedMove.isJump(move) || PackedMove.isSequence(move);
+    }
+
+    private static int historyIndex(int move) {
+        return (PackedMove.from(move) << 5) | PackedMove.to(move);
+    }
+}
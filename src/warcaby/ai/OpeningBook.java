@@ -0,0 +1,197 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.PositionSnapshot;
+import warcaby.gamelogic.boardcomponents.BoardState;
+import warcaby.gamelogic.boardcomponents.IntMoveList;
+import warcaby.gamelogic.boardcomponents.Move;
+import warcaby.gamelogic.boardcomponents.MoveLogic;
+import warcaby.gamelogic.boardcomponents.PackedMove;
+import warcaby.gamelogic.boardcomponents.TurnManager;
+import warcaby.utils.Logger;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Książka debiutowa: plik rekordów (klucz pozycji, ruch, waga, ocena) posortowanych po kluczu,
+ * odwzorowany w pamięci przez {@link FileChannel#map} i przeszukiwany binarnie. Plik nie jest
+ * wczytywany do sterty, a odczyty nie zmieniają stanu bufora, więc jedna książka może być
+ * używana równocześnie przez wiele wątków (np. przez wiele partii botów na serwerze).
+ *
+ * Format pliku (kolejność bajtów big-endian):
+ * <pre>
+ * nagłówek:  int MAGIC, int liczba rekordów
+ * rekord:    long klucz Zobrista, int ruch (PackedMove), int maska zbitych pionków, int waga, int ocena
+ * </pre>
+ * Plik tworzy {@link OpeningBookBuilder}.
+ */
+public class OpeningBook {
+    static final int MAGIC = 0x57424B31; // "WBK1"
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 24;
+    static final int MIN_SCORE = 30; // Ruchy, po których gracz zdobywał mniej punktów (w procentach), nie są grane
+
+    private static final Logger logger = new Logger(OpeningBook.class);
+
+    private final MappedByteBuffer buffer;
+    private final int recordCount;
+
+    private OpeningBook(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Plik nie jest książką debiutową.");
+        }
+        this.recordCount = buffer.getInt(4);
+        if ((long) HEADER_SIZE + (long) recordCount * RECORD_SIZE > buffer.capacity()) {
+            throw new IOException("Książka debiutowa jest uszkodzona (za mało rekordów).");
+        }
+    }
+
+    /**
+     * Otwiera książkę debiutową, odwzorowując plik w pamięci.
+     * @throws IOException jeśli pliku nie da się odczytać lub nie jest książką.
+     */
+    public static OpeningBook open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return new OpeningBook(buffer); // Odwzorowanie pozostaje ważne po zamknięciu kanału
+        }
+    }
+
+    /**
+     * Otwiera książkę, jeśli plik istnieje; błędy są logowane, a wynikiem jest wtedy null.
+     */
+    public static OpeningBook openIfExists(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            OpeningBook book = open(path);
+            logger.info("OpeningBook: Wczytano książkę debiutową " + path + " (" + book.size() + " rekordów).");
+            return book;
+        } catch (IOException e) {
+            logger.error("OpeningBook: Nie udało się otworzyć książki " + path, e);
+            return null;
+        }
+    }
+
+    public int size() {
+        return recordCount;
+    }
+
+    /**
+     * Wybiera ruch z książki dla podanej pozycji, losowo z prawdopodobieństwem proporcjonalnym do wagi
+     * pomnożonej przez ocenę, więc częściej grane ruchy z lepszym wynikiem są wybierane częściej.
+     * Ruchy z oceną poniżej {@link #MIN_SCORE} są pomijane. Ruchy z książki są sprawdzane z listą
+     * legalnych ruchów pozycji, więc uszkodzony lub niepasujący wpis nigdy nie da nielegalnego ruchu.
+     * @return Ruch z książki lub null, jeśli pozycji nie ma w książce albo żaden jej ruch nie ma dobrej oceny.
+     */
+    public Move selectMove(PositionSnapshot position) {
+        if (position.isJumpMadeThisTurn()) {
+            return null; // Książka zawiera tylko pozycje z początku tury
+        }
+        int first = findFirst(position.getPositionKey());
+        if (first < 0) {
+            return null;
+        }
+
+        IntMoveList legalMoves = generateLegalMoves(position);
+        long totalWeight = 0;
+        int end = first;
+        for (; end < recordCount && keyAt(end) == position.getPositionKey(); end++) {
+            if (indexOfLegal(legalMoves, end) >= 0) {
+                totalWeight += selectionWeight(end);
+            }
+        }
+        if (totalWeight == 0) {
+            return null;
+        }
+        long pick = ThreadLocalRandom.current().nextLong(totalWeight);
+        for (int i = first; i < end; i++) {
+            int index = indexOfLegal(legalMoves, i);
+            if (index < 0) {
+                continue;
+            }
+            pick -= selectionWeight(i);
+            if (pick < 0) {
+                return legalMoves.toMove(index);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waga losowania rekordu: liczba partii razy ocena (0, jeśli ocena jest poniżej {@link #MIN_SCORE}).
+     */
+    private long selectionWeight(int record) {
+        int score = Math.min(100, intAt(record, 20));
+        if (score < MIN_SCORE) {
+            return 0;
+        }
+        return (long) Math.max(0, intAt(record, 16)) * score;
+    }
+
+    /**
+     * Zwraca indeks pierwszego rekordu o podanym kluczu lub -1 (wyszukiwanie binarne).
+     */
+    private int findFirst(long key) {
+        int low = 0;
+        int high = recordCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = keyAt(mid);
+            if (midKey < key) {
+                low = mid + 1;
+            } else {
+                if (midKey == key) {
+                    found = mid;
+                }
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private int indexOfLegal(IntMoveList legalMoves, int record) {
+        int move = intAt(record, 8);
+        int capturedMask = intAt(record, 12);
+        for (int i = 0; i < legalMoves.size(); i++) {
+            int legal = legalMoves.get(i);
+            if (PackedMove.from(legal) == PackedMove.from(move) && PackedMove.to(legal) == PackedMove.to(move)
+                    && legalMoves.getCapturedMask(i) == capturedMask) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Generuje pełne ruchy gracza na ruchu w pozycji z migawki.
+     */
+    static IntMoveList generateLegalMoves(PositionSnapshot position) {
+        BoardState boardState = new BoardState();
+        TurnManager turnManager = new TurnManager(boardState);
+        MoveLogic moveLogic = new MoveLogic(boardState, turnManager);
+        boardState.setPosition(position.getWhiteMask(), position.getBlackMask(), position.getKingsMask());
+        turnManager.restore(position.getCurrentPlayer(), false, -1, -1);
+        IntMoveList moves = new IntMoveList();
+        moveLogic.generateCompleteMoves(position.getCurrentPlayer(), moves);
+        return moves;
+    }
+
+    private long keyAt(int record) {
+        return buffer.getLong(HEADER_SIZE + record * RECORD_SIZE);
+    }
+
+    private int intAt(int record, int offset) {
+        return buffer.getInt(HEADER_SIZE + record * RECORD_SIZE + offset);
+    }
+}
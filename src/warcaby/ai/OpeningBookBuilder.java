@@ -0,0 +1,194 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.Board;
+import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.boardcomponents.Bitboards;
+import warcaby.gamelogic.boardcomponents.Move;
+import warcaby.gamelogic.boardcomponents.PackedMove;
+import warcaby.utils.ApplicationConfig;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buduje plik {@link OpeningBook} z zestawu partii. Każda partia jest odtwarzana od pozycji
+ * początkowej, a dla pierwszych {@code maxPly} ruchów zapamiętywane są pary (pozycja, ruch):
+ * waga rekordu to liczba partii, w których ruch zagrano, a ocena to wynik punktowy tych partii
+ * z punktu widzenia gracza wykonującego ruch (0-100).
+ *
+ * Plik partii zawiera jedną partię w wierszu: pełne ruchy w notacji pól ("22-18", "15x22x31")
+ * oddzielone spacjami, zakończone wynikiem "1-0", "0-1" lub "1/2-1/2". Wiersze puste i zaczynające
+ * się od '#' są pomijane.
+ *
+ * Użycie: {@code OpeningBookBuilder <partie.txt> <książka.bin> [--max-ply N] [--min-count N]}
+ */
+public class OpeningBookBuilder {
+    private final int maxPly;
+    private final Map<Long, Map<Long, int[]>> entries = new HashMap<>(); // klucz -> (ruch+maska -> [liczba, punkty*2])
+    private int gameCount = 0;
+
+    public OpeningBookBuilder(int maxPly) {
+        this.maxPly = maxPly;
+    }
+
+    /**
+     * Dodaje partię do książki.
+     * @param moves Pełne ruchy partii od pozycji początkowej.
+     * @param whiteScore Wynik białych: 1 (wygrana), 0.5 (remis) lub 0 (przegrana).
+     * @throws IllegalArgumentException jeśli któryś ruch jest nielegalny.
+     */
+    public void addGame(List<Move> moves, double whiteScore) {
+        Board board = new Board();
+        int halfPoints = (int) Math.round(whiteScore * 2);
+        for (int ply = 0; ply < moves.size() && ply < maxPly; ply++) {
+            Move move = moves.get(ply);
+            long key = board.getPositionKey();
+            PlayerColor mover = board.getCurrentPlayer();
+            if (!board.makeMove(move)) {
+                throw new IllegalArgumentException("Nielegalny ruch " + move + " w ruchu " + (ply + 1) + ": " + board.getLastMoveValidationError());
+            }
+            int[] stats = entries.computeIfAbsent(key, k -> new HashMap<>()).computeIfAbsent(packMoveKey(move), k -> new int[2]);
+            stats[0]++;
+            stats[1] += (mover == PlayerColor.WHITE) ? halfPoints : 2 - halfPoints;
+        }
+        gameCount++;
+    }
+
+    /**
+     * Dodaje partię zapisaną w notacji pól.
+     * @throws IllegalArgumentException jeśli zapis jest niepoprawny.
+     */
+    public void addGame(String line) {
+        String[] tokens = line.trim().split("\\s+");
+        if (tokens.length == 0) {
+            throw new IllegalArgumentException("Pusta partia.");
+        }
+        double whiteScore = parseResult(tokens[tokens.length - 1]);
+        Board board = new Board();
+        List<Move> moves = new ArrayList<>();
+        for (int i = 0; i < tokens.length - 1 && moves.size() < maxPly; i++) {
+            Move move = findMove(board, tokens[i]);
+            if (move == null || !board.makeMove(move)) {
+                throw new IllegalArgumentException("Nielegalny ruch \"" + tokens[i] + "\" w partii: " + line);
+            }
+            moves.add(move);
+        }
+        addGame(moves, whiteScore);
+    }
+
+    /**
+     * Zapisuje książkę do pliku, pomijając ruchy zagrane rzadziej niż {@code minCount} razy.
+     * @return Liczba zapisanych rekordów.
+     */
+    public int write(Path path, int minCount) throws IOException {
+        List<long[]> records = new ArrayList<>(); // [klucz, ruch, maska, waga, ocena]
+        for (Map.Entry<Long, Map<Long, int[]>> position : entries.entrySet()) {
+            for (Map.Entry<Long, int[]> move : position.getValue().entrySet()) {
+                int[] stats = move.getValue();
+                if (stats[0] < minCount) {
+                    continue;
+                }
+                long moveKey = move.getKey();
+                records.add(new long[]{position.getKey(), (int) (moveKey >>> 32), (int) moveKey, stats[0], stats[1] * 50L / stats[0]});
+            }
+        }
+        records.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[3], a[3]));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(records.size());
+            for (long[] record : records) {
+                out.writeLong(record[0]);
+                out.writeInt((int) record[1]);
+                out.writeInt((int) record[2]);
+                out.writeInt((int) record[3]);
+                out.writeInt((int) record[4]);
+            }
+        }
+        return records.size();
+    }
+
+    public int getGameCount() {
+        return gameCount;
+    }
+
+    private static long packMoveKey(Move move) {
+        int from;
+        int to;
+        if (move.isCaptureSequence()) {
+            from = move.path[0];
+            to = move.path[move.path.length - 1];
+        } else {
+            from = Bitboards.toSquare(move.fromRow, move.fromCol);
+            to = Bitboards.toSquare(move.toRow, move.toCol);
+        }
+        int capturedMask = move.isCaptureSequence() ? move.capturedMask : 0;
+        return ((long) PackedMove.encode(from, to, -1, false) << 32) | (capturedMask & 0xFFFFFFFFL);
+    }
+
+    private static Move findMove(Board board, String notation) {
+        for (Move move : board.getAllCompleteMoveRoutesForPlayer(board.getCurrentPlayer())) {
+            if (move.toString().equals(notation)) {
+                return move;
+            }
+        }
+        return null;
+    }
+
+    static double parseResult(String token) {
+        switch (token) {
+            case "1-0": return 1.0;
+            case "0-1": return 0.0;
+            case "1/2-1/2": return 0.5;
+            default: throw new IllegalArgumentException("Nieznany wynik partii: " + token);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Użycie: OpeningBookBuilder <partie.txt> <książka.bin> [--max-ply N] [--min-count N]");
+            return;
+        }
+        int maxPly = 16;
+        int minCount = 2;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--max-ply": maxPly = Integer.parseInt(args[++i]); break;
+                case "--min-count": minCount = Integer.parseInt(args[++i]); break;
+                default: System.err.println("Nieznana opcja: " + args[i]); return;
+            }
+        }
+        ApplicationConfig.disableLogging(); // Board loguje każdy ruch
+
+        OpeningBookBuilder builder = new OpeningBookBuilder(maxPly);
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    builder.addGame(line);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Wiersz " + lineNumber + " pominięty: " + e.getMessage());
+                }
+            }
+            int written = builder.write(Paths.get(args[1]), minCount);
+            System.out.println("Partie: " + builder.getGameCount() + ", rekordy książki: " + written);
+        } catch (IOException e) {
+            System.err.println("Błąd wejścia/wyjścia: " + e.getMessage());
+        }
+    }
+}
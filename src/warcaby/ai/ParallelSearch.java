@@ -0,0 +1,168 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.PositionSnapshot;
+import warcaby.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Przeszukiwanie wielowątkowe w schemacie Lazy SMP: kilka niezależnych silników {@link SearchEngine}
+ * przeszukuje tę samą pozycję, współdzieląc jedną {@link TranspositionTable}. Wątki pomocnicze
+ * zaczynają od przesuniętych głębokości, więc wypełniają tablicę wynikami, z których korzysta
+ * wątek główny. Gdy wątek główny skończy (limit czasu, węzłów lub głębokości), zatrzymuje pomocników
+ * i wybiera wynik z największą ukończoną głębokością.
+ * Przy jednym wątku działa dokładnie jak pojedynczy {@link SearchEngine}.
+ */
+public class ParallelSearch {
+    private static final Logger logger = new Logger(ParallelSearch.class);
+
+    private final TranspositionTable transpositionTable;
+    private final SearchEngine mainEngine;
+    private final List<SearchEngine> helperEngines = new ArrayList<>();
+    private final ExecutorService helperPool; // null, jeśli przeszukiwanie jest jednowątkowe
+    private volatile AtomicBoolean stopSignal;
+
+    /**
+     * @param threads Liczba wątków (wraz z głównym); 0 oznacza liczbę dostępnych rdzeni.
+     * @param timeLimitMillis Limit czasu na ruch (0 = bez limitu).
+     * @param hashSizeMb Rozmiar współdzielonej tablicy transpozycji.
+     */
+    public ParallelSearch(int threads, long timeLimitMillis, int hashSizeMb) {
+        this(threads, timeLimitMillis, hashSizeMb, new Evaluator());
+    }
+
+    /**
+     * @param evaluator Funkcja oceny; bezstanowa, współdzielona przez wszystkie silniki.
+     */
+    public ParallelSearch(int threads, long timeLimitMillis, int hashSizeMb, Evaluator evaluator) {
+        int threadCount = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+        this.transpositionTable = new TranspositionTable(hashSizeMb);
+        this.mainEngine = new SearchEngine(timeLimitMillis, evaluator, transpositionTable);
+        for (int i = 1; i < threadCount; i++) {
+            SearchEngine helper = new SearchEngine(0, evaluator, transpositionTable); // Pomocnika zatrzymuje wątek główny
+            helper.setDepthOffset(i % 2);
+            helperEngines.add(helper);
+        }
+        this.helperPool = helperEngines.isEmpty() ? null : Executors.newFixedThreadPool(helperEngines.size(), runnable -> {
+            Thread thread = new Thread(runnable, "warcaby-search-helper");
+            thread.setDaemon(true); // Nie blokuje zamknięcia aplikacji
+            return thread;
+        });
+    }
+
+    /**
+     * Wyszukuje najlepszy ruch na wszystkich wątkach. Wątek wywołujący prowadzi główne przeszukiwanie.
+     * @param position Migawka pozycji do przeszukania.
+     * @return Wynik z największą ukończoną głębokością (przy remisie wynik wątku głównego).
+     */
+    public SearchResult search(PositionSnapshot position) {
+        return search(position, new AtomicBoolean());
+    }
+
+    /**
+     * Wersja {@link #search(PositionSnapshot)} z sygnałem zatrzymania dostarczonym przez wywołującego,
+     * dzięki czemu przeszukiwanie można anulować także zanim faktycznie się rozpocznie.
+     */
+    public SearchResult search(PositionSnapshot position, AtomicBoolean stop) {
+        stopSignal = stop;
+        transpositionTable.newSearch();
+        AtomicBoolean helpersStop = new AtomicBoolean(); // Sygnał wywołującego zatrzymuje wątek główny, ten - pomocników
+        List<Future<SearchResult>> helperResults = new ArrayList<>();
+        for (SearchEngine helper : helperEngines) {
+            helperResults.add(helperPool.submit(() -> helper.search(position, helpersStop)));
+        }
+
+        SearchResult best = mainEngine.search(position, stop);
+        helpersStop.set(true); // Wątek główny skończył: pomocnicy przerywają przeszukiwanie
+        long totalNodes = best.getNodes();
+        for (Future<SearchResult> future : helperResults) {
+            try {
+                SearchResult result = future.get();
+                totalNodes += result.getNodes();
+                if (result.getBestMove() != null && result.getDepth() > best.getDepth()) {
+                    best = result;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                logger.error("ParallelSearch: Błąd wątku pomocniczego.", e.getCause());
+            }
+        }
+        return new SearchResult(best.getBestMove(), best.getScore(), best.getDepth(), totalNodes, best.getElapsedMillis());
+    }
+
+    /**
+     * Zatrzymuje trwające przeszukiwanie (można wywołać z innego wątku).
+     */
+    public void stop() {
+        AtomicBoolean signal = stopSignal;
+        if (signal != null) {
+            signal.set(true);
+        }
+    }
+
+    /**
+     * Usuwa wyniki poprzednich przeszukiwań: tablicę transpozycji i heurystyki kolejności ruchów
+     * wszystkich silników (przed nową partią).
+     */
+    public void clear() {
+        transpositionTable.clear();
+        mainEngine.clearHistory();
+        for (SearchEngine helper : helperEngines) {
+            helper.clearHistory();
+        }
+    }
+
+    public void setTimeLimitMillis(long timeLimitMillis) {
+        mainEngine.setTimeLimitMillis(timeLimitMillis);
+    }
+
+    /**
+     * Ustawia limit węzłów wątku głównego; pomocnicy kończą razem z nim.
+     */
+    public void setNodeLimit(long nodeLimit) {
+        mainEngine.setNodeLimit(nodeLimit);
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        mainEngine.setMaxDepth(maxDepth);
+        for (SearchEngine helper : helperEngines) {
+            helper.setMaxDepth(maxDepth);
+        }
+    }
+
+    /**
+     * Ustawia bazę końcówek wszystkim silnikom (null wyłącza jej użycie).
+     */
+    public void setTablebase(EndgameTablebase tablebase) {
+        mainEngine.setTablebase(tablebase);
+        for (SearchEngine helper : helperEngines) {
+            helper.setTablebase(tablebase);
+        }
+    }
+
+    public int getThreadCount() {
+        return helperEngines.size() + 1;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    /**
+     * Zamyka wątki pomocnicze. Po wywołaniu obiekt nie powinien być już używany.
+     */
+    public void shutdown() {
+        stop();
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+        }
+    }
+}
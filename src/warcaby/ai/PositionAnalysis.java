@@ -0,0 +1,73 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.PositionSnapshot;
+import warcaby.gamelogic.boardcomponents.Bitboards;
+import warcaby.gamelogic.boardcomponents.Move;
+
+/**
+ * Wynik analizy pozycji z {@link PositionAnalyzer}: podpowiedź najlepszego ruchu z oceną oraz pola,
+ * na których przeciwnik mógłby zbić pionki gracza na ruchu, gdyby to on był na ruchu.
+ * Obiekt jest niezmienny, więc GUI może go rysować bez synchronizacji.
+ */
+public final class PositionAnalysis {
+    private final PositionSnapshot position;
+    private final Move bestMove;
+    private final int score;
+    private final int depth;
+    private final int threatenedMask;
+
+    PositionAnalysis(PositionSnapshot position, Move bestMove, int score, int depth, int threatenedMask) {
+        this.position = position;
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.threatenedMask = threatenedMask;
+    }
+
+    /**
+     * Zwraca przeanalizowaną pozycję.
+     */
+    public PositionSnapshot getPosition() { return position; }
+
+    /**
+     * Zwraca podpowiadany ruch lub null, jeśli przeszukiwanie jeszcze go nie wyznaczyło (albo brak ruchów).
+     */
+    public Move getBestMove() { return bestMove; }
+
+    /**
+     * Zwraca ocenę pozycji z punktu widzenia gracza na ruchu (w setnych częściach pionka).
+     */
+    public int getScore() { return score; }
+
+    /**
+     * Zwraca ukończoną głębokość przeszukiwania (0 przed pierwszą iteracją lub przy ruchu wymuszonym).
+     */
+    public int getDepth() { return depth; }
+
+    /**
+     * Zwraca maskę pól (indeksy {@link Bitboards}) z pionkami gracza na ruchu, które przeciwnik może zbić.
+     */
+    public int getThreatenedMask() { return threatenedMask; }
+
+    public boolean isThreatened(int row, int col) {
+        int square = Bitboards.toSquare(row, col);
+        return square >= 0 && (threatenedMask & Bitboards.bit(square)) != 0;
+    }
+
+    /**
+     * Czy ocena oznacza wygraną lub przegraną w zasięgu przeszukiwania.
+     */
+    public boolean isDecisive() {
+        return Math.abs(score) >= SearchEngine.MATE_BOUND;
+    }
+
+    PositionAnalysis withSearchResult(SearchResult result) {
+        return new PositionAnalysis(position, result.getBestMove(), result.getScore(), result.getDepth(), threatenedMask);
+    }
+
+    @Override
+    public String toString() {
+        return "podpowiedź " + bestMove + ", ocena " + score + ", głębokość " + depth
+                + ", zagrożone pionki " + Integer.bitCount(threatenedMask);
+    }
+}
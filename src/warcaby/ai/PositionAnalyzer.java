@@ -0,0 +1,142 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.PositionSnapshot;
+import warcaby.gamelogic.boardcomponents.BoardState;
+import warcaby.gamelogic.boardcomponents.IntMoveList;
+import warcaby.gamelogic.boardcomponents.MoveLogic;
+import warcaby.gamelogic.boardcomponents.TurnManager;
+import warcaby.utils.GameConstants;
+import warcaby.utils.Logger;
+
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Analiza pozycji w tle dla podpowiedzi w GUI. Dla zleconej pozycji najpierw wyznacza pionki gracza
+ * na ruchu zagrożone biciem, a potem przeszukuje pozycję iteracyjnym pogłębianiem i przekazuje wynik
+ * każdej ukończonej głębokości, więc podpowiedź poprawia się w miarę liczenia. Zlecenie nowej pozycji
+ * przerywa analizę poprzedniej.
+ *
+ * Analiza działa na jednym wątku o niskim priorytecie z własnym silnikiem i tablicą transpozycji,
+ * więc nie zabiera czasu wątkowi Swing ani nie miesza w tablicy komputera-przeciwnika.
+ * Odbiorca wyników jest wywoływany w wątku analizy.
+ */
+public class PositionAnalyzer {
+    private static final Logger logger = new Logger(PositionAnalyzer.class);
+
+    private final ExecutorService analysisExecutor;
+    private final SearchEngine engine;
+    // Pozycja robocza do wyznaczania zagrożeń; używana tylko w wątku analizy
+    private final BoardState boardState = new BoardState();
+    private final TurnManager turnManager = new TurnManager(boardState);
+    private final MoveLogic moveLogic = new MoveLogic(boardState, turnManager);
+    private final IntMoveList replies = new IntMoveList();
+    private AtomicBoolean pendingStop; // Sygnał zatrzymania trwającej analizy lub null
+
+    public PositionAnalyzer() {
+        this(GameConstants.AI_ANALYSIS_TIME_MS);
+    }
+
+    /**
+     * @param timeLimitMillis Czas analizy jednej pozycji (0 = do przerwania).
+     */
+    public PositionAnalyzer(long timeLimitMillis) {
+        this.engine = new SearchEngine(timeLimitMillis,
+                new Evaluator(EvaluationWeights.loadIfExists(Paths.get(GameConstants.AI_EVALUATION_WEIGHTS))),
+                new TranspositionTable(GameConstants.AI_ANALYSIS_HASH_SIZE_MB));
+        this.engine.setMaxDepth(GameConstants.AI_MAX_DEPTH);
+        this.analysisExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "warcaby-analysis");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY); // Podpowiedź nie może spowalniać gry
+            return thread;
+        });
+    }
+
+    /**
+     * Ustawia bazę końcówek analizy (null wyłącza korzystanie z bazy). Działa od następnej analizy.
+     */
+    public void setTablebase(EndgameTablebase tablebase) {
+        analysisExecutor.execute(() -> engine.setTablebase(tablebase));
+    }
+
+    /**
+     * Zleca analizę pozycji, przerywając poprzednią. Odbiorca dostaje najpierw wynik z samymi
+     * zagrożeniami (bez ruchu), a potem wynik po każdej ukończonej głębokości przeszukiwania.
+     * Po przerwaniu analizy ({@link #cancel()} lub kolejne zlecenie) odbiorca nie dostaje już wyników.
+     * @param position Migawka pozycji do analizy.
+     * @param listener Odbiorca wyników, wywoływany w wątku analizy.
+     */
+    public void analyze(PositionSnapshot position, Consumer<PositionAnalysis> listener) {
+        AtomicBoolean stop = new AtomicBoolean();
+        synchronized (this) {
+            if (pendingStop != null) {
+                pendingStop.set(true);
+            }
+            pendingStop = stop;
+        }
+        analysisExecutor.execute(() -> {
+            if (stop.get()) {
+                return; // Pozycja zmieniła się, zanim analiza ruszyła
+            }
+            try {
+                runAnalysis(position, listener, stop);
+            } catch (RuntimeException e) {
+                logger.error("Błąd podczas analizy pozycji.", e);
+            }
+        });
+    }
+
+    /**
+     * Przerywa trwającą analizę; jej dalsze wyniki nie zostaną przekazane.
+     */
+    public synchronized void cancel() {
+        if (pendingStop != null) {
+            pendingStop.set(true);
+            pendingStop = null;
+        }
+    }
+
+    public void shutdown() {
+        cancel();
+        analysisExecutor.shutdownNow();
+    }
+
+    private void runAnalysis(PositionSnapshot position, Consumer<PositionAnalysis> listener, AtomicBoolean stop) {
+        PositionAnalysis threats = new PositionAnalysis(position, null, 0, 0, findThreatenedPieces(position));
+        listener.accept(threats);
+
+        engine.getTranspositionTable().newSearch();
+        engine.setIterationListener(result -> {
+            if (!stop.get()) {
+                listener.accept(threats.withSearchResult(result));
+            }
+        });
+        SearchResult result = engine.search(position, stop);
+        engine.setIterationListener(null);
+        if (!stop.get() && result.getDepth() == 0) {
+            listener.accept(threats.withSearchResult(result)); // Ruch wymuszony lub brak ruchów: nie było iteracji
+        }
+        logger.debug("PositionAnalyzer: " + result);
+    }
+
+    /**
+     * Zwraca maskę pionków gracza na ruchu, które przeciwnik mógłby zbić, gdyby teraz był na ruchu
+     * (z uwzględnieniem całych sekwencji bić i zasady bicia największej liczby pionków).
+     */
+    private int findThreatenedPieces(PositionSnapshot position) {
+        PlayerColor opponent = (position.getCurrentPlayer() == PlayerColor.WHITE) ? PlayerColor.BLACK : PlayerColor.WHITE;
+        boardState.setPosition(position.getWhiteMask(), position.getBlackMask(), position.getKingsMask());
+        turnManager.restore(opponent, false, -1, -1);
+        moveLogic.generateCompleteMoves(opponent, replies);
+        int threatened = 0;
+        for (int i = 0; i < replies.size(); i++) {
+            threatened |= replies.getCapturedMask(i);
+        }
+        return threatened;
+    }
+}
@@ -0,0 +1,469 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.PositionSnapshot;
+import warcaby.gamelogic.boardcomponents.Bitboards;
+import warcaby.gamelogic.boardcomponents.BoardState;
+import warcaby.gamelogic.boardcomponents.IntMoveList;
+import warcaby.gamelogic.boardcomponents.MoveExecutor;
+import warcaby.gamelogic.boardcomponents.MoveLogic;
+import warcaby.gamelogic.boardcomponents.PackedMove;
+import warcaby.gamelogic.boardcomponents.TurnManager;
+import warcaby.utils.GameConstants;
+import warcaby.utils.Logger;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Silnik wyszukujący najlepszy ruch: negamax z odcięciami alfa-beta i iteracyjnym pogłębianiem.
+ * Przeszukiwanie odbywa się na własnej kopii pozycji (odtworzonej z {@link PositionSnapshot})
+ * przez make/unmake na {@link MoveExecutor}, więc nie dotyka planszy, którą czyta GUI.
+ * Jeden poziom drzewa to jeden pełny ruch: cała sekwencja bić jest jednym ruchem.
+ * Wyniki pozycji są zapamiętywane w {@link TranspositionTable}, która przetrwa między ruchami
+ * partii, więc kolejne przeszukiwanie zaczyna z wiedzą zebraną w poprzednich.
+ * Pozycje z małą liczbą pionków są oceniane dokładnie przez {@link EndgameTablebase}, jeśli ją ustawiono.
+ * Na końcu głębokości pozycje z obowiązkowym biciem są rozstrzygane przeszukiwaniem spoczynkowym
+ * (quiescence) tylko po biciach, więc ocena statyczna trafia wyłącznie do pozycji spokojnych.
+ * Kolejność ruchów w węzłach ustala {@link MoveOrdering}; skuteczność kolejności mierzy odsetek
+ * odcięć beta uzyskanych już pierwszym ruchem ({@link #getFirstMoveCutoffRate()}).
+ *
+ * Budżet przeszukiwania (a więc siłę gry) wyznaczają limit czasu, limit węzłów i maksymalna
+ * głębokość. Po przekroczeniu limitu przerwana iteracja jest odrzucana, a zwracany jest ruch
+ * z ostatniej ukończonej głębokości. Instancja nie jest bezpieczna wątkowo.
+ */
+public class SearchEngine {
+    public static final int MATE_SCORE = 100000; // Ocena wygranej; wygrana w n posunięciach to MATE_SCORE - n
+    private static final int MAX_PLY = 128;
+    static final int MATE_BOUND = MATE_SCORE - 1024; // Oceny powyżej to wygrane (także odległości z bazy końcówek)
+    private static final int CHECK_INTERVAL = 1023; // Co ile węzłów sprawdzany jest limit czasu
+    private static final int MAX_QUIESCENCE_DEPTH = 24; // Zabezpieczenie przed bardzo długimi wymianami
+
+    private static final Logger logger = new Logger(SearchEngine.class);
+
+    private final BoardState boardState = new BoardState();
+    private final TurnManager turnManager = new TurnManager(boardState);
+    private final MoveLogic moveLogic = new MoveLogic(boardState, turnManager);
+    private final MoveExecutor moveExecutor = new MoveExecutor(boardState, turnManager, moveLogic);
+    private final Evaluator evaluator;
+    private final TranspositionTable transpositionTable;
+    private final IntMoveList[] moveLists = new IntMoveList[MAX_PLY + 1]; // Osobna lista ruchów na każdy poziom
+    private final MoveOrdering moveOrdering = new MoveOrdering(MAX_PLY);
+    private EndgameTablebase tablebase; // Baza końcówek lub null
+    private Consumer<SearchResult> iterationListener; // Odbiorca wyników kolejnych głębokości lub null
+
+    private long timeLimitMillis;
+    private long nodeLimit = 0;   // 0 = bez limitu węzłów
+    private int maxDepth = 64;
+    private int depthOffset = 0;  // Pomocnicze wątki Lazy SMP zaczynają od większej głębokości
+
+    private long nodes;
+    private long quiescenceNodes;   // Węzły przeszukiwania spoczynkowego (wliczone także w nodes)
+    private long cutoffs;           // Liczba odcięć beta
+    private long firstMoveCutoffs;  // Liczba odcięć beta uzyskanych pierwszym przeszukanym ruchem
+    private long deadline;
+    private boolean aborted;
+    private volatile AtomicBoolean stopSignal; // Sygnał zatrzymania bieżącego przeszukiwania
+
+    public SearchEngine(long timeLimitMillis) {
+        this(timeLimitMillis, new Evaluator(), new TranspositionTable(GameConstants.AI_HASH_SIZE_MB));
+    }
+
+    /**
+     * @param timeLimitMillis Limit czasu na ruch (0 = bez limitu).
+     * @param evaluator Funkcja oceny pozycji.
+     * @param transpositionTable Tablica transpozycji (może być współdzielona przez kilka silników).
+     */
+    public SearchEngine(long timeLimitMillis, Evaluator evaluator, TranspositionTable transpositionTable) {
+        this.timeLimitMillis = timeLimitMillis;
+        this.evaluator = evaluator;
+        this.transpositionTable = transpositionTable;
+        boardState.setPieceSquareTable(evaluator.getPieceSquareTable()); // Wartości pól z wag oceny, aktualizowane przyrostowo
+        for (int i = 0; i < moveLists.length; i++) {
+            moveLists[i] = new IntMoveList();
+        }
+    }
+
+    /**
+     * Ustawia limit czasu na jeden ruch (0 = bez limitu czasu).
+     */
+    public void setTimeLimitMillis(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    /**
+     * Ustawia limit odwiedzonych węzłów na jeden ruch (0 = bez limitu). Przy tym samym limicie
+     * węzłów wynik jest powtarzalny, niezależnie od szybkości komputera.
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Ustawia maksymalną głębokość iteracyjnego pogłębiania (w pełnych ruchach).
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = Math.max(1, Math.min(maxDepth, MAX_PLY));
+    }
+
+    /**
+     * Przesuwa głębokości iteracyjnego pogłębiania (pierwsza iteracja ma głębokość 1 + offset).
+     * Używane przez {@link ParallelSearch}, aby wątki pomocnicze przeszukiwały inne głębokości niż główny.
+     */
+    public void setDepthOffset(int depthOffset) {
+        this.depthOffset = Math.max(0, depthOffset);
+    }
+
+    public void setMaximumCaptureRule(boolean enabled) {
+        moveLogic.setMaximumCaptureRule(enabled);
+    }
+
+    /**
+     * Ustawia bazę końcówek (null wyłącza jej użycie). Baza musi być wygenerowana dla tej samej
+     * zasady bicia, co ustawiona w silniku.
+     */
+    public void setTablebase(EndgameTablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Ustawia odbiorcę wyniku każdej ukończonej głębokości iteracyjnego pogłębiania (null wyłącza).
+     * Odbiorca jest wywoływany w wątku przeszukiwania, więc powinien tylko przekazać wynik dalej.
+     */
+    public void setIterationListener(Consumer<SearchResult> iterationListener) {
+        this.iterationListener = iterationListener;
+    }
+
+    /**
+     * Wyszukuje najlepszy ruch dla gracza na ruchu w podanej pozycji.
+     * @param position Migawka pozycji do przeszukania.
+     * @return Wynik przeszukiwania; jego ruch jest null, jeśli gracz nie ma żadnego ruchu.
+     */
+    public SearchResult search(PositionSnapshot position) {
+        transpositionTable.newSearch();
+        return search(position, new AtomicBoolean());
+    }
+
+    /**
+     * Wyszukuje najlepszy ruch, przerywając przeszukiwanie, gdy sygnał zatrzymania zostanie ustawiony
+     * (np. przez inny wątek). Po zatrzymaniu zwracany jest ruch z ostatniej ukończonej głębokości.
+     * Nie rozpoczyna nowej generacji tablicy transpozycji; przy tablicy współdzielonej robi to wywołujący.
+     * @param position Migawka pozycji do przeszukania.
+     * @param stopSignal Sygnał zatrzymania, może być współdzielony przez kilka silników.
+     * @return Wynik przeszukiwania; jego ruch jest null, jeśli gracz nie ma żadnego ruchu.
+     */
+    public SearchResult search(PositionSnapshot position, AtomicBoolean stopSignal) {
+        this.stopSignal = stopSignal;
+        long start = System.currentTimeMillis();
+        boardState.setPosition(position.getWhiteMask(), position.getBlackMask(), position.getKingsMask());
+        turnManager.restore(position.getCurrentPlayer(), position.isJumpMadeThisTurn(),
+                position.getLastJumpingPieceRow(), position.getLastJumpingPieceCol());
+        moveExecutor.clearUndoHistory();
+        nodes = 0;
+        quiescenceNodes = 0;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        aborted = false;
+        moveOrdering.newSearch();
+        deadline = (timeLimitMillis > 0) ? start + timeLimitMillis : Long.MAX_VALUE;
+
+        IntMoveList rootMoves = moveLists[0];
+        moveLogic.generateCompleteMoves(turnManager.getCurrentPlayer(), rootMoves);
+        if (rootMoves.isEmpty()) {
+            return new SearchResult(null, -MATE_SCORE, 0, 0, System.currentTimeMillis() - start);
+        }
+        if (rootMoves.size() == 1) {
+            // Ruch wymuszony: nie ma czego przeszukiwać
+            return new SearchResult(rootMoves.toMove(0), 0, 0, 0, System.currentTimeMillis() - start);
+        }
+
+        // Pozycja z bazy końcówek: pozycje po każdym ruchu też są w bazie, więc wystarczy głębokość 1
+        int depthLimit = (!turnManager.isJumpMadeThisTurn() && probeTablebase() != EndgameTablebase.NOT_FOUND) ? 1 : maxDepth;
+        int bestIndex = Math.max(0, indexOfMove(rootMoves, TranspositionTable.moveOf(transpositionTable.probe(positionKey()))));
+        int bestScore = 0;
+        int completedDepth = 0;
+        for (int depth = Math.min(1 + depthOffset, depthLimit); depth <= depthLimit; depth++) {
+            rootMoves.swap(0, bestIndex); // Najlepszy ruch poprzedniej iteracji przeszukiwany jako pierwszy
+            int iterationBest = -1;
+            int alpha = -MATE_SCORE - 1;
+            for (int i = 0; i < rootMoves.size(); i++) {
+                moveExecutor.make(rootMoves.get(i), rootMoves.getCapturedMask(i));
+                int score = -negamax(depth - 1, 1, -MATE_SCORE - 1, -alpha);
+                moveExecutor.unmake();
+                if (aborted) {
+                    break;
+                }
+                if (score > alpha) {
+                    alpha = score;
+                    iterationBest = i;
+                }
+            }
+            if (aborted) {
+                break; // Niepełna iteracja jest odrzucana
+            }
+            bestIndex = iterationBest;
+            bestScore = alpha;
+            completedDepth = depth;
+            transpositionTable.store(positionKey(), depth, TranspositionTable.BOUND_EXACT, bestScore, rootMoves.get(bestIndex));
+            if (iterationListener != null) {
+                iterationListener.accept(new SearchResult(rootMoves.toMove(bestIndex), bestScore, completedDepth, nodes,
+                        System.currentTimeMillis() - start));
+            }
+            if (Math.abs(bestScore) >= MATE_BOUND) {
+                break; // Znaleziono wygraną lub przegraną, głębsze przeszukiwanie nic nie zmieni
+            }
+        }
+
+        SearchResult result = new SearchResult(rootMoves.toMove(bestIndex), bestScore, completedDepth, nodes,
+                System.currentTimeMillis() - start);
+        logger.debug("SearchEngine: " + result + String.format(", węzły spoczynkowe %d, odcięcia pierwszym ruchem %.1f%%",
+                quiescenceNodes, 100 * getFirstMoveCutoffRate()));
+        return result;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        if (depth <= 0) {
+            return quiescence(ply, alpha, beta, 0);
+        }
+        nodes++;
+        if (limitReached()) {
+            return 0;
+        }
+        int tablebaseCode = probeTablebase(); // Poniżej korzenia pozycje są zawsze z początku tury
+        if (tablebaseCode != EndgameTablebase.NOT_FOUND) {
+            return tablebaseScore(tablebaseCode, ply);
+        }
+
+        IntMoveList moves = moveLists[ply];
+        moveLogic.generateCompleteMoves(turnManager.getCurrentPlayer(), moves);
+        if (moves.isEmpty()) {
+            return -MATE_SCORE + ply; // Brak ruchu oznacza przegraną; szybsza wygrana ma wyższą ocenę
+        }
+        if (ply >= MAX_PLY) {
+            return evaluator.evaluate(boardState, turnManager.getCurrentPlayer());
+        }
+
+        long key = positionKey();
+        long entry = transpositionTable.probe(key);
+        if (entry != 0) {
+            if (TranspositionTable.depthOf(entry) >= depth) {
+                int score = fromTableScore(TranspositionTable.scoreOf(entry), ply);
+                int bound = TranspositionTable.boundOf(entry);
+                if (bound == TranspositionTable.BOUND_EXACT
+                        || (bound == TranspositionTable.BOUND_LOWER && score >= beta)
+                        || (bound == TranspositionTable.BOUND_UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+        moveOrdering.scoreMoves(moves, ply, TranspositionTable.moveOf(entry), boardState.getKingsMask());
+
+        int originalAlpha = alpha;
+        int bestScore = -MATE_SCORE - 1;
+        int bestMove = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            moveOrdering.selectNext(moves, ply, i);
+            moveExecutor.make(moves.get(i), moves.getCapturedMask(i));
+            int score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            moveExecutor.unmake();
+            if (aborted) {
+                return 0;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = moves.get(i);
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        cutoffs++;
+                        if (i == 0) {
+                            firstMoveCutoffs++;
+                        }
+                        moveOrdering.recordCutoff(bestMove, ply, depth);
+                        break; // Odcięcie beta
+                    }
+                }
+            }
+        }
+
+        int bound = (bestScore >= beta) ? TranspositionTable.BOUND_LOWER
+                : (bestScore > originalAlpha ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER);
+        transpositionTable.store(key, depth, bound, toTableScore(bestScore, ply), bestMove);
+        return bestScore;
+    }
+
+    /**
+     * Przeszukiwanie spoczynkowe. W pozycji spokojnej (bez bicia) zwraca ocenę statyczną (stand-pat):
+     * gracz może zagrać cichy ruch, który jej nie pogorszy, więc jest ona dolnym ograniczeniem wyniku.
+     * Bicie jest obowiązkowe, więc gracz, który musi bić, nie może "stać w miejscu" - przeszukiwane
+     * są wszystkie jego bicia, aż pozycja się uspokoi.
+     */
+    private int quiescence(int ply, int alpha, int beta, int quiescenceDepth) {
+        nodes++;
+        quiescenceNodes++;
+        if (limitReached()) {
+            return 0;
+        }
+        int tablebaseCode = probeTablebase();
+        if (tablebaseCode != EndgameTablebase.NOT_FOUND) {
+            return tablebaseScore(tablebaseCode, ply);
+        }
+
+        IntMoveList moves = moveLists[ply];
+        moveLogic.generateCompleteMoves(turnManager.getCurrentPlayer(), moves);
+        if (moves.isEmpty()) {
+            return -MATE_SCORE + ply;
+        }
+        int firstMove = moves.get(0);
+        boolean captureForced = PackedMove.isJump(firstMove) || PackedMove.isSequence(firstMove); // Przy biciu wszystkie ruchy są biciami
+        if (!captureForced || ply >= MAX_PLY || quiescenceDepth >= MAX_QUIESCENCE_DEPTH) {
+            return evaluator.evaluate(boardState, turnManager.getCurrentPlayer()); // Stand-pat
+        }
+
+        moveOrdering.scoreMoves(moves, ply, 0, boardState.getKingsMask());
+        int bestScore = -MATE_SCORE - 1;
+        for (int i = 0; i < moves.size(); i++) {
+            moveOrdering.selectNext(moves, ply, i);
+            moveExecutor.make(moves.get(i), moves.getCapturedMask(i));
+            int score = -quiescence(ply + 1, -beta, -alpha, quiescenceDepth + 1);
+            moveExecutor.unmake();
+            if (aborted) {
+                return 0;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    /**
+     * Sprawdza limity węzłów i czasu oraz sygnał zatrzymania; po przekroczeniu ustawia {@code aborted}.
+     */
+    private boolean limitReached() {
+        if ((nodeLimit > 0 && nodes > nodeLimit)
+                || ((nodes & CHECK_INTERVAL) == 0 && (stopSignal.get() || System.currentTimeMillis() >= deadline))) {
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    /**
+     * Klucz pozycji dla tablicy transpozycji. Klucz Zobrista nie obejmuje kontynuacji bicia,
+     * więc pole kontynuującego pionka (możliwe tylko w korzeniu) jest do niego domieszane.
+     */
+    private long positionKey() {
+        long key = boardState.getZobristKey();
+        if (turnManager.isJumpMadeThisTurn()) {
+            int square = Bitboards.toSquare(turnManager.getLastJumpingPieceRow(), turnManager.getLastJumpingPieceCol());
+            key ^= (square + 1) * 0x9E3779B97F4A7C15L;
+        }
+        return key;
+    }
+
+    private int probeTablebase() {
+        EndgameTablebase table = tablebase;
+        if (table == null || Integer.bitCount(boardState.getOccupiedMask()) > table.getMaxPieces()) {
+            return EndgameTablebase.NOT_FOUND;
+        }
+        return table.probe(boardState.getWhiteMask(), boardState.getBlackMask(), boardState.getKingsMask(),
+                turnManager.getCurrentPlayer());
+    }
+
+    /**
+     * Zamienia wynik z bazy końcówek na ocenę silnika: koniec partii następuje po {@code ply + odległość}
+     * ruchach od korzenia, tak jak dla pozycji bez ruchu wykrytej w przeszukiwaniu.
+     */
+    private static int tablebaseScore(int code, int ply) {
+        if (code == EndgameTablebase.DRAW) {
+            return 0;
+        }
+        int mateDistance = ply + EndgameTablebase.distance(code);
+        return EndgameTablebase.isWin(code) ? MATE_SCORE - mateDistance : -MATE_SCORE + mateDistance;
+    }
+
+    /**
+     * Zwraca indeks ruchu o podanym zapisie na liście lub -1.
+     */
+    private static int indexOfMove(IntMoveList moves, int move) {
+        if (move == 0) {
+            return -1;
+        }
+        for (int i = 0; i < moves.size(); i++) {
+            if (moves.get(i) == move) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Oceny wygranej/przegranej są zapisywane względem bieżącego węzła, a nie korzenia,
+    // żeby ta sama pozycja osiągnięta na innej głębokości dawała poprawną odległość do końca partii.
+    private static int toTableScore(int score, int ply) {
+        if (score >= MATE_BOUND) return score + ply;
+        if (score <= -MATE_BOUND) return score - ply;
+        return score;
+    }
+
+    private static int fromTableScore(int score, int ply) {
+        if (score >= MATE_BOUND) return score - ply;
+        if (score <= -MATE_BOUND) return score + ply;
+        return score;
+    }
+
+    /**
+     * Zatrzymuje trwające przeszukiwanie (można wywołać z innego wątku).
+     */
+    public void stop() {
+        AtomicBoolean signal = stopSignal;
+        if (signal != null) {
+            signal.set(true);
+        }
+    }
+
+    /**
+     * Usuwa heurystyki kolejności ruchów z poprzednich przeszukiwań (przed nową partią). Tablica
+     * transpozycji może być współdzielona, więc czyści ją jej właściciel.
+     */
+    public void clearHistory() {
+        moveOrdering.clear();
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Zwraca liczbę węzłów przeszukiwania spoczynkowego w ostatnim przeszukiwaniu (są też wliczone w {@link #getNodes()}).
+     */
+    public long getQuiescenceNodes() {
+        return quiescenceNodes;
+    }
+
+    /**
+     * Zwraca liczbę odcięć beta w ostatnim przeszukiwaniu.
+     */
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * Zwraca odsetek odcięć beta uzyskanych pierwszym ruchem (miara jakości kolejności ruchów, 0-1).
+     */
+    public double getFirstMoveCutoffRate() {
+        return (cutoffs == 0) ? 0.0 : (double) firstMoveCutoffs / cutoffs;
+    }
+}
@@ -0,0 +1,41 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.boardcomponents.Move;
+
+/**
+ * Wynik przeszukiwania: najlepszy znaleziony ruch oraz statystyki (ocena, osiągnięta głębokość,
+ * liczba odwiedzonych węzłów i czas). Obiekt jest niezmienny.
+ */
+public final class SearchResult {
+    private final Move bestMove;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long elapsedMillis;
+
+    public SearchResult(Move bestMove, int score, int depth, long nodes, long elapsedMillis) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Zwraca najlepszy ruch lub null, jeśli gracz na ruchu nie ma żadnego ruchu.
+     */
+    public Move getBestMove() { return bestMove; }
+
+    /**
+     * Zwraca ocenę pozycji z punktu widzenia gracza na ruchu (w setnych częściach pionka).
+     */
+    public int getScore() { return score; }
+    public int getDepth() { return depth; }
+    public long getNodes() { return nodes; }
+    public long getElapsedMillis() { return elapsedMillis; }
+
+    @Override
+    public String toString() {
+        return "ruch " + bestMove + ", ocena " + score + ", głębokość " + depth + ", węzły " + nodes + ", czas " + elapsedMillis + " ms";
+    }
+}
@@ -0,0 +1,147 @@
+package warcaby.ai;
+
+/**
+ * Wyniki turnieju {@link SelfPlayTournament} z punktu widzenia kandydata (gracza A): liczba wygranych,
+ * remisów i przegranych, różnica Elo z przedziałem ufności 95% oraz logarytm ilorazu wiarygodności
+ * testu SPRT. Test używa przybliżenia normalnego (GSPRT): wynik partii jest zmienną o wartościach
+ * 0, 1/2 i 1, a jego wariancja jest szacowana z rozegranych partii.
+ * Obiekt nie jest bezpieczny wątkowo; turniej aktualizuje go pod własną blokadą.
+ */
+public final class SelfPlayStatistics {
+    private static final double Z_95 = 1.959964; // Kwantyl rozkładu normalnego dla przedziału 95%
+
+    private int wins;
+    private int draws;
+    private int losses;
+    private long plies;
+    private long candidateMoveNanos;
+    private int candidateMoves;
+    private long baselineMoveNanos;
+    private int baselineMoves;
+    private long elapsedMillis;
+
+    void addGame(double candidateScore, int gamePlies, long candidateNanos, int candidateMoveCount,
+                 long baselineNanos, int baselineMoveCount) {
+        if (candidateScore > 0.5) {
+            wins++;
+        } else if (candidateScore < 0.5) {
+            losses++;
+        } else {
+            draws++;
+        }
+        plies += gamePlies;
+        candidateMoveNanos += candidateNanos;
+        candidateMoves += candidateMoveCount;
+        baselineMoveNanos += baselineNanos;
+        baselineMoves += baselineMoveCount;
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getGames() { return wins + draws + losses; }
+    public int getWins() { return wins; }
+    public int getDraws() { return draws; }
+    public int getLosses() { return losses; }
+    public long getElapsedMillis() { return elapsedMillis; }
+
+    /**
+     * Średni wynik kandydata na partię (0-1).
+     */
+    public double getScore() {
+        int games = getGames();
+        return games == 0 ? 0.5 : (wins + draws * 0.5) / games;
+    }
+
+    /**
+     * Różnica Elo kandydata względem gracza bazowego wyznaczona ze średniego wyniku.
+     */
+    public double getEloDifference() {
+        return eloFromScore(getScore());
+    }
+
+    /**
+     * Połowa szerokości przedziału ufności 95% dla {@link #getEloDifference()}.
+     */
+    public double getEloErrorMargin() {
+        int games = getGames();
+        if (games == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double error = Z_95 * Math.sqrt(scoreVariance() / games);
+        double score = getScore();
+        return (eloFromScore(Math.min(1, score + error)) - eloFromScore(Math.max(0, score - error))) / 2;
+    }
+
+    /**
+     * Logarytm ilorazu wiarygodności hipotez H1 (różnica {@code elo1}) i H0 (różnica {@code elo0}).
+     * Dopóki wariancja wyniku jest zerowa (np. same remisy), wynosi 0.
+     */
+    public double getLogLikelihoodRatio(double elo0, double elo1) {
+        double variance = scoreVariance();
+        if (variance <= 0) {
+            return 0;
+        }
+        double score0 = scoreFromElo(elo0);
+        double score1 = scoreFromElo(elo1);
+        return getGames() * (score1 - score0) * (2 * getScore() - score0 - score1) / (2 * variance);
+    }
+
+    /**
+     * Średni czas ruchu kandydata w milisekundach.
+     */
+    public double getCandidateMillisPerMove() {
+        return candidateMoves == 0 ? 0 : candidateMoveNanos / 1e6 / candidateMoves;
+    }
+
+    /**
+     * Średni czas ruchu gracza bazowego w milisekundach.
+     */
+    public double getBaselineMillisPerMove() {
+        return baselineMoves == 0 ? 0 : baselineMoveNanos / 1e6 / baselineMoves;
+    }
+
+    public double getAveragePlies() {
+        int games = getGames();
+        return games == 0 ? 0 : (double) plies / games;
+    }
+
+    public double getGamesPerSecond() {
+        return elapsedMillis == 0 ? 0 : getGames() * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * Wariancja wyniku jednej partii.
+     */
+    private double scoreVariance() {
+        int games = getGames();
+        if (games == 0) {
+            return 0;
+        }
+        double score = getScore();
+        return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score) + losses * score * score) / games;
+    }
+
+    static double eloFromScore(double score) {
+        if (score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    static double scoreFromElo(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("partie %d (+%d =%d -%d), wynik %.1f%%, Elo %+.1f ± %.1f, %.2f partii/s, średnio %.0f półruchów,"
+                        + " czas ruchu A %.1f ms, B %.1f ms",
+                getGames(), wins, draws, losses, getScore() * 100, getEloDifference(), getEloErrorMargin(),
+                getGamesPerSecond(), getAveragePlies(), getCandidateMillisPerMove(), getBaselineMillisPerMove());
+    }
+}
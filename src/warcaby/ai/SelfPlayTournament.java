@@ -0,0 +1,520 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.Board;
+import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.PositionSnapshot;
+import warcaby.gamelogic.boardcomponents.Move;
+import warcaby.utils.ApplicationConfig;
+import warcaby.utils.GameConstants;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Turniej bez interfejsu graficznego: kandydat (gracz A) gra z graczem bazowym (gracz B) wiele partii
+ * {@link AiPlayer} przeciw {@link AiPlayer} na {@link Board}, po jednej partii na zadanie puli wątków
+ * (każdy gracz przeszukuje na jednym wątku, więc pula zajmuje wszystkie rdzenie). Każdy wątek puli ma
+ * własną parę graczy, używaną w kolejnych partiach ({@link AiPlayer#newGame} czyści tablicę
+ * transpozycji między partiami), a wagi, książka i baza końcówek są otwierane raz na turniej. Gracze mogą używać
+ * różnych silników ({@link ComputerPlayer} lub {@link MctsPlayer}), co pozwala porównać ich siłę
+ * przy tym samym czasie procesora.
+ *
+ * Partie są rozgrywane parami: obie partie pary zaczynają się od tego samego losowego otwarcia
+ * ({@code randomPlies} losowych pełnych ruchów), a gracze zamieniają się kolorami. Partia kończy się
+ * remisem po trzykrotnym powtórzeniu pozycji, po {@code quietPlyLimit} półruchach samymi damkami bez
+ * bicia albo po {@code maxPlies} półruchach. Jeśli podano bazę końcówek, pozycje z bazy są
+ * rozstrzygane od razu według jej wyniku.
+ *
+ * Test SPRT porównuje hipotezy H0 (różnica Elo kandydata {@code elo0}) i H1 ({@code elo1}) i kończy
+ * turniej, gdy tylko jedna z nich zostanie przyjęta z błędami {@code alpha} i {@code beta}, zamiast
+ * rozgrywać z góry ustaloną liczbę partii.
+ *
+ * Rozegrane partie można zapisywać ({@code --record}) w formacie {@link OpeningBookBuilder}, np. jako
+ * korpus dla {@link EvaluationTuner}, a opcje {@code --weights-a} / {@code --weights-b} pozwalają
+ * porównać dostrojone wagi oceny z domyślnymi ({@code default}).
+ *
+ * Użycie: {@code SelfPlayTournament [--games N] [--threads N] [--engine-a alphabeta|mcts] [--engine-b alphabeta|mcts]
+ * [--time-a MS] [--time-b MS] [--nodes-a N] [--nodes-b N] [--random-plies N] [--seed N] [--max-plies N] [--book]
+ * [--elo0 E] [--elo1 E] [--alpha A] [--beta B] [--no-sprt] [--record partie.txt] [--weights-a wagi.txt|default]
+ * [--weights-b wagi.txt|default]}
+ */
+public class SelfPlayTournament {
+    /** Wynik testu SPRT. */
+    public enum SprtDecision { CONTINUE, ACCEPT_H0, ACCEPT_H1 }
+
+    private static final int DEFAULT_QUIET_PLY_LIMIT = 50; // 25 ruchów każdej strony samymi damkami
+    private static final String ENGINE_ALPHA_BETA = "alphabeta";
+    private static final String ENGINE_MCTS = "mcts";
+    private static final int MCTS_TREE_SIZE_MB = 16; // Na partię powstają dwa drzewa, a partii jest tyle co rdzeni
+
+    private final Supplier<AiPlayer> candidate;
+    private final Supplier<AiPlayer> baseline;
+    private final ThreadLocal<AiPlayer[]> workerPlayers = new ThreadLocal<>(); // Kandydat i gracz bazowy wątku puli
+    private final List<AiPlayer> createdPlayers = new ArrayList<>(); // Do zwolnienia po turnieju (chronione przez blokadę listy)
+    private final int threads;
+    private int randomPlies = 6;
+    private long seed = 1;
+    private int maxPlies = 300;
+    private int quietPlyLimit = DEFAULT_QUIET_PLY_LIMIT; // Półruchy samymi damkami bez bicia, po których partia jest remisem
+    private EndgameTablebase tablebase;   // Baza do rozstrzygania końcówek lub null
+    private boolean sprtEnabled = true;
+    private double elo0 = 0;
+    private double elo1 = 10;
+    private double alpha = 0.05;
+    private double beta = 0.05;
+
+    private final SelfPlayStatistics statistics = new SelfPlayStatistics();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private SprtDecision decision = SprtDecision.CONTINUE;
+    private PrintWriter gameLog; // Zapis rozegranych partii lub null
+
+    /**
+     * @param candidate Tworzy kandydata (jeden gracz na wątek puli, przed każdą partią dostaje kolor przez {@link AiPlayer#newGame}).
+     * @param baseline Tworzy gracza bazowego.
+     * @param threads Liczba równocześnie rozgrywanych partii (0 = liczba rdzeni).
+     */
+    public SelfPlayTournament(Supplier<AiPlayer> candidate, Supplier<AiPlayer> baseline, int threads) {
+        this.candidate = candidate;
+        this.baseline = baseline;
+        this.threads = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Ustawia liczbę losowych pełnych ruchów otwarcia i ziarno, z którego są losowane.
+     */
+    public void setOpeningRandomization(int randomPlies, long seed) {
+        this.randomPlies = randomPlies;
+        this.seed = seed;
+    }
+
+    /**
+     * Ustawia limity długości partii; po ich przekroczeniu partia jest remisem.
+     */
+    public void setDrawLimits(int maxPlies, int quietPlyLimit) {
+        this.maxPlies = maxPlies;
+        this.quietPlyLimit = quietPlyLimit;
+    }
+
+    /**
+     * Ustawia bazę końcówek do rozstrzygania partii (null wyłącza rozstrzyganie).
+     */
+    public void setTablebase(EndgameTablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Ustawia parametry testu SPRT: hipotezy (różnice Elo) oraz dopuszczalne błędy pierwszego i drugiego rodzaju.
+     */
+    public void setSprt(double elo0, double elo1, double alpha, double beta) {
+        this.sprtEnabled = true;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    /**
+     * Wyłącza test SPRT: turniej rozgrywa wszystkie zamówione partie.
+     */
+    public void disableSprt() {
+        this.sprtEnabled = false;
+    }
+
+    /**
+     * Ustawia zapis rozegranych partii (jedna partia w wierszu, w formacie {@link OpeningBookBuilder}); null wyłącza zapis.
+     */
+    public synchronized void setGameLog(PrintWriter gameLog) {
+        this.gameLog = gameLog;
+    }
+
+    /**
+     * Rozgrywa turniej.
+     * @param games Największa liczba partii (zaokrąglana w górę do parzystej).
+     * @param progress Wywoływany po każdej partii ze statystykami (pod blokadą turnieju) lub null.
+     * @return Statystyki rozegranych partii.
+     */
+    public SelfPlayStatistics run(int games, Consumer<SelfPlayStatistics> progress) {
+        int totalGames = games + (games & 1);
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "warcaby-selfplay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int game = 0; game < totalGames; game++) {
+            int gameIndex = game;
+            pool.execute(() -> {
+                if (stopped.get()) {
+                    return;
+                }
+                GameRecord record = playGame(gameIndex);
+                if (record != null) {
+                    recordGame(record, start, progress);
+                }
+            });
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            stopped.set(true);
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        synchronized (createdPlayers) {
+            for (AiPlayer player : createdPlayers) {
+                player.shutdown();
+            }
+            createdPlayers.clear();
+        }
+        synchronized (this) {
+            statistics.setElapsedMillis(System.currentTimeMillis() - start);
+            return statistics;
+        }
+    }
+
+    /**
+     * Zwraca decyzję testu SPRT (CONTINUE, jeśli test jest wyłączony lub nie rozstrzygnął).
+     */
+    public synchronized SprtDecision getDecision() {
+        return decision;
+    }
+
+    /**
+     * Dolna i górna granica logarytmu ilorazu wiarygodności, po przekroczeniu których test się kończy.
+     */
+    public double getLowerBound() {
+        return Math.log(beta / (1 - alpha));
+    }
+
+    public double getUpperBound() {
+        return Math.log((1 - beta) / alpha);
+    }
+
+    public synchronized double getLogLikelihoodRatio() {
+        return statistics.getLogLikelihoodRatio(elo0, elo1);
+    }
+
+    private synchronized void recordGame(GameRecord record, long start, Consumer<SelfPlayStatistics> progress) {
+        if (gameLog != null) {
+            gameLog.println(record.moves + resultToken(record.whiteScore)); // Każda ukończona partia jest dobrym materiałem
+        }
+        if (decision != SprtDecision.CONTINUE) {
+            return; // Partie dokończone po rozstrzygnięciu testu nie są liczone
+        }
+        statistics.addGame(record.candidateScore, record.plies, record.candidateNanos, record.candidateMoves,
+                record.baselineNanos, record.baselineMoves);
+        statistics.setElapsedMillis(System.currentTimeMillis() - start);
+        if (sprtEnabled) {
+            double llr = statistics.getLogLikelihoodRatio(elo0, elo1);
+            if (llr >= getUpperBound()) {
+                decision = SprtDecision.ACCEPT_H1;
+            } else if (llr <= getLowerBound()) {
+                decision = SprtDecision.ACCEPT_H0;
+            }
+            if (decision != SprtDecision.CONTINUE) {
+                stopped.set(true); // Trwające partie przerywają się przy najbliższym ruchu
+            }
+        }
+        if (progress != null) {
+            progress.accept(statistics);
+        }
+    }
+
+    /**
+     * Rozgrywa jedną partię: partie o indeksach 2k i 2k+1 mają to samo otwarcie, a kandydat gra w nich
+     * kolejno białymi i czarnymi.
+     * @return Wynik partii lub null, jeśli turniej zatrzymano w jej trakcie.
+     */
+    private GameRecord playGame(int gameIndex) {
+        boolean candidateWhite = (gameIndex & 1) == 0;
+        Board board = new Board();
+        GameRecord record = new GameRecord();
+        playRandomOpening(board, new Random(seed * 1_000_003L + gameIndex / 2), record);
+
+        AiPlayer[] players = playersOfCurrentThread();
+        AiPlayer white = candidateWhite ? players[0] : players[1];
+        AiPlayer black = candidateWhite ? players[1] : players[0];
+        white.newGame(PlayerColor.WHITE);
+        black.newGame(PlayerColor.BLACK);
+        Map<Long, Integer> repetitions = new HashMap<>();
+        int quietPlies = 0;
+        while (true) {
+            if (stopped.get()) {
+                return null;
+            }
+            PlayerColor winner = board.getWinner();
+            if (winner == null) {
+                winner = adjudicate(board, repetitions, quietPlies, record.plies);
+            }
+            if (winner != null) {
+                double whiteScore = (winner == PlayerColor.WHITE) ? 1 : (winner == PlayerColor.BLACK) ? 0 : 0.5;
+                record.whiteScore = whiteScore;
+                record.candidateScore = candidateWhite ? whiteScore : 1 - whiteScore;
+                return record;
+            }
+
+            PlayerColor mover = board.getCurrentPlayer();
+            boolean candidateMoves = (mover == PlayerColor.WHITE) == candidateWhite;
+            PositionSnapshot before = board.snapshot();
+            long moveStart = System.nanoTime();
+            Move move = (mover == PlayerColor.WHITE ? white : black).getComputerMove(board);
+            long moveNanos = System.nanoTime() - moveStart;
+            if (candidateMoves) {
+                record.candidateNanos += moveNanos;
+                record.candidateMoves++;
+            } else {
+                record.baselineNanos += moveNanos;
+                record.baselineMoves++;
+            }
+            if (move == null || !board.makeMove(move)) {
+                throw new IllegalStateException("Silnik zwrócił nielegalny ruch " + move + " w pozycji:\n" + before);
+            }
+            record.plies++;
+            record.moves.append(move).append(' ');
+
+            PositionSnapshot after = board.snapshot();
+            if (isQuiet(before, after)) {
+                quietPlies++;
+            } else {
+                quietPlies = 0;
+                repetitions.clear(); // Ruch pionka lub bicie są nieodwracalne
+            }
+            repetitions.merge(after.getPositionKey(), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Zwraca kandydata i gracza bazowego bieżącego wątku puli, tworząc ich przy pierwszej partii wątku.
+     */
+    private AiPlayer[] playersOfCurrentThread() {
+        AiPlayer[] players = workerPlayers.get();
+        if (players == null) {
+            players = new AiPlayer[] {candidate.get(), baseline.get()};
+            workerPlayers.set(players);
+            synchronized (createdPlayers) {
+                createdPlayers.add(players[0]);
+                createdPlayers.add(players[1]);
+            }
+        }
+        return players;
+    }
+
+    /**
+     * Rozstrzyga partię przed jej naturalnym końcem.
+     * @return Zwycięzca, {@link PlayerColor#NONE} przy remisie lub null, jeśli partia trwa dalej.
+     */
+    private PlayerColor adjudicate(Board board, Map<Long, Integer> repetitions, int quietPlies, int plies) {
+        if (repetitions.getOrDefault(board.getPositionKey(), 0) >= 3 || quietPlies >= quietPlyLimit || plies >= maxPlies) {
+            return PlayerColor.NONE;
+        }
+        EndgameTablebase tb = tablebase;
+        if (tb != null) {
+            int code = tb.probe(board.snapshot());
+            if (code == EndgameTablebase.DRAW) {
+                return PlayerColor.NONE;
+            }
+            if (code != EndgameTablebase.NOT_FOUND) {
+                PlayerColor sideToMove = board.getCurrentPlayer();
+                return EndgameTablebase.isWin(code) ? sideToMove : opponent(sideToMove);
+            }
+        }
+        return null;
+    }
+
+    private void playRandomOpening(Board board, Random random, GameRecord record) {
+        for (int ply = 0; ply < randomPlies && board.getWinner() == null; ply++) {
+            List<Move> moves = board.getAllCompleteMovesForPlayer(board.getCurrentPlayer());
+            Move move = moves.get(random.nextInt(moves.size()));
+            board.makeMove(move);
+            record.moves.append(move).append(' ');
+        }
+    }
+
+    private static String resultToken(double whiteScore) {
+        return whiteScore > 0.5 ? "1-0" : whiteScore < 0.5 ? "0-1" : "1/2-1/2";
+    }
+
+    /**
+     * Sprawdza, czy ruch był ruchem damki bez bicia (nie zmienił liczby pionków ani pól zwykłych pionków).
+     */
+    private static boolean isQuiet(PositionSnapshot before, PositionSnapshot after) {
+        return (before.getWhiteMask() & ~before.getKingsMask()) == (after.getWhiteMask() & ~after.getKingsMask())
+                && (before.getBlackMask() & ~before.getKingsMask()) == (after.getBlackMask() & ~after.getKingsMask())
+                && Integer.bitCount(before.getWhiteMask() | before.getBlackMask()) == Integer.bitCount(after.getWhiteMask() | after.getBlackMask());
+    }
+
+    private static PlayerColor opponent(PlayerColor color) {
+        return color == PlayerColor.WHITE ? PlayerColor.BLACK : PlayerColor.WHITE;
+    }
+
+    private static final class GameRecord {
+        final StringBuilder moves = new StringBuilder(); // Ruchy partii w notacji pól (z losowym otwarciem)
+        double whiteScore;
+        double candidateScore;
+        int plies;
+        long candidateNanos;
+        int candidateMoves;
+        long baselineNanos;
+        int baselineMoves;
+    }
+
+    /**
+     * Tworzy gracza do turnieju: jeden wątek przeszukiwania, limit czasu lub węzłów na ruch (dla MCTS:
+     * symulacji), książka debiutowa tylko na życzenie (losowe otwarcia i tak różnicują partie).
+     * Wagi, książka i baza są otwarte raz na turniej i współdzielone przez wszystkich graczy.
+     * @param weights Wagi oceny gracza alfa-beta.
+     */
+    private static Supplier<AiPlayer> playerFactory(String engine, long timeLimitMillis, long nodeLimit,
+                                                    OpeningBook book, EndgameTablebase tablebase,
+                                                    EvaluationWeights weights) {
+        long timeLimit = nodeLimit > 0 ? 0 : timeLimitMillis;
+        if (ENGINE_MCTS.equals(engine)) {
+            return () -> {
+                MctsPlayer player = new MctsPlayer(PlayerColor.WHITE, timeLimit, 1, MCTS_TREE_SIZE_MB, tablebase);
+                player.getEngine().setPlayoutLimit(nodeLimit);
+                return player;
+            };
+        }
+        if (!ENGINE_ALPHA_BETA.equals(engine)) {
+            throw new IllegalArgumentException("Nieznany silnik: " + engine);
+        }
+        return () -> {
+            ComputerPlayer player = new ComputerPlayer(PlayerColor.WHITE, timeLimit, 1, weights, book, tablebase);
+            if (nodeLimit > 0) {
+                player.getEngine().setNodeLimit(nodeLimit);
+            }
+            return player;
+        };
+    }
+
+    public static void main(String[] args) {
+        int games = 1000;
+        int threads = 0;
+        String engineA = ENGINE_ALPHA_BETA;
+        String engineB = ENGINE_ALPHA_BETA;
+        long timeA = 50;
+        long timeB = 50;
+        long nodesA = 0;
+        long nodesB = 0;
+        int randomPlies = 6;
+        long seed = System.currentTimeMillis();
+        int maxPlies = 300;
+        boolean useBook = false;
+        boolean sprt = true;
+        double elo0 = 0;
+        double elo1 = 10;
+        double alpha = 0.05;
+        double beta = 0.05;
+        String recordFile = null;
+        String weightsA = null;
+        String weightsB = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games": games = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--engine-a": engineA = args[++i]; break;
+                case "--engine-b": engineB = args[++i]; break;
+                case "--time-a": timeA = Long.parseLong(args[++i]); break;
+                case "--time-b": timeB = Long.parseLong(args[++i]); break;
+                case "--nodes-a": nodesA = Long.parseLong(args[++i]); break;
+                case "--nodes-b": nodesB = Long.parseLong(args[++i]); break;
+                case "--random-plies": randomPlies = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--max-plies": maxPlies = Integer.parseInt(args[++i]); break;
+                case "--book": useBook = true; break;
+                case "--elo0": elo0 = Double.parseDouble(args[++i]); break;
+                case "--elo1": elo1 = Double.parseDouble(args[++i]); break;
+                case "--alpha": alpha = Double.parseDouble(args[++i]); break;
+                case "--beta": beta = Double.parseDouble(args[++i]); break;
+                case "--no-sprt": sprt = false; break;
+                case "--record": recordFile = args[++i]; break;
+                case "--weights-a": weightsA = args[++i]; break;
+                case "--weights-b": weightsB = args[++i]; break;
+                default:
+                    System.err.println("Nieznana opcja: " + args[i]);
+                    System.err.println("Użycie: SelfPlayTournament [--games N] [--threads N] [--engine-a alphabeta|mcts]"
+                            + " [--engine-b alphabeta|mcts] [--time-a MS] [--time-b MS] [--nodes-a N] [--nodes-b N] [--random-plies N] [--seed N] [--max-plies N] [--book]"
+                            + " [--elo0 E] [--elo1 E] [--alpha A] [--beta B] [--no-sprt] [--record partie.txt]"
+                            + " [--weights-a wagi.txt|default] [--weights-b wagi.txt|default]");
+                    return;
+            }
+        }
+        ApplicationConfig.disableLogging(); // Board i silnik logują każdy ruch
+
+        OpeningBook book = useBook ? OpeningBook.openIfExists(Paths.get(GameConstants.AI_OPENING_BOOK)) : null;
+        EndgameTablebase tablebase = EndgameTablebase.openIfExists(Paths.get(GameConstants.AI_TABLEBASE));
+        SelfPlayTournament tournament;
+        try {
+            tournament = new SelfPlayTournament(playerFactory(engineA, timeA, nodesA, book, tablebase, loadWeights(weightsA)),
+                    playerFactory(engineB, timeB, nodesB, book, tablebase, loadWeights(weightsB)), threads);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        tournament.setOpeningRandomization(randomPlies, seed);
+        tournament.setDrawLimits(maxPlies, DEFAULT_QUIET_PLY_LIMIT);
+        tournament.setTablebase(tablebase);
+        if (sprt) {
+            tournament.setSprt(elo0, elo1, alpha, beta);
+        } else {
+            tournament.disableSprt();
+        }
+
+        System.out.println("Turniej: do " + games + " partii na " + tournament.threads + " wątkach, ziarno " + seed
+                + (sprt ? String.format(", SPRT elo0=%.1f elo1=%.1f alpha=%.2f beta=%.2f (granice %.2f .. %.2f)",
+                        elo0, elo1, alpha, beta, tournament.getLowerBound(), tournament.getUpperBound()) : ""));
+        boolean sprtEnabled = sprt;
+        SelfPlayStatistics result;
+        try (PrintWriter gameLog = (recordFile != null) ? new PrintWriter(Files.newBufferedWriter(Paths.get(recordFile))) : null) {
+            tournament.setGameLog(gameLog);
+            result = tournament.run(games, statistics -> {
+                if (statistics.getGames() % 20 == 0) {
+                    System.out.println(statistics + (sprtEnabled
+                            ? String.format(", LLR %.2f", statistics.getLogLikelihoodRatio(tournament.elo0, tournament.elo1)) : ""));
+                }
+            });
+            tournament.setGameLog(null);
+        } catch (IOException e) {
+            System.err.println("Błąd zapisu partii: " + e.getMessage());
+            return;
+        }
+        System.out.println("Wynik: " + result);
+        if (sprt) {
+            System.out.printf("SPRT: LLR %.2f (granice %.2f .. %.2f) - %s%n", tournament.getLogLikelihoodRatio(),
+                    tournament.getLowerBound(), tournament.getUpperBound(), describe(tournament.getDecision()));
+        }
+    }
+
+    /**
+     * Wczytuje wagi podane w opcji: null (brak opcji: wagi z {@link GameConstants#AI_EVALUATION_WEIGHTS}
+     * albo domyślne), "default" (wagi domyślne) lub ścieżka pliku.
+     */
+    private static EvaluationWeights loadWeights(String option) throws IOException {
+        if (option == null) {
+            return EvaluationWeights.loadIfExists(Paths.get(GameConstants.AI_EVALUATION_WEIGHTS));
+        }
+        return "default".equals(option) ? EvaluationWeights.DEFAULT : EvaluationWeights.load(Paths.get(option));
+    }
+
+    private static String describe(SprtDecision decision) {
+        switch (decision) {
+            case ACCEPT_H1: return "przyjęto H1, kandydat jest silniejszy";
+            case ACCEPT_H0: return "przyjęto H0, kandydat nie jest silniejszy";
+            default: return "test nierozstrzygnięty";
+        }
+    }
+}
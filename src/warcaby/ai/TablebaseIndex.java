@@ -0,0 +1,143 @@
+package warcaby.ai;
+
+import warcaby.gamelogic.boardcomponents.Bitboards;
+
+/**
+ * Doskonałe haszowanie pozycji bazy końcówek. Pozycje są pogrupowane w wycinki według składu
+ * materiału (liczby białych pionków, białych damek, czarnych pionków i czarnych damek). W wycinku
+ * każda grupa pionków jest kodowana numerem kombinacji (system kombinatoryczny) na polach
+ * niezajętych przez grupy wcześniejsze, a najmłodszy bit indeksu to strona na ruchu.
+ * Dzięki temu każda pozycja ma dokładnie jeden indeks z zakresu {@code 0 .. sliceSize - 1}.
+ */
+final class TablebaseIndex {
+    private static final long[][] BINOMIAL = new long[Bitboards.SQUARES + 1][Bitboards.SQUARES + 1];
+
+    static {
+        for (int n = 0; n <= Bitboards.SQUARES; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + (k <= n - 1 ? BINOMIAL[n - 1][k] : 0);
+            }
+        }
+    }
+
+    private TablebaseIndex() {
+        throw new IllegalStateException("Klasa narzędziowa nie powinna być instancjonowana");
+    }
+
+    /**
+     * Sygnatura wycinka: liczności grup zapisane po 4 bity.
+     */
+    static int signature(int whiteMen, int whiteKings, int blackMen, int blackKings) {
+        return whiteMen | (whiteKings << 4) | (blackMen << 8) | (blackKings << 12);
+    }
+
+    /**
+     * Zwraca sygnaturę wycinka, do którego należy pozycja o podanych maskach.
+     */
+    static int signatureOf(int white, int black, int kings) {
+        return signature(Integer.bitCount(white & ~kings), Integer.bitCount(white & kings),
+                Integer.bitCount(black & ~kings), Integer.bitCount(black & kings));
+    }
+
+    static int pieceCount(int signature) {
+        return (signature & 0xF) + ((signature >>> 4) & 0xF) + ((signature >>> 8) & 0xF) + ((signature >>> 12) & 0xF);
+    }
+
+    /**
+     * Zwraca liczbę pozycji wycinka (wraz ze stroną na ruchu).
+     */
+    static long sliceSize(int signature) {
+        long size = 2;
+        int free = Bitboards.SQUARES;
+        for (int group = 0; group < 4; group++) {
+            int count = (signature >>> (4 * group)) & 0xF;
+            size *= BINOMIAL[free][count];
+            free -= count;
+        }
+        return size;
+    }
+
+    /**
+     * Zwraca indeks pozycji w jej wycinku.
+     */
+    static long index(int white, int black, int kings, boolean blackToMove) {
+        int[] groups = {white & ~kings, white & kings, black & ~kings, black & kings};
+        long index = 0;
+        int occupied = 0;
+        int free = Bitboards.SQUARES;
+        for (int group : groups) {
+            int count = Integer.bitCount(group);
+            index = index * BINOMIAL[free][count] + rank(group, ~occupied);
+            occupied |= group;
+            free -= count;
+        }
+        return index * 2 + (blackToMove ? 1 : 0);
+    }
+
+    /**
+     * Odtwarza pozycję z indeksu.
+     * @param out Tablica na wynik: {białe, czarne, damki, 1 jeśli na ruchu są czarne}.
+     */
+    static void decode(int signature, long index, int[] out) {
+        out[3] = (int) (index & 1);
+        long rest = index >>> 1;
+        long[] ranks = new long[4];
+        int[] counts = new int[4];
+        int free = Bitboards.SQUARES;
+        long[] sizes = new long[4];
+        for (int group = 0; group < 4; group++) {
+            counts[group] = (signature >>> (4 * group)) & 0xF;
+            sizes[group] = BINOMIAL[free][counts[group]];
+            free -= counts[group];
+        }
+        for (int group = 3; group >= 0; group--) {
+            ranks[group] = rest % sizes[group];
+            rest /= sizes[group];
+        }
+        int occupied = 0;
+        int[] masks = new int[4];
+        for (int group = 0; group < 4; group++) {
+            masks[group] = unrank(ranks[group], counts[group], ~occupied);
+            occupied |= masks[group];
+        }
+        out[0] = masks[0] | masks[1];
+        out[1] = masks[2] | masks[3];
+        out[2] = masks[1] | masks[3];
+    }
+
+    /**
+     * Numer kombinacji pól {@code group} wśród pól {@code free} (pola liczone tylko w obrębie {@code free}).
+     */
+    private static long rank(int group, int free) {
+        long rank = 0;
+        int k = 1;
+        while (group != 0) {
+            int square = Integer.numberOfTrailingZeros(group);
+            group &= group - 1;
+            int compressed = Integer.bitCount(free & (Bitboards.bit(square) - 1));
+            rank += BINOMIAL[compressed][k++];
+        }
+        return rank;
+    }
+
+    private static int unrank(long rank, int count, int free) {
+        int mask = 0;
+        for (int k = count; k >= 1; k--) {
+            int compressed = k - 1;
+            while (compressed + 1 < Bitboards.SQUARES && BINOMIAL[compressed + 1][k] <= rank) {
+                compressed++;
+            }
+            rank -= BINOMIAL[compressed][k];
+            mask |= Bitboards.bit(nthSetBit(free, compressed));
+        }
+        return mask;
+    }
+
+    private static int nthSetBit(int mask, int n) {
+        for (int i = 0; i < n; i++) {
+            mask &= mask - 1;
+        }
+        return Integer.numberOfTrailingZeros(mask);
+    }
+}
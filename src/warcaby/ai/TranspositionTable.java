@@ -0,0 +1,132 @@
+package warcaby.ai;
+
+import java.util.Arrays;
+
+/**
+ * Tablica transpozycji silnika: zapamiętuje wyniki przeszukanych pozycji (ocenę, rodzaj
+ * ograniczenia, głębokość i najlepszy ruch), aby nie przeszukiwać ich ponownie.
+ * Zapisana w jednej tablicy {@code long[]}, bez obiektów i bez blokad, więc może być
+ * współdzielona przez wiele wątków przeszukiwania i przechowywana między ruchami partii.
+ *
+ * Każdy kubełek ma dwa wpisy: pierwszy zastępowany tylko przez wynik głębszy lub z nowszego
+ * przeszukiwania (depth-preferred), drugi zawsze nadpisywany (always-replace). Wpis to dwie
+ * liczby: klucz XOR dane oraz dane. Wpis rozerwany przez równoległy zapis nie przejdzie weryfikacji
+ * klucza i zostanie potraktowany jak brak wpisu (tak jak w tablicy wyników {@code Perft}).
+ *
+ * Układ danych wpisu:
+ * <pre>
+ * bity 0-18   najlepszy ruch ({@link warcaby.gamelogic.boardcomponents.PackedMove}, 0 = brak)
+ * bity 19-20  rodzaj ograniczenia (EXACT, LOWER, UPPER)
+ * bity 21-28  głębokość
+ * bity 29-31  numer przeszukiwania (wiek wpisu)
+ * bity 32-63  ocena
+ * </pre>
+ */
+public class TranspositionTable {
+    public static final int BOUND_EXACT = 1;
+    public static final int BOUND_LOWER = 2; // Ocena jest co najmniej taka (odcięcie beta)
+    public static final int BOUND_UPPER = 3; // Ocena jest co najwyżej taka (żaden ruch nie poprawił alfa)
+
+    private static final int LONGS_PER_BUCKET = 4; // Dwa wpisy po dwie liczby
+    private static final int MOVE_MASK = (1 << 19) - 1;
+
+    private final long[] table;
+    private final int bucketMask;
+    private volatile int generation; // Zwiększany na początku każdego przeszukiwania (3 bity)
+
+    /**
+     * @param sizeMb Rozmiar tablicy w megabajtach (zaokrąglany w dół do potęgi dwójki kubełków).
+     */
+    public TranspositionTable(int sizeMb) {
+        long requested = ((long) Math.max(1, sizeMb) << 20) / (Long.BYTES * LONGS_PER_BUCKET);
+        int buckets = Integer.highestOneBit((int) Math.min(requested, 1 << 26));
+        this.table = new long[buckets * LONGS_PER_BUCKET];
+        this.bucketMask = buckets - 1;
+    }
+
+    /**
+     * Oznacza początek nowego przeszukiwania: wpisy z poprzednich ruchów pozostają w tablicy,
+     * ale przestają chronić swoje miejsce przed nowszymi wynikami.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 7;
+    }
+
+    /**
+     * Usuwa wszystkie wpisy i zeruje numer przeszukiwania (np. przed nową partią).
+     */
+    public void clear() {
+        Arrays.fill(table, 0L);
+        generation = 0;
+    }
+
+    /**
+     * Szuka wpisu dla pozycji o podanym kluczu.
+     * @return Dane wpisu (do odczytu metodami statycznymi) lub 0, jeśli wpisu nie ma.
+     */
+    public long probe(long key) {
+        int index = indexOf(key);
+        for (int slot = index; slot < index + LONGS_PER_BUCKET; slot += 2) {
+            long data = table[slot + 1];
+            if ((table[slot] ^ data) == key && data != 0) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Zapisuje wynik przeszukania pozycji.
+     * @param move Najlepszy ruch w zapisie PackedMove lub 0.
+     */
+    public void store(long key, int depth, int bound, int score, int move) {
+        int currentGeneration = generation;
+        long data = (move & MOVE_MASK) | ((long) bound << 19) | ((long) Math.min(depth, 255) << 21)
+                | ((long) currentGeneration << 29) | ((long) score << 32);
+        int index = indexOf(key);
+        long storedData = table[index + 1];
+        boolean sameKey = (table[index] ^ storedData) == key;
+        if (sameKey || storedData == 0 || depth >= depthOf(storedData) || generationOf(storedData) != currentGeneration) {
+            if (sameKey && move == 0) {
+                data |= moveOf(storedData); // Nie gub najlepszego ruchu z płytszego przeszukiwania
+            }
+            table[index] = key ^ data;
+            table[index + 1] = data;
+        } else {
+            table[index + 2] = key ^ data;
+            table[index + 3] = data;
+        }
+    }
+
+    public static int moveOf(long data) {
+        return (int) data & MOVE_MASK;
+    }
+
+    public static int boundOf(long data) {
+        return (int) (data >>> 19) & 3;
+    }
+
+    public static int depthOf(long data) {
+        return (int) (data >>> 21) & 0xFF;
+    }
+
+    public static int scoreOf(long data) {
+        return (int) (data >> 32);
+    }
+
+    private static int generationOf(long data) {
+        return (int) (data >>> 29) & 7;
+    }
+
+    private int indexOf(long key) {
+        long h = key ^ (key >>> 29);
+        return ((int) h & bucketMask) * LONGS_PER_BUCKET;
+    }
+
+    /**
+     * Zwraca liczbę kubełków tablicy.
+     */
+    public int getBucketCount() {
+        return bucketMask + 1;
+    }
+}
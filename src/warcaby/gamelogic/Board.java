@@ -4,6 +4,7 @@ import warcaby.gamelogic.boardcomponents.*; // Import komponentów logiki plansz
 import warcaby.utils.Logger;             // Import loggera
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * Główna klasa logiki gry w warcaby. Działa jako fasada, koordynując działanie
@@ -21,6 +22,12 @@ public class Board {
     private MoveExecutor moveExecutor;
     private GameStatusChecker gameStatusChecker;
 
+    // Zapamiętana lista legalnych ruchów aktualnego gracza, ważna dopóki MoveExecutor nie zmieni pozycji
+    private List<Move> cachedLegalMoves = null;
+    private int cachedMovesVersion;
+    private PlayerColor cachedMovesPlayer;
+    private int cachedMovesTurnState;
+
     private String lastMoveValidationError = null; // Przechowuje komunikat o ostatnim błędzie walidacji ruchu
     public PlayerColor forcedWinner = null;      // Umożliwia wymuszenie zwycięzcy (np. przez poddanie się)
     private static final Logger logger = new Logger(Board.class); // Logger dla tej klasy
@@ -28,13 +35,22 @@ public class Board {
     public Board() {
         // Inicjalizacja wszystkich komponentów logiki
         this.boardState = new BoardState();
-        this.turnManager = new TurnManager(); // Upewnij się, że TurnManager ma metodę forceSetCurrentPlayer
+        this.turnManager = new TurnManager(boardState); // Zmiany tury aktualizują klucz Zobrista planszy
         this.moveLogic = new MoveLogic(boardState, turnManager);
         this.moveExecutor = new MoveExecutor(boardState, turnManager, moveLogic);
         this.gameStatusChecker = new GameStatusChecker(boardState, turnManager, moveLogic); // Przekazuj zależności
         initializeBoard(); // Inicjalizacja stanu początkowego planszy
     }
 
+    /**
+     * Tworzy planszę w pozycji zapisanej w migawce (np. niezależną kopię dla wątku AI).
+     * @param snapshot Migawka pozycji z {@link #snapshot()}.
+     */
+    public Board(PositionSnapshot snapshot) {
+        this();
+        loadSnapshot(snapshot);
+    }
+
     /**
      * Inicjalizuje planszę do stanu początkowego nowej gry.
      * Resetuje stan komponentów planszy, tury, błędów walidacji i wymuszonego zwycięzcy.
@@ -42,6 +58,34 @@ public class Board {
     public void initializeBoard() {
         boardState.initializeState();
         turnManager.reset();
+        moveExecutor.invalidatePosition();
+        lastMoveValidationError = null;
+        forcedWinner = null;
+    }
+
+    /**
+     * Zwraca niezmienną migawkę aktualnej pozycji. Kopiuje tylko maski pionków, stan tury
+     * i klucz pozycji, więc działa w czasie O(1) i nie współdzieli z planszą żadnego stanu.
+     * @return Migawka pozycji.
+     */
+    public PositionSnapshot snapshot() {
+        int continuingSquare = turnManager.isJumpMadeThisTurn()
+                ? Bitboards.toSquare(turnManager.getLastJumpingPieceRow(), turnManager.getLastJumpingPieceCol())
+                : -1;
+        return new PositionSnapshot(boardState.getWhiteMask(), boardState.getBlackMask(), boardState.getKingsMask(),
+                turnManager.getCurrentPlayer(), continuingSquare, boardState.getZobristKey());
+    }
+
+    /**
+     * Ustawia na planszy pozycję z migawki. Wymuszony zwycięzca i ostatni błąd walidacji są czyszczone.
+     * @param snapshot Migawka pozycji.
+     */
+    public void loadSnapshot(PositionSnapshot snapshot) {
+        boardState.setPosition(snapshot.getWhiteMask(), snapshot.getBlackMask(), snapshot.getKingsMask());
+        turnManager.restore(snapshot.getCurrentPlayer(), snapshot.isJumpMadeThisTurn(),
+                snapshot.getLastJumpingPieceRow(), snapshot.getLastJumpingPieceCol());
+        moveExecutor.clearUndoHistory();
+        moveExecutor.invalidatePosition();
         lastMoveValidationError = null;
         forcedWinner = null;
     }
@@ -56,6 +100,15 @@ public class Board {
         return boardState.getPiece(row, col);
     }
 
+    /**
+     * Zwraca 64-bitowy klucz Zobrista aktualnej pozycji (pionki i strona na ruchu).
+     * Pozwala w czasie O(1) identyfikować pozycję, np. w tablicach transpozycji czy przy wykrywaniu powtórzeń.
+     * @return Klucz pozycji.
+     */
+    public long getPositionKey() {
+        return boardState.getZobristKey();
+    }
+
     /**
      * Zwraca kolor gracza, którego jest aktualnie tura.
      * @return PlayerColor aktualnego gracza.
@@ -163,8 +216,10 @@ public class Board {
             return false;
         }
 
-        List<Move> allPossibleJumps = moveLogic.getAllPossibleJumpsForPlayer(actualCurrentPlayer);
-        boolean mandatoryJumpExists = !allPossibleJumps.isEmpty();
+        // Legalne ruchy (zapamiętane dla tej pozycji) uwzględniają obowiązek bicia, kontynuację bicia
+        // i regułę bicia maksymalnego, więc walidacja sprowadza się do sprawdzenia przynależności do listy.
+        List<Move> legalMoves = getCurrentLegalMoves();
+        boolean mandatoryJumpExists = !legalMoves.isEmpty() && legalMoves.get(0).isJump;
         boolean isAttemptedMoveAJump = moveLogic.isJump(piece, fromRow, fromCol, toRow, toCol);
 
         if (turnManager.isJumpMadeThisTurn()) {
@@ -178,27 +233,23 @@ public class Board {
                 logger.warning("Board.makeMove: " + lastMoveValidationError);
                 return false;
             }
-        } else if (mandatoryJumpExists) {
-            if (!isAttemptedMoveAJump) {
-                lastMoveValidationError = "Obowiązkowe bicie! Wybierz pionka i wykonaj bicie.";
-                logger.warning("Board.makeMove: " + lastMoveValidationError);
-                return false;
-            }
-            boolean isThisSpecificJumpAllowed = allPossibleJumps.stream()
-                    .anyMatch(jump -> jump.fromRow == fromRow && jump.fromCol == fromCol && jump.toRow == toRow && jump.toCol == toCol);
-            if (!isThisSpecificJumpAllowed) {
-                lastMoveValidationError = "Wybrane bicie nie jest jednym z dostępnych obowiązkowych bić.";
-                logger.warning("Board.makeMove: " + lastMoveValidationError);
-                return false;
-            }
+        } else if (mandatoryJumpExists && !isAttemptedMoveAJump) {
+            lastMoveValidationError = "Obowiązkowe bicie! Wybierz pionka i wykonaj bicie.";
+            logger.warning("Board.makeMove: " + lastMoveValidationError);
+            return false;
         }
 
-        // Użyj isValidMoveInternal(..., false), ponieważ reguły obowiązkowości są już sprawdzone powyżej
-        if (!moveLogic.isValidMoveInternal(fromRow, fromCol, toRow, toCol, false)) {
-            if (lastMoveValidationError == null) { // Ustaw domyślny błąd, jeśli inny nie został ustawiony
-                lastMoveValidationError = "Nieprawidłowy ruch dla wybranego pionka (isValidMoveInternal).";
+        boolean isMoveLegal = legalMoves.stream()
+                .anyMatch(move -> move.fromRow == fromRow && move.fromCol == fromCol && move.toRow == toRow && move.toCol == toCol);
+        if (!isMoveLegal) {
+            if (isAttemptedMoveAJump) {
+                lastMoveValidationError = moveLogic.isMaximumCaptureRule()
+                        ? "Obowiązuje bicie maksymalne: wybierz bicie zbijające najwięcej pionków."
+                        : "Wybrane bicie nie jest jednym z dostępnych obowiązkowych bić.";
+            } else {
+                lastMoveValidationError = "Nieprawidłowy ruch dla wybranego pionka.";
             }
-            logger.warning("Board.makeMove (isValidMoveInternal failed): " + lastMoveValidationError + " dla gracza " + actualCurrentPlayer + " z (" + fromRow + "," + fromCol + ")->(" + toRow + "," + toCol + ")");
+            logger.warning("Board.makeMove: " + lastMoveValidationError + " Gracz " + actualCurrentPlayer + " z (" + fromRow + "," + fromCol + ")->(" + toRow + "," + toCol + ")");
             return false;
         }
 
@@ -208,16 +259,108 @@ public class Board {
         return true;
     }
 
+    /**
+     * Wykonuje pełny ruch, w tym całą sekwencję bić zwróconą przez {@link #getAllCompleteMovesForPlayer}
+     * (lub dowolną inną drogę do tej samej pozycji, patrz {@link #getAllCompleteMoveRoutesForPlayer}).
+     * Sekwencja jest walidowana raz, jako całość, a następnie wykonywana skok po skoku
+     * (bez ponownego generowania ruchów między skokami). Ruch jednoetapowy jest przekazywany
+     * do {@link #makeMove(int, int, int, int)}.
+     *
+     * @param move Ruch do wykonania.
+     * @return true, jeśli ruch został wykonany, false w przeciwnym razie.
+     */
+    public boolean makeMove(Move move) {
+        if (move == null) {
+            return false;
+        }
+        if (!move.isCaptureSequence()) {
+            return makeMove(move.fromRow, move.fromCol, move.toRow, move.toCol);
+        }
+        if (getWinner() != null) {
+            lastMoveValidationError = "Gra została już zakończona.";
+            logger.warning("Board.makeMove: Próba ruchu w zakończonej grze. Zwycięzca: " + getWinner());
+            return false;
+        }
+        lastMoveValidationError = null;
+
+        boolean isLegalSequence = false;
+        // Porównanie z każdą drogą: różne drogi do tej samej pozycji końcowej są równie dozwolone
+        for (Move legalMove : moveLogic.getAllCompleteMoveRoutesForPlayer(getCurrentPlayer())) {
+            if (legalMove.hasSamePath(move)) {
+                isLegalSequence = true;
+                break;
+            }
+        }
+        if (!isLegalSequence) {
+            lastMoveValidationError = "Sekwencja bić " + move + " nie jest dozwolona w tej pozycji.";
+            logger.warning("Board.makeMove: " + lastMoveValidationError);
+            return false;
+        }
+
+        logger.info("Board.makeMove: Wykonywanie sekwencji bić " + move + " przez " + getCurrentPlayer());
+        for (int i = 0; i < move.getHopCount(); i++) {
+            Move hop = move.getHop(i);
+            moveExecutor.executeValidatedMove(hop.fromRow, hop.fromCol, hop.toRow, hop.toCol);
+        }
+        return true;
+    }
+
+    /**
+     * Zwraca wszystkie pełne ruchy gracza: każda sekwencja bić jest jednym ruchem złożonym
+     * (patrz {@link Move#isCaptureSequence()}), a bez bić są to zwykłe ruchy.
+     * @param playerColor Kolor gracza.
+     * @return Lista pełnych ruchów. Jeśli gra się zakończyła, zwraca pustą listę.
+     */
+    public List<Move> getAllCompleteMovesForPlayer(PlayerColor playerColor) {
+        if (getWinner() != null) return new ArrayList<>();
+        return moveLogic.getAllCompleteMovesForPlayer(playerColor);
+    }
+
+    /**
+     * Jak {@link #getAllCompleteMovesForPlayer}, ale sekwencje bić prowadzące różnymi drogami do tej samej
+     * pozycji końcowej są zwracane osobno (np. do odszukania ruchu zapisanego w notacji partii).
+     * @param playerColor Kolor gracza.
+     * @return Lista pełnych ruchów ze wszystkimi drogami bić. Jeśli gra się zakończyła, zwraca pustą listę.
+     */
+    public List<Move> getAllCompleteMoveRoutesForPlayer(PlayerColor playerColor) {
+        if (getWinner() != null) return new ArrayList<>();
+        return moveLogic.getAllCompleteMoveRoutesForPlayer(playerColor);
+    }
+
     /**
      * Zwraca listę wszystkich prawidłowych ruchów (bić lub zwykłych ruchów)
      * możliwych do wykonania przez gracza o podanym kolorze.
-     * Uwzględnia zasadę obowiązkowego bicia.
+     * Uwzględnia zasadę obowiązkowego bicia. Dla aktualnego gracza lista jest wyznaczana
+     * raz na pozycję i współdzielona przez wszystkich wywołujących.
      * @param playerColor Kolor gracza.
-     * @return Lista obiektów Move. Jeśli gra się zakończyła, zwraca pustą listę.
+     * @return Niemodyfikowalna lista obiektów Move. Jeśli gra się zakończyła, zwraca pustą listę.
      */
     public List<Move> getAllValidMovesForPlayer(PlayerColor playerColor) {
-        if (getWinner() != null) return new ArrayList<>(); // Jeśli jest zwycięzca, nie ma już ważnych ruchów
-        return moveLogic.getAllValidMovesForPlayer(playerColor);
+        if (getWinner() != null) return Collections.emptyList(); // Jeśli jest zwycięzca, nie ma już ważnych ruchów
+        if (playerColor == turnManager.getCurrentPlayer()) {
+            return getCurrentLegalMoves();
+        }
+        return Collections.unmodifiableList(moveLogic.getAllValidMovesForPlayer(playerColor));
+    }
+
+    /**
+     * Zwraca legalne ruchy aktualnego gracza, generując je tylko raz dla danej pozycji.
+     * Lista jest unieważniana, gdy MoveExecutor zmieni planszę albo zmieni się stan tury
+     * (np. tura wymuszona przez serwer), i jest udostępniana wszystkim jako widok tylko do odczytu.
+     */
+    private List<Move> getCurrentLegalMoves() {
+        PlayerColor player = turnManager.getCurrentPlayer();
+        int turnState = turnManager.isJumpMadeThisTurn()
+                ? 1 + turnManager.getLastJumpingPieceRow() * BoardState.SIZE + turnManager.getLastJumpingPieceCol()
+                : 0;
+        if (cachedLegalMoves == null || cachedMovesVersion != moveExecutor.getPositionVersion()
+                || cachedMovesPlayer != player || cachedMovesTurnState != turnState) {
+            cachedLegalMoves = Collections.unmodifiableList(moveLogic.getAllValidMovesForPlayer(player));
+            cachedMovesVersion = moveExecutor.getPositionVersion();
+            cachedMovesPlayer = player;
+            cachedMovesTurnState = turnState;
+        }
+        return cachedLegalMoves;
     }
 
     /**
@@ -247,7 +390,7 @@ public class Board {
         if (forcedWinner != null) {
             return forcedWinner;
         }
-        return gameStatusChecker.getWinner(); // GameStatusChecker używa getCurrentPlayer() do sprawdzenia braku ruchów
+        return gameStatusChecker.getWinner(getCurrentLegalMoves()); // Brak ruchów sprawdzany na zapamiętanej liście
     }
 
     /**
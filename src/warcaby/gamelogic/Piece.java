@@ -4,30 +4,43 @@ package warcaby.gamelogic;
  * Reprezentuje pojedynczy pionek na planszy do gry w warcaby.
  * Przechowuje informacje o kolorze pionka (biały lub czarny)
  * oraz jego typie (zwykły pionek - MAN, lub damka - KING).
+ * Pionki są niezmienne i istnieją tylko cztery instancje (po jednej na kolor i typ),
+ * pobierane przez {@link #of(PlayerColor, PieceType)}. Dzięki temu odczyt planszy
+ * nie alokuje obiektów, a zwrócony pionek można bezpiecznie przekazać innemu wątkowi.
  */
-public class Piece {
-    private PlayerColor color; // Kolor pionka (WHITE lub BLACK)
-    private PieceType type;    // Typ pionka (MAN lub KING)
+public final class Piece {
+    public static final Piece WHITE_MAN = new Piece(PlayerColor.WHITE, PieceType.MAN);
+    public static final Piece WHITE_KING = new Piece(PlayerColor.WHITE, PieceType.KING);
+    public static final Piece BLACK_MAN = new Piece(PlayerColor.BLACK, PieceType.MAN);
+    public static final Piece BLACK_KING = new Piece(PlayerColor.BLACK, PieceType.KING);
 
-    /**
-     * Konstruktor tworzący nowy pionek o zadanym kolorze.
-     * Domyślnie nowo utworzony pionek jest zwykłym pionkiem (MAN).
-     * @param color Kolor pionka (PlayerColor.WHITE lub PlayerColor.BLACK).
-     */
-    public Piece(PlayerColor color) {
+    private final PlayerColor color; // Kolor pionka (WHITE lub BLACK)
+    private final PieceType type;    // Typ pionka (MAN lub KING)
+
+    private Piece(PlayerColor color, PieceType type) {
         this.color = color;
-        this.type = PieceType.MAN; // Domyślny typ to zwykły pionek
+        this.type = type;
     }
 
     /**
-     * Konstruktor tworzący nowy pionek o zadanym kolorze i typie.
-     * Może być używany do tworzenia damek bezpośrednio lub do celów testowych.
-     * @param color Kolor pionka.
+     * Zwraca pionka o zadanym kolorze i typie.
+     * @param color Kolor pionka (PlayerColor.WHITE lub PlayerColor.BLACK).
      * @param type Typ pionka (PieceType.MAN lub PieceType.KING).
+     * @return Współdzielona, niezmienna instancja pionka.
+     * @throws IllegalArgumentException jeśli kolor nie jest białym ani czarnym lub typ jest null.
      */
-    public Piece(PlayerColor color, PieceType type) {
-        this.color = color;
-        this.type = type;
+    public static Piece of(PlayerColor color, PieceType type) {
+        if (type == null) {
+            throw new IllegalArgumentException("Typ pionka nie może być null.");
+        }
+        boolean king = (type == PieceType.KING);
+        if (color == PlayerColor.WHITE) {
+            return king ? WHITE_KING : WHITE_MAN;
+        }
+        if (color == PlayerColor.BLACK) {
+            return king ? BLACK_KING : BLACK_MAN;
+        }
+        throw new IllegalArgumentException("Nieprawidłowy kolor pionka: " + color);
     }
 
     /**
@@ -46,12 +59,16 @@ public class Piece {
         return type;
     }
 
+    public boolean isKing() {
+        return type == PieceType.KING;
+    }
+
     /**
-     * Promuje zwykłego pionka (MAN) na damkę (KING).
-     * Ta metoda zmienia typ pionka.
+     * Zwraca damkę tego samego koloru (pionek po promocji). Sam pionek nie jest zmieniany.
+     * @return Damka w kolorze tego pionka.
      */
-    public void promoteToKing() {
-        this.type = PieceType.KING;
+    public Piece promoted() {
+        return of(color, PieceType.KING);
     }
 
     /**
@@ -68,4 +85,4 @@ public class Piece {
         char typeChar = (type == PieceType.KING ? 'K' : 'M');
         return "" + colorChar + typeChar;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,142 @@
+package warcaby.gamelogic;
+
+import warcaby.gamelogic.boardcomponents.Bitboards;
+import warcaby.gamelogic.boardcomponents.BoardState;
+import warcaby.gamelogic.boardcomponents.IntMoveList;
+import warcaby.gamelogic.boardcomponents.Move;
+import warcaby.gamelogic.boardcomponents.MoveExecutor;
+import warcaby.gamelogic.boardcomponents.MoveLogic;
+import warcaby.gamelogic.boardcomponents.TurnManager;
+
+/**
+ * Niezmienna migawka pozycji: maski pionków, strona na ruchu, stan kontynuacji bicia
+ * oraz klucz Zobrista. Tworzona przez {@link Board#snapshot()} przez skopiowanie kilku liczb,
+ * bez kopiowania planszy. Można ją bezpiecznie przekazać innemu wątkowi (np. obliczeniom AI,
+ * obserwatorom partii lub do archiwum), a {@link Board#Board(PositionSnapshot)} odtwarza z niej planszę.
+ */
+public final class PositionSnapshot {
+    private final int whiteMask;
+    private final int blackMask;
+    private final int kingsMask;
+    private final PlayerColor currentPlayer;
+    private final int continuingSquare; // Pole pionka kontynuującego bicie lub -1
+    private final long positionKey;
+
+    PositionSnapshot(int whiteMask, int blackMask, int kingsMask, PlayerColor currentPlayer,
+                     int continuingSquare, long positionKey) {
+        this.whiteMask = whiteMask;
+        this.blackMask = blackMask;
+        this.kingsMask = kingsMask;
+        this.currentPlayer = currentPlayer;
+        this.continuingSquare = continuingSquare;
+        this.positionKey = positionKey;
+    }
+
+    /**
+     * Zwraca pionka na podanym polu migawki.
+     * @return Współdzielona instancja Piece lub null, jeśli pole jest puste lub koordynaty są nieprawidłowe.
+     */
+    public Piece getPiece(int row, int col) {
+        int square = Bitboards.toSquare(row, col);
+        if (square < 0) {
+            return null;
+        }
+        int bit = Bitboards.bit(square);
+        PieceType type = (kingsMask & bit) != 0 ? PieceType.KING : PieceType.MAN;
+        if ((whiteMask & bit) != 0) return Piece.of(PlayerColor.WHITE, type);
+        if ((blackMask & bit) != 0) return Piece.of(PlayerColor.BLACK, type);
+        return null;
+    }
+
+    public int getWhiteMask() { return whiteMask; }
+    public int getBlackMask() { return blackMask; }
+    public int getKingsMask() { return kingsMask; }
+    public int getWhitePiecesCount() { return Integer.bitCount(whiteMask); }
+    public int getBlackPiecesCount() { return Integer.bitCount(blackMask); }
+    public PlayerColor getCurrentPlayer() { return currentPlayer; }
+
+    /**
+     * Zwraca klucz Zobrista pozycji (pionki i strona na ruchu), taki sam jak {@link Board#getPositionKey()}.
+     */
+    public long getPositionKey() { return positionKey; }
+
+    public boolean isJumpMadeThisTurn() {
+        return continuingSquare >= 0;
+    }
+
+    public int getLastJumpingPieceRow() {
+        return continuingSquare >= 0 ? Bitboards.rowOf(continuingSquare) : -1;
+    }
+
+    public int getLastJumpingPieceCol() {
+        return continuingSquare >= 0 ? Bitboards.colOf(continuingSquare) : -1;
+    }
+
+    /**
+     * Zwraca migawkę pozycji po wykonaniu pełnego ruchu gracza na ruchu (np. przewidywanej odpowiedzi
+     * przeciwnika). Ruch jest wykonywany na prywatnej kopii, bez tworzenia planszy {@link Board}.
+     * @param move Pełny ruch (sekwencja bić jest jednym ruchem).
+     * @return Nowa migawka lub null, jeśli ruch nie jest legalny w tej pozycji.
+     */
+    public PositionSnapshot afterMove(Move move) {
+        BoardState boardState = new BoardState();
+        TurnManager turnManager = new TurnManager(boardState);
+        MoveLogic moveLogic = new MoveLogic(boardState, turnManager);
+        MoveExecutor moveExecutor = new MoveExecutor(boardState, turnManager, moveLogic);
+        boardState.setPosition(whiteMask, blackMask, kingsMask);
+        turnManager.restore(currentPlayer, isJumpMadeThisTurn(), getLastJumpingPieceRow(), getLastJumpingPieceCol());
+
+        IntMoveList moves = new IntMoveList();
+        moveLogic.generateCompleteMoveRoutes(currentPlayer, moves);
+        for (int i = 0; i < moves.size(); i++) {
+            if (moves.toMove(i).hasSamePath(move)) {
+                moveExecutor.make(moves.get(i), moves.getCapturedMask(i));
+                int square = turnManager.isJumpMadeThisTurn()
+                        ? Bitboards.toSquare(turnManager.getLastJumpingPieceRow(), turnManager.getLastJumpingPieceCol())
+                        : -1;
+                return new PositionSnapshot(boardState.getWhiteMask(), boardState.getBlackMask(), boardState.getKingsMask(),
+                        turnManager.getCurrentPlayer(), square, boardState.getZobristKey());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof PositionSnapshot)) return false;
+        PositionSnapshot that = (PositionSnapshot) other;
+        return whiteMask == that.whiteMask && blackMask == that.blackMask && kingsMask == that.kingsMask
+                && currentPlayer == that.currentPlayer && continuingSquare == that.continuingSquare;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(positionKey) * 31 + continuingSquare;
+    }
+
+    /**
+     * Zwraca tekstową reprezentację migawki: wiersze planszy (".", "w", "W", "b", "B") i stronę na ruchu.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < BoardState.SIZE; row++) {
+            for (int col = 0; col < BoardState.SIZE; col++) {
+                Piece piece = getPiece(row, col);
+                if (piece == null) {
+                    sb.append('.');
+                } else {
+                    char c = piece.getColor() == PlayerColor.WHITE ? 'w' : 'b';
+                    sb.append(piece.isKing() ? Character.toUpperCase(c) : c);
+                }
+            }
+            sb.append('\n');
+        }
+        sb.append("Na ruchu: ").append(currentPlayer);
+        if (isJumpMadeThisTurn()) {
+            sb.append(" (kontynuacja bicia z ").append(getLastJumpingPieceRow()).append(',').append(getLastJumpingPieceCol()).append(')');
+        }
+        return sb.toString();
+    }
+}
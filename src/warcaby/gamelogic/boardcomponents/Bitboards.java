@@ -0,0 +1,141 @@
+package warcaby.gamelogic.boardcomponents;
+
+/**
+ * Operacje pomocnicze na maskach bitowych (bitboardach) opisujących ciemne pola planszy.
+ * Każde z 32 ciemnych pól ma indeks {@code row * 4 + col / 2}: bit 0 to pole (0,1),
+ * bit 31 to pole (7,6). Przesunięcie całej maski w jednym z czterech kierunków diagonalnych
+ * pozwala wyznaczyć ruchy i bicia wszystkich pionków naraz, bez przeglądania 64 pól planszy.
+ * Dla damek przygotowane są maski promieni (wszystkie pola od danego pola do krawędzi planszy
+ * w danym kierunku), więc ich ruchy i bicia wyznacza odczyt z tablicy i znalezienie pierwszej przeszkody.
+ */
+public final class Bitboards {
+    public static final int SQUARES = 32;
+
+    // Kierunki diagonalne. Kierunki przeciwne sumują się do 3 (patrz opposite()).
+    public static final int UP_LEFT = 0;    // wiersz - 1, kolumna - 1 (kierunek ruchu białych)
+    public static final int UP_RIGHT = 1;   // wiersz - 1, kolumna + 1
+    public static final int DOWN_LEFT = 2;  // wiersz + 1, kolumna - 1 (kierunek ruchu czarnych)
+    public static final int DOWN_RIGHT = 3; // wiersz + 1, kolumna + 1
+
+    public static final int ROW_0 = 0x0000000F; // Wiersz promocji białych
+    public static final int ROW_7 = 0xF0000000; // Wiersz promocji czarnych
+
+    private static final int EVEN_ROWS = 0x0F0F0F0F;  // Wiersze 0, 2, 4, 6 (pola w kolumnach nieparzystych)
+    private static final int ODD_ROWS = 0xF0F0F0F0;   // Wiersze 1, 3, 5, 7 (pola w kolumnach parzystych)
+    private static final int LEFT_EDGE = 0x10101010;  // Pola w kolumnie 0
+    private static final int RIGHT_EDGE = 0x08080808; // Pola w kolumnie 7
+
+    private static final int[][] RAYS = new int[4][SQUARES]; // [kierunek][pole] -> pola do krawędzi planszy
+
+    static {
+        for (int direction = 0; direction < 4; direction++) {
+            for (int square = 0; square < SQUARES; square++) {
+                int ray = 0;
+                int current = shift(bit(square), direction);
+                while (current != 0) {
+                    ray |= current;
+                    current = shift(current, direction);
+                }
+                RAYS[direction][square] = ray;
+            }
+        }
+    }
+
+    private Bitboards() {
+        throw new IllegalStateException("Klasa narzędziowa nie powinna być instancjonowana");
+    }
+
+    /**
+     * Zamienia koordynaty planszy na indeks ciemnego pola.
+     * @return Indeks 0-31 lub -1, jeśli pole leży poza planszą albo jest jasne.
+     */
+    public static int toSquare(int row, int col) {
+        if (row < 0 || row >= BoardState.SIZE || col < 0 || col >= BoardState.SIZE || ((row + col) & 1) == 0) {
+            return -1;
+        }
+        return (row << 2) | (col >> 1);
+    }
+
+    public static int rowOf(int square) {
+        return square >> 2;
+    }
+
+    public static int colOf(int square) {
+        // W wierszach parzystych ciemne pola leżą w kolumnach nieparzystych i odwrotnie.
+        return ((square & 3) << 1) | ((rowOf(square) & 1) ^ 1);
+    }
+
+    public static int bit(int square) {
+        return 1 << square;
+    }
+
+    public static int opposite(int direction) {
+        return 3 - direction;
+    }
+
+    /**
+     * Zwraca kierunek diagonalny odpowiadający znakom różnic wierszy i kolumn.
+     */
+    public static int direction(int rowDiff, int colDiff) {
+        if (rowDiff < 0) {
+            return colDiff < 0 ? UP_LEFT : UP_RIGHT;
+        }
+        return colDiff < 0 ? DOWN_LEFT : DOWN_RIGHT;
+    }
+
+    /**
+     * Przesuwa wszystkie bity maski o jedno pole w podanym kierunku.
+     * Bity, które opuściłyby planszę, są odrzucane.
+     */
+    public static int shift(int mask, int direction) {
+        switch (direction) {
+            case UP_LEFT:
+                return ((mask & EVEN_ROWS) >>> 4) | ((mask & ODD_ROWS & ~LEFT_EDGE) >>> 5);
+            case UP_RIGHT:
+                return ((mask & EVEN_ROWS & ~RIGHT_EDGE) >>> 3) | ((mask & ODD_ROWS) >>> 4);
+            case DOWN_LEFT:
+                return ((mask & EVEN_ROWS) << 4) | ((mask & ODD_ROWS & ~LEFT_EDGE) << 3);
+            case DOWN_RIGHT:
+                return ((mask & EVEN_ROWS & ~RIGHT_EDGE) << 5) | ((mask & ODD_ROWS) << 4);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Zwraca maskę wszystkich pól od {@code square} (bez niego) do krawędzi planszy w podanym kierunku.
+     */
+    public static int ray(int square, int direction) {
+        return RAYS[direction][square];
+    }
+
+    /**
+     * Zwraca indeks pierwszego zajętego pola na promieniu z {@code square} w podanym kierunku lub -1.
+     * Kierunki "w górę" prowadzą do mniejszych indeksów, więc najbliższa przeszkoda to najwyższy bit.
+     */
+    public static int firstBlocker(int square, int direction, int occupied) {
+        int blockers = RAYS[direction][square] & occupied;
+        if (blockers == 0) {
+            return -1;
+        }
+        return (direction <= UP_RIGHT) ? 31 - Integer.numberOfLeadingZeros(blockers) : Integer.numberOfTrailingZeros(blockers);
+    }
+
+    /**
+     * Zwraca puste pola promienia z {@code square} w podanym kierunku, aż do pierwszej przeszkody (bez niej).
+     */
+    public static int emptyRay(int square, int direction, int occupied) {
+        int blocker = firstBlocker(square, direction, occupied);
+        if (blocker < 0) {
+            return RAYS[direction][square];
+        }
+        return RAYS[direction][square] & ~RAYS[direction][blocker] & ~bit(blocker);
+    }
+
+    /**
+     * Zwraca pola leżące ściśle między {@code from} i {@code to} na jednej przekątnej w podanym kierunku.
+     */
+    public static int between(int from, int to, int direction) {
+        return RAYS[direction][from] & ~RAYS[direction][to] & ~bit(to);
+    }
+}
@@ -1,48 +1,126 @@
 package warcaby.gamelogic.boardcomponents;
 
 import warcaby.gamelogic.Piece;
+import warcaby.gamelogic.PieceType;
 import warcaby.gamelogic.PlayerColor;
 
 /**
  * Przechowuje stan planszy: pozycje pionków oraz ich liczbę.
+ * Pozycje są zapisane w trzech 32-bitowych maskach ciemnych pól (patrz {@link Bitboards}):
+ * białe pionki, czarne pionki oraz damki obu kolorów.
+ * Dodatkowo utrzymuje 64-bitowy klucz Zobrista pozycji ({@link #getZobristKey()}), aktualizowany
+ * przyrostowo przy każdej zmianie pionków oraz strony na ruchu (ustawianej przez {@link TurnManager}).
+ * Stan kontynuacji bicia nie jest częścią klucza.
+ * W ten sam sposób utrzymywane są liczby damek i suma wartości pionków z {@link PieceSquareTable}
+ * (materiał i składniki pozycyjne), więc ocena pozycji nie musi przeglądać planszy; tablica wartości
+ * jest domyślna albo ustawiona przez {@link #setPieceSquareTable} (np. z dostrojonymi wagami oceny).
  */
 public class BoardState {
     public static final int SIZE = 8;
-    private Piece[][] boardGrid;
+    private static final int INITIAL_BLACK = 0x00000FFF; // Wiersze 0-2
+    private static final int INITIAL_WHITE = 0xFFF00000; // Wiersze 5-7
+
+    private int whiteMask;
+    private int blackMask;
+    private int kingsMask;
     private int whitePiecesCount;
     private int blackPiecesCount;
+    private int whiteKingsCount;
+    private int blackKingsCount;
+    private PieceSquareTable pieceSquareTable = PieceSquareTable.DEFAULT;
+    private int pieceSquareScore; // Suma wartości pionków z pieceSquareTable (z punktu widzenia białych)
+    private long pieceKey;        // XOR kluczy Zobrista wszystkich pionków
+    private boolean blackToMove;  // Strona na ruchu, uwzględniana w kluczu pozycji
 
     public BoardState() {
-        this.boardGrid = new Piece[SIZE][SIZE];
     }
 
     public void initializeState() {
-        for (int row = 0; row < SIZE; row++) {
-            for (int col = 0; col < SIZE; col++) {
-                boardGrid[row][col] = null;
-                if ((row + col) % 2 != 0) { // Tylko ciemne pola
-                    if (row < 3) {
-                        boardGrid[row][col] = new Piece(PlayerColor.BLACK);
-                    } else if (row > 4) {
-                        boardGrid[row][col] = new Piece(PlayerColor.WHITE);
-                    }
-                }
-            }
-        }
+        whiteMask = INITIAL_WHITE;
+        blackMask = INITIAL_BLACK;
+        kingsMask = 0;
         whitePiecesCount = 12;
         blackPiecesCount = 12;
+        whiteKingsCount = 0;
+        blackKingsCount = 0;
+        pieceSquareScore = pieceSquareTable.computeScore(whiteMask, blackMask, kingsMask);
+        pieceKey = Zobrist.computePieceKey(whiteMask, blackMask, kingsMask);
+    }
+
+    /**
+     * Ustawia dowolną pozycję z masek bitowych; liczniki pionków i wartość pozycji są wyliczane z masek.
+     */
+    public void setPosition(int white, int black, int kings) {
+        whiteMask = white;
+        blackMask = black;
+        kingsMask = kings & (white | black);
+        whitePiecesCount = Integer.bitCount(white);
+        blackPiecesCount = Integer.bitCount(black);
+        whiteKingsCount = Integer.bitCount(white & kingsMask);
+        blackKingsCount = Integer.bitCount(black & kingsMask);
+        pieceSquareScore = pieceSquareTable.computeScore(whiteMask, blackMask, kingsMask);
+        pieceKey = Zobrist.computePieceKey(whiteMask, blackMask, kingsMask);
+    }
+
+    /**
+     * Zmienia tablicę wartości pionków, z której liczona jest {@link #getPieceSquareScore()},
+     * i przelicza tę sumę dla bieżącej pozycji.
+     */
+    public void setPieceSquareTable(PieceSquareTable table) {
+        pieceSquareTable = table;
+        pieceSquareScore = table.computeScore(whiteMask, blackMask, kingsMask);
+    }
+
+    public PieceSquareTable getPieceSquareTable() {
+        return pieceSquareTable;
+    }
+
+    /**
+     * Kopiuje cały stan innej planszy do tej instancji (bez alokacji).
+     */
+    void copyFrom(BoardState other) {
+        whiteMask = other.whiteMask;
+        blackMask = other.blackMask;
+        kingsMask = other.kingsMask;
+        whitePiecesCount = other.whitePiecesCount;
+        blackPiecesCount = other.blackPiecesCount;
+        whiteKingsCount = other.whiteKingsCount;
+        blackKingsCount = other.blackKingsCount;
+        pieceSquareTable = other.pieceSquareTable;
+        pieceSquareScore = other.pieceSquareScore;
+        pieceKey = other.pieceKey;
+        blackToMove = other.blackToMove;
     }
 
     public Piece getPiece(int row, int col) {
-        if (isValidCoordinate(row, col)) {
-            return boardGrid[row][col];
+        int square = Bitboards.toSquare(row, col);
+        if (square < 0) {
+            return null;
         }
-        return null;
+        PlayerColor color = getColorAt(square);
+        if (color == null) {
+            return null;
+        }
+        return Piece.of(color, isKingAt(square) ? PieceType.KING : PieceType.MAN); // Współdzielona instancja, bez alokacji
     }
 
     public void setPiece(int row, int col, Piece piece) {
-        if (isValidCoordinate(row, col)) {
-            boardGrid[row][col] = piece;
+        int square = Bitboards.toSquare(row, col);
+        if (square < 0) {
+            return; // Na jasnych polach nie ma pionków
+        }
+        removePiece(square);
+        int bit = Bitboards.bit(square);
+        if (piece != null) {
+            if (piece.getColor() == PlayerColor.WHITE) {
+                whiteMask |= bit;
+            } else {
+                blackMask |= bit;
+            }
+            if (piece.getType() == PieceType.KING) {
+                kingsMask |= bit;
+            }
+            pieceAdded(pieceKindAt(square), square);
         }
     }
 
@@ -50,8 +128,142 @@ public class BoardState {
         return row >= 0 && row < SIZE && col >= 0 && col < SIZE;
     }
 
+    /**
+     * Zwraca kolor pionka na ciemnym polu o podanym indeksie.
+     * @return WHITE, BLACK lub null, jeśli pole jest puste.
+     */
+    public PlayerColor getColorAt(int square) {
+        int bit = Bitboards.bit(square);
+        if ((whiteMask & bit) != 0) return PlayerColor.WHITE;
+        if ((blackMask & bit) != 0) return PlayerColor.BLACK;
+        return null;
+    }
+
+    public boolean isKingAt(int square) {
+        return (kingsMask & Bitboards.bit(square)) != 0;
+    }
+
+    /**
+     * Zwraca klucz Zobrista pozycji: pionki oraz strona na ruchu.
+     */
+    public long getZobristKey() {
+        return blackToMove ? pieceKey ^ Zobrist.BLACK_TO_MOVE : pieceKey;
+    }
+
+    /**
+     * Ustawia stronę na ruchu uwzględnianą w kluczu pozycji. Wywoływane przez TurnManager.
+     */
+    void setSideToMove(PlayerColor player) {
+        blackToMove = (player == PlayerColor.BLACK);
+    }
+
+    public int getWhiteMask() { return whiteMask; }
+    public int getBlackMask() { return blackMask; }
+    public int getKingsMask() { return kingsMask; }
+    public int getOccupiedMask() { return whiteMask | blackMask; }
+    public int getEmptyMask() { return ~(whiteMask | blackMask); }
+
+    public int getPiecesMask(PlayerColor color) {
+        return color == PlayerColor.WHITE ? whiteMask : (color == PlayerColor.BLACK ? blackMask : 0);
+    }
+
+    /**
+     * Przenosi pionka (wraz z jego typem) z jednego ciemnego pola na drugie.
+     * Pole docelowe musi być puste albo równe startowemu (damka, która w sekwencji bić wróciła na swoje pole).
+     */
+    void movePiece(int fromSquare, int toSquare) {
+        if (fromSquare == toSquare) {
+            return;
+        }
+        int fromBit = Bitboards.bit(fromSquare);
+        int moveBits = fromBit | Bitboards.bit(toSquare);
+        int kind = pieceKindAt(fromSquare);
+        pieceKey ^= Zobrist.pieceKey(kind, fromSquare) ^ Zobrist.pieceKey(kind, toSquare);
+        pieceSquareScore += pieceSquareTable.value(kind, toSquare) - pieceSquareTable.value(kind, fromSquare);
+        if ((whiteMask & fromBit) != 0) {
+            whiteMask ^= moveBits;
+        } else {
+            blackMask ^= moveBits;
+        }
+        if ((kingsMask & fromBit) != 0) {
+            kingsMask ^= moveBits;
+        }
+    }
+
+    void removePiece(int square) {
+        if (((whiteMask | blackMask) & Bitboards.bit(square)) != 0) {
+            pieceRemoved(pieceKindAt(square), square);
+        }
+        int clear = ~Bitboards.bit(square);
+        whiteMask &= clear;
+        blackMask &= clear;
+        kingsMask &= clear;
+    }
+
+    void promoteToKing(int square) {
+        if (!isKingAt(square)) {
+            boolean white = (whiteMask & Bitboards.bit(square)) != 0;
+            pieceRemoved(Zobrist.pieceKind(white, false), square);
+            pieceAdded(Zobrist.pieceKind(white, true), square);
+            kingsMask |= Bitboards.bit(square);
+        }
+    }
+
+    /**
+     * Cofa promocję: damka na podanym polu znów staje się zwykłym pionkiem (używane przy cofaniu ruchu).
+     */
+    void demoteToMan(int square) {
+        if (isKingAt(square)) {
+            boolean white = (whiteMask & Bitboards.bit(square)) != 0;
+            pieceRemoved(Zobrist.pieceKind(white, true), square);
+            pieceAdded(Zobrist.pieceKind(white, false), square);
+            kingsMask &= ~Bitboards.bit(square);
+        }
+    }
+
+    /**
+     * Stawia pionka na pustym polu (używane przy cofaniu bicia). Nie zmienia liczników pionków.
+     */
+    void addPiece(int square, boolean white, boolean king) {
+        int bit = Bitboards.bit(square);
+        if (white) whiteMask |= bit; else blackMask |= bit;
+        if (king) kingsMask |= bit;
+        pieceAdded(Zobrist.pieceKind(white, king), square);
+    }
+
+    void setPiecesCounts(int whiteCount, int blackCount) {
+        whitePiecesCount = whiteCount;
+        blackPiecesCount = blackCount;
+    }
+
+    // Aktualizacja przyrostowa klucza, wartości pozycji i liczby damek przy pojawieniu się lub zniknięciu pionka
+    private void pieceAdded(int kind, int square) {
+        pieceKey ^= Zobrist.pieceKey(kind, square);
+        pieceSquareScore += pieceSquareTable.value(kind, square);
+        if (kind == Zobrist.WHITE_KING) whiteKingsCount++;
+        else if (kind == Zobrist.BLACK_KING) blackKingsCount++;
+    }
+
+    private void pieceRemoved(int kind, int square) {
+        pieceKey ^= Zobrist.pieceKey(kind, square);
+        pieceSquareScore -= pieceSquareTable.value(kind, square);
+        if (kind == Zobrist.WHITE_KING) whiteKingsCount--;
+        else if (kind == Zobrist.BLACK_KING) blackKingsCount--;
+    }
+
+    private int pieceKindAt(int square) {
+        return Zobrist.pieceKind((whiteMask & Bitboards.bit(square)) != 0, isKingAt(square));
+    }
+
     public int getWhitePiecesCount() { return whitePiecesCount; }
     public int getBlackPiecesCount() { return blackPiecesCount; }
+    public int getWhiteKingsCount() { return whiteKingsCount; }
+    public int getBlackKingsCount() { return blackKingsCount; }
+
+    /**
+     * Zwraca sumę wartości pionków z bieżącej {@link PieceSquareTable} z punktu widzenia białych.
+     */
+    public int getPieceSquareScore() { return pieceSquareScore; }
     public void decrementWhitePieces() { whitePiecesCount--; }
     public void decrementBlackPieces() { blackPiecesCount--; }
-}
\ No newline at end of file
+}
@@ -28,6 +28,15 @@ public class GameStatusChecker {
      *         lub null, jeśli gra jest wciąż w toku.
      */
     public PlayerColor getWinner() {
+        return getWinner(null);
+    }
+
+    /**
+     * Wersja {@link #getWinner()} korzystająca z już wyznaczonej listy legalnych ruchów aktualnego gracza,
+     * dzięki czemu sprawdzenie końca gry nie generuje ruchów ponownie.
+     * @param currentPlayerMoves Legalne ruchy aktualnego gracza lub null, jeśli mają zostać wygenerowane.
+     */
+    public PlayerColor getWinner(List<Move> currentPlayerMoves) {
         boolean whiteHasPieces = boardState.getWhitePiecesCount() > 0;
         boolean blackHasPieces = boardState.getBlackPiecesCount() > 0;
 
@@ -53,7 +62,7 @@ public class GameStatusChecker {
             return null; // Nie można podjąć decyzji
         }
 
-        List<Move> validMoves = moveLogic.getAllValidMovesForPlayer(currentPlayer);
+        List<Move> validMoves = (currentPlayerMoves != null) ? currentPlayerMoves : moveLogic.getAllValidMovesForPlayer(currentPlayer);
         if (validMoves.isEmpty()) { // Sprawdzenie, czy lista jest pusta (getAllValidMovesForPlayer nie powinno zwracać null)
             PlayerColor winner = (currentPlayer == PlayerColor.WHITE) ? PlayerColor.BLACK : PlayerColor.WHITE;
             logger.info("GameStatusChecker: Gracz " + currentPlayer + " nie ma dostępnych ruchów. Przegrywa. Wygrywa " + winner + ".");
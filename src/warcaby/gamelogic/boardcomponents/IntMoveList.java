@@ -0,0 +1,157 @@
+package warcaby.gamelogic.boardcomponents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rosnąca lista ruchów zapisanych jako {@link PackedMove}, przeznaczona do wielokrotnego użycia
+ * (np. jedna lista na poziom przeszukiwania), dzięki czemu generowanie ruchów nie alokuje pamięci.
+ * Obok każdego ruchu przechowywana jest maska zbitych pionków oraz, dla sekwencji bić,
+ * kolejne pola lądowania (po 5 bitów na skok, najwyżej 12 skoków).
+ * Metody {@link #toMove(int)} i {@link #toMoveList()} tworzą obiekty {@link Move} dla GUI.
+ */
+public final class IntMoveList {
+    private int[] moves;
+    private int[] capturedMasks;
+    private long[] paths;
+    private int size;
+
+    public IntMoveList() {
+        this(32);
+    }
+
+    public IntMoveList(int initialCapacity) {
+        int capacity = Math.max(4, initialCapacity);
+        moves = new int[capacity];
+        capturedMasks = new int[capacity];
+        paths = new long[capacity];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Dodaje zwykły ruch albo pojedynczy skok.
+     */
+    public void add(int move) {
+        int capturedSquare = PackedMove.capturedSquare(move);
+        add(move, capturedSquare >= 0 ? Bitboards.bit(capturedSquare) : 0, 0L);
+    }
+
+    /**
+     * Dodaje ruch wraz z maską zbitych pionków i drogą sekwencji bić.
+     * @param path Kolejne pola lądowania (po 5 bitów, od najmłodszych), 0 dla ruchu jednoetapowego.
+     */
+    public void add(int move, int capturedMask, long path) {
+        if (size == moves.length) {
+            int capacity = size * 2;
+            moves = Arrays.copyOf(moves, capacity);
+            capturedMasks = Arrays.copyOf(capturedMasks, capacity);
+            paths = Arrays.copyOf(paths, capacity);
+        }
+        moves[size] = move;
+        capturedMasks[size] = capturedMask;
+        paths[size] = path;
+        size++;
+    }
+
+    public int get(int index) {
+        return moves[index];
+    }
+
+    public int getCapturedMask(int index) {
+        return capturedMasks[index];
+    }
+
+    public long getPath(int index) {
+        return paths[index];
+    }
+
+    /**
+     * Liczba pionków zbitych przez ruch o podanym indeksie.
+     */
+    public int getCaptureCount(int index) {
+        return Integer.bitCount(capturedMasks[index]);
+    }
+
+    /**
+     * Przepisuje ruch z pozycji {@code source} na pozycję {@code target} (do filtrowania listy w miejscu).
+     */
+    void copyEntry(int source, int target) {
+        moves[target] = moves[source];
+        capturedMasks[target] = capturedMasks[source];
+        paths[target] = paths[source];
+    }
+
+    /**
+     * Zamienia miejscami dwa ruchy listy (np. przy porządkowaniu ruchów w przeszukiwaniu).
+     */
+    public void swap(int i, int j) {
+        int move = moves[i];
+        moves[i] = moves[j];
+        moves[j] = move;
+        int captured = capturedMasks[i];
+        capturedMasks[i] = capturedMasks[j];
+        capturedMasks[j] = captured;
+        long path = paths[i];
+        paths[i] = paths[j];
+        paths[j] = path;
+    }
+
+    /**
+     * Skraca listę do podanej długości.
+     */
+    void truncate(int newSize) {
+        size = Math.min(size, newSize);
+    }
+
+    /**
+     * Zwraca indeks pierwszego ruchu z pola {@code fromSquare} na pole {@code toSquare} lub -1.
+     */
+    public int indexOf(int fromSquare, int toSquare) {
+        for (int i = 0; i < size; i++) {
+            if (PackedMove.from(moves[i]) == fromSquare && PackedMove.to(moves[i]) == toSquare) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tworzy obiekt {@link Move} dla ruchu o podanym indeksie (sekwencja bić dostaje pełną drogę).
+     */
+    public Move toMove(int index) {
+        int move = moves[index];
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        if (!PackedMove.isSequence(move)) {
+            return new Move(Bitboards.rowOf(from), Bitboards.colOf(from), Bitboards.rowOf(to), Bitboards.colOf(to),
+                    PackedMove.isJump(move));
+        }
+        int hops = Integer.bitCount(capturedMasks[index]);
+        int[] path = new int[hops + 1];
+        path[0] = from;
+        for (int i = 0; i < hops; i++) {
+            path[i + 1] = (int) (paths[index] >>> (5 * i)) & 0x1F;
+        }
+        return new Move(path, capturedMasks[index]);
+    }
+
+    public List<Move> toMoveList() {
+        List<Move> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(toMove(i));
+        }
+        return list;
+    }
+}
@@ -2,10 +2,15 @@ package warcaby.gamelogic.boardcomponents;
 
 /**
  * Reprezentuje pojedynczy ruch na planszy.
+ * Może to być zwykły ruch, pojedynczy skok albo cała sekwencja bić wykonywana jednym pionkiem
+ * (ruch złożony): wtedy {@link #path} zawiera kolejne pola sekwencji, a {@link #capturedMask}
+ * maskę wszystkich zbitych pionków. Pola from/to ruchu złożonego to początek i koniec sekwencji.
  */
 public class Move {
     public int fromRow, fromCol, toRow, toCol;
     public boolean isJump; // Określa, czy ruch jest biciem
+    public int[] path;        // Indeksy pól sekwencji bić (z polem startowym) lub null dla ruchu jednoetapowego
+    public int capturedMask;  // Maska pól zbitych pionków (tylko dla sekwencji bić)
 
     public Move(int fromRow, int fromCol, int toRow, int toCol, boolean isJump) {
         this.fromRow = fromRow;
@@ -14,4 +19,71 @@ public class Move {
         this.toCol = toCol;
         this.isJump = isJump;
     }
-}
\ No newline at end of file
+
+    /**
+     * Tworzy ruch złożony z całej sekwencji bić.
+     * @param path Indeksy kolejnych pól (patrz {@link Bitboards}), łącznie z polem startowym.
+     * @param capturedMask Maska pól wszystkich zbitych w sekwencji pionków.
+     */
+    public Move(int[] path, int capturedMask) {
+        this(Bitboards.rowOf(path[0]), Bitboards.colOf(path[0]),
+                Bitboards.rowOf(path[path.length - 1]), Bitboards.colOf(path[path.length - 1]), true);
+        this.path = path;
+        this.capturedMask = capturedMask;
+    }
+
+    public boolean isCaptureSequence() {
+        return path != null;
+    }
+
+    /**
+     * Zwraca liczbę pionków zbitych przez ten ruch.
+     */
+    public int getCaptureCount() {
+        if (path != null) return Integer.bitCount(capturedMask);
+        return isJump ? 1 : 0;
+    }
+
+    /**
+     * Zwraca liczbę skoków (etapów) ruchu; dla ruchu jednoetapowego 1.
+     */
+    public int getHopCount() {
+        return (path != null) ? path.length - 1 : 1;
+    }
+
+    /**
+     * Zwraca pojedynczy etap ruchu jako ruch jednoetapowy (np. do wykonania przez Board.makeMove(int, int, int, int)).
+     */
+    public Move getHop(int index) {
+        if (path == null) return this;
+        int from = path[index];
+        int to = path[index + 1];
+        return new Move(Bitboards.rowOf(from), Bitboards.colOf(from), Bitboards.rowOf(to), Bitboards.colOf(to), true);
+    }
+
+    /**
+     * Sprawdza, czy ruch opisuje tę samą drogę pionka co inny ruch.
+     */
+    public boolean hasSamePath(Move other) {
+        if (other == null) return false;
+        if (path != null || other.path != null) {
+            return java.util.Arrays.equals(path, other.path);
+        }
+        return fromRow == other.fromRow && fromCol == other.fromCol && toRow == other.toRow && toCol == other.toCol;
+    }
+
+    /**
+     * Zapis ruchu w notacji pól 1-32, np. "22-18" albo "15x22x31".
+     */
+    @Override
+    public String toString() {
+        if (path == null) {
+            return PositionFormat.moveName(this);
+        }
+        StringBuilder sb = new StringBuilder(PositionFormat.squareName(path[0]));
+        for (int i = 1; i < path.length; i++) {
+            sb.append('x').append(PositionFormat.squareName(path[i]));
+        }
+        return sb.toString();
+    }
+}
@@ -1,15 +1,22 @@
 package warcaby.gamelogic.boardcomponents;
 
-import warcaby.gamelogic.Piece;
-import warcaby.gamelogic.PieceType;
 import warcaby.gamelogic.PlayerColor;
 import warcaby.utils.Logger;
 
+import java.util.Arrays;
+
 public class MoveExecutor {
+    // Wpis stosu cofania: {from | to << 5 | promocja << 10 | białe << 11, maska zbitych, maska zbitych damek,
+    // stan tury: czarne na ruchu | kontynuacja << 1 | (pole kontynuacji + 1) << 2 | białe << 8 | czarne << 16}
+    private static final int UNDO_STRIDE = 4;
+
     private BoardState boardState;
     private TurnManager turnManager;
     private MoveLogic moveLogic;
     private static final Logger logger = new Logger(MoveExecutor.class);
+    private int[] undoStack = new int[64 * UNDO_STRIDE];
+    private int undoSize = 0;
+    private int positionVersion = 0; // Zwiększany przy każdej zmianie pozycji (unieważnia zapamiętane listy ruchów)
 
     public MoveExecutor(BoardState boardState, TurnManager turnManager, MoveLogic moveLogic) {
         this.boardState = boardState;
@@ -30,48 +37,43 @@ public class MoveExecutor {
      *         false, jeśli tura przechodzi na drugiego gracza.
      */
     public boolean executeValidatedMove(int fromRow, int fromCol, int toRow, int toCol) {
-        Piece movingPiece = boardState.getPiece(fromRow, fromCol);
+        int fromSquare = Bitboards.toSquare(fromRow, fromCol);
+        int toSquare = Bitboards.toSquare(toRow, toCol);
+        PlayerColor moverColor = (fromSquare < 0) ? null : boardState.getColorAt(fromSquare);
 
-        if (movingPiece == null) {
+        if (moverColor == null || toSquare < 0) {
             // Ten warunek nie powinien być nigdy spełniony, jeśli walidacja w Board.makeMove działa poprawnie.
-            logger.error("MoveExecutor: Próba wykonania ruchu nieistniejącym pionkiem z (" + fromRow + "," + fromCol + ")");
+            logger.error("MoveExecutor: Próba wykonania ruchu nieistniejącym pionkiem z (" + fromRow + "," + fromCol + ") lub na nieprawidłowe pole (" + toRow + "," + toCol + ")");
             // Zwrócenie false może spowodować przełączenie tury, co może być niepożądane, jeśli to błąd systemowy.
             // Można rozważyć rzucenie wyjątku RuntimeException.
             return false;
         }
-        // logger.debug("MoveExecutor: Wykonywanie ruchu dla " + movingPiece + " z ("+fromRow+","+fromCol+") do ("+toRow+","+toCol+")");
+        boolean wasKing = boardState.isKingAt(fromSquare);
+        positionVersion++;
 
-        // Krok 1: Zidentyfikuj, czy to jest bicie i gdzie jest bity pionek
-        // Metoda getCapturedPieceCoordinatesIfValidJump z MoveLogic powinna poprawnie
-        // identyfikować bity pionek dla krótkich i długich bić.
-        int[] capturedCoords = moveLogic.getCapturedPieceCoordinatesIfValidJump(movingPiece, fromRow, fromCol, toRow, toCol);
-        boolean isThisMoveAJump = (capturedCoords != null);
+        // Krok 1: Zidentyfikuj, czy to jest bicie i gdzie jest bity pionek (krótkie i długie bicia)
+        int capturedSquare = moveLogic.getCapturedSquareIfValidJump(moverColor, wasKing, fromRow, fromCol, toRow, toCol);
+        boolean isThisMoveAJump = (capturedSquare >= 0);
 
         // Krok 2: Przesuń pionka wykonującego ruch na planszy
-        boardState.setPiece(toRow, toCol, movingPiece); // Umieść pionka na nowym miejscu
-        boardState.setPiece(fromRow, fromCol, null);   // Usuń pionka ze starego miejsca
+        boardState.movePiece(fromSquare, toSquare);
 
         // Krok 3: Jeśli to było bicie, usuń zbitego pionka
         if (isThisMoveAJump) {
-            int jumpedRow = capturedCoords[0]; // Koordynaty faktycznie bitego pionka
-            int jumpedCol = capturedCoords[1];
-
-            Piece pieceBeingJumped = boardState.getPiece(jumpedRow, jumpedCol); // Powinien tu być pionek przeciwnika
+            PlayerColor capturedColor = boardState.getColorAt(capturedSquare); // Powinien tu być pionek przeciwnika
 
-            if (pieceBeingJumped != null && pieceBeingJumped.getColor() != movingPiece.getColor()) {
-                logger.info("MoveExecutor: Bicie pionka " + pieceBeingJumped + " na ("+jumpedRow+","+jumpedCol+")");
-                if (pieceBeingJumped.getColor() == PlayerColor.WHITE) {
+            if (capturedColor != null && capturedColor != moverColor) {
+                logger.info("MoveExecutor: Bicie pionka " + capturedColor + " na (" + Bitboards.rowOf(capturedSquare) + "," + Bitboards.colOf(capturedSquare) + ")");
+                if (capturedColor == PlayerColor.WHITE) {
                     boardState.decrementWhitePieces();
                 } else {
                     boardState.decrementBlackPieces();
                 }
-                boardState.setPiece(jumpedRow, jumpedCol, null); // Usuń zbitego pionka z planszy
+                boardState.removePiece(capturedSquare); // Usuń zbitego pionka z planszy
             } else {
-                // Ten scenariusz wskazuje na poważny błąd w logice walidacji bicia (isJump lub getCapturedPieceCoordinatesIfValidJump)
+                // Ten scenariusz wskazuje na poważny błąd w logice walidacji bicia
                 // lub na nieoczekiwaną zmianę stanu planszy między walidacją a wykonaniem.
-                logger.error("MoveExecutor: KRYTYCZNY BŁĄD! Ruch oznaczony jako bicie, ale na polu ("+jumpedRow+","+jumpedCol+") nie ma pionka przeciwnika do usunięcia. Znaleziono: " + pieceBeingJumped);
-                // W tej sytuacji gra może być w niespójnym stanie.
-                // Można by rzucić wyjątek, aby zatrzymać dalsze przetwarzanie.
+                logger.error("MoveExecutor: KRYTYCZNY BŁĄD! Ruch oznaczony jako bicie, ale na polu (" + Bitboards.rowOf(capturedSquare) + "," + Bitboards.colOf(capturedSquare) + ") nie ma pionka przeciwnika do usunięcia. Znaleziono: " + capturedColor);
             }
             turnManager.setJumpMadeThisTurn(true);
             turnManager.setLastJumpingPiece(toRow, toCol); // Zapamiętaj pozycję pionka, który właśnie skoczył
@@ -80,20 +82,18 @@ public class MoveExecutor {
         }
 
         // Krok 4: Promocja na damkę
-        if (movingPiece.getType() == PieceType.MAN) {
-            if (movingPiece.getColor() == PlayerColor.WHITE && toRow == 0) {
-                movingPiece.promoteToKing();
-                logger.debug("MoveExecutor: Biały pionek promowany na damkę na ("+toRow+","+toCol+")");
-            } else if (movingPiece.getColor() == PlayerColor.BLACK && toRow == BoardState.SIZE - 1) {
-                movingPiece.promoteToKing();
-                logger.debug("MoveExecutor: Czarny pionek promowany na damkę na ("+toRow+","+toCol+")");
+        if (!wasKing) {
+            int promotionRow = (moverColor == PlayerColor.WHITE) ? Bitboards.ROW_0 : Bitboards.ROW_7;
+            if ((promotionRow & Bitboards.bit(toSquare)) != 0) {
+                boardState.promoteToKing(toSquare);
+                logger.debug("MoveExecutor: Pionek " + moverColor + " promowany na damkę na (" + toRow + "," + toCol + ")");
             }
         }
 
         // Krok 5: Sprawdzenie możliwości kontynuacji bicia i decyzja o zmianie tury
-        if (isThisMoveAJump && moveLogic.canPieceMakeAnyJump(movingPiece, toRow, toCol)) {
+        if (isThisMoveAJump && moveLogic.canJumpFrom(toSquare, moverColor, boardState.isKingAt(toSquare))) {
             // Pionek właśnie wykonał bicie i MOŻE wykonać kolejne bicie z nowej pozycji
-            logger.debug("MoveExecutor: Gracz " + turnManager.getCurrentPlayer() + " kontynuuje bicie pionkiem na ("+toRow+","+toCol+")");
+            logger.debug("MoveExecutor: Gracz " + turnManager.getCurrentPlayer() + " kontynuuje bicie pionkiem na (" + toRow + "," + toCol + ")");
             return true; // Sygnalizuje, że gracz musi kontynuować, tura się NIE zmienia
         } else {
             // Ruch zakończony (był to zwykły ruch lub ostatnie bicie w sekwencji)
@@ -102,4 +102,204 @@ public class MoveExecutor {
             return false; // Sygnalizuje, że tura się zmieniła
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Odwracalnie wykonuje ruch, który został już zwalidowany jako poprawny (lub pochodzi z generatora ruchów).
+     * Działa jak {@link #executeValidatedMove}, ale bez logowania, a wszystko, co potrzebne do cofnięcia
+     * ruchu (zbity pionek, promocja, liczniki pionków, stan kontynuacji bicia), zapisuje na stosie liczb
+     * całkowitych. Przeznaczone dla przeszukiwania drzewa gry, które nie może kopiować planszy w każdym węźle.
+     * Ruch złożony (cała sekwencja bić, {@link Move#isCaptureSequence()}) jest wykonywany jako jeden wpis
+     * na stosie i zawsze kończy turę.
+     *
+     * @param move Ruch do wykonania.
+     * @return true, jeśli gracz kontynuuje bicie tym samym pionkiem, false, jeśli tura przeszła na przeciwnika.
+     */
+    public boolean make(Move move) {
+        int fromSquare = Bitboards.toSquare(move.fromRow, move.fromCol);
+        int toSquare = Bitboards.toSquare(move.toRow, move.toCol);
+        if (move.path != null) {
+            fromSquare = move.path[0];
+            toSquare = move.path[move.path.length - 1];
+            boolean white = (boardState.getWhiteMask() & Bitboards.bit(fromSquare)) != 0;
+            int promotionRow = white ? Bitboards.ROW_0 : Bitboards.ROW_7;
+            boolean promoted = false;
+            for (int i = 1; i < move.path.length && !promoted; i++) {
+                promoted = (promotionRow & Bitboards.bit(move.path[i])) != 0;
+            }
+            return make(PackedMove.encodeSequence(fromSquare, toSquare, promoted && !boardState.isKingAt(fromSquare)),
+                    move.capturedMask);
+        }
+        boolean white = (boardState.getWhiteMask() & Bitboards.bit(fromSquare)) != 0;
+        int capturedSquare = moveLogic.getCapturedSquareIfValidJump(white ? PlayerColor.WHITE : PlayerColor.BLACK,
+                boardState.isKingAt(fromSquare), move.fromRow, move.fromCol, move.toRow, move.toCol);
+        return make(PackedMove.encode(fromSquare, toSquare, capturedSquare, false), 0);
+    }
+
+    /**
+     * Wersja {@link #make(Move)} dla ruchu zapisanego jako {@link PackedMove}, bez tworzenia obiektów.
+     * Pole zbitego pionka pojedynczego skoku jest odczytywane z zapisu ruchu (bez przeszukiwania przekątnej).
+     *
+     * @param move Ruch w zapisie {@link PackedMove}.
+     * @param capturedMask Maska zbitych pionków; używana tylko dla sekwencji bić ({@link PackedMove#SEQUENCE}).
+     * @return true, jeśli gracz kontynuuje bicie tym samym pionkiem, false, jeśli tura przeszła na przeciwnika.
+     */
+    public boolean make(int move, int capturedMask) {
+        positionVersion++;
+        if (PackedMove.isSequence(move)) {
+            makeSequence(PackedMove.from(move), PackedMove.to(move), capturedMask, PackedMove.isPromotion(move));
+            return false;
+        }
+        return makeHop(PackedMove.from(move), PackedMove.to(move), PackedMove.capturedSquare(move));
+    }
+
+    /**
+     * Wykonuje zwykły ruch albo pojedynczy skok i ustawia stan kontynuacji bicia.
+     */
+    private boolean makeHop(int fromSquare, int toSquare, int capturedSquare) {
+        boolean white = (boardState.getWhiteMask() & Bitboards.bit(fromSquare)) != 0;
+        PlayerColor moverColor = white ? PlayerColor.WHITE : PlayerColor.BLACK;
+        boolean wasKing = boardState.isKingAt(fromSquare);
+        int capturedMask = (capturedSquare >= 0) ? Bitboards.bit(capturedSquare) : 0;
+
+        int base = pushUndoEntry();
+        undoStack[base + 1] = capturedMask;
+        undoStack[base + 2] = capturedMask & boardState.getKingsMask();
+        undoStack[base + 3] = packTurnState();
+
+        boardState.movePiece(fromSquare, toSquare);
+        if (capturedMask != 0) {
+            boardState.removePiece(capturedSquare);
+            if (white) boardState.decrementBlackPieces(); else boardState.decrementWhitePieces();
+        }
+        boolean promoted = !wasKing && ((white ? Bitboards.ROW_0 : Bitboards.ROW_7) & Bitboards.bit(toSquare)) != 0;
+        if (promoted) {
+            boardState.promoteToKing(toSquare);
+        }
+        undoStack[base] = fromSquare | (toSquare << 5) | (promoted ? 1 << 10 : 0) | (white ? 1 << 11 : 0);
+
+        if (capturedMask != 0 && moveLogic.canJumpFrom(toSquare, moverColor, wasKing || promoted)) {
+            turnManager.restore(moverColor, true, Bitboards.rowOf(toSquare), Bitboards.colOf(toSquare));
+            return true;
+        }
+        turnManager.restore(MoveLogic.opponentOf(moverColor), false, -1, -1);
+        return false;
+    }
+
+    /**
+     * Wykonuje całą sekwencję bić naraz: zdejmuje wszystkie zbite pionki, przenosi pionka na pole
+     * końcowe i promuje go, jeśli po drodze stanął na ostatnim wierszu.
+     */
+    private void makeSequence(int fromSquare, int toSquare, int captured, boolean promoted) {
+        boolean white = (boardState.getWhiteMask() & Bitboards.bit(fromSquare)) != 0;
+
+        int base = pushUndoEntry();
+        undoStack[base + 1] = captured;
+        undoStack[base + 2] = captured & boardState.getKingsMask();
+        undoStack[base + 3] = packTurnState();
+
+        // Zbite pionki znikają przed przestawieniem, bo damka może skończyć na polu zbitego wcześniej pionka
+        for (int rest = captured; rest != 0; rest &= rest - 1) {
+            boardState.removePiece(Integer.numberOfTrailingZeros(rest));
+        }
+        boardState.movePiece(fromSquare, toSquare);
+        int capturedCount = Integer.bitCount(captured);
+        if (white) {
+            boardState.setPiecesCounts(boardState.getWhitePiecesCount(), boardState.getBlackPiecesCount() - capturedCount);
+        } else {
+            boardState.setPiecesCounts(boardState.getWhitePiecesCount() - capturedCount, boardState.getBlackPiecesCount());
+        }
+        if (promoted) {
+            boardState.promoteToKing(toSquare);
+        }
+        undoStack[base] = fromSquare | (toSquare << 5) | (promoted ? 1 << 10 : 0) | (white ? 1 << 11 : 0);
+        turnManager.restore(white ? PlayerColor.BLACK : PlayerColor.WHITE, false, -1, -1);
+    }
+
+    /**
+     * Cofa ostatni ruch wykonany przez {@link #make(Move)}, przywracając planszę, liczniki,
+     * klucz Zobrista i stan tury dokładnie do stanu sprzed ruchu.
+     * @throws IllegalStateException jeśli stos cofania jest pusty.
+     */
+    public void unmake() {
+        if (undoSize == 0) {
+            throw new IllegalStateException("MoveExecutor: Brak ruchu do cofnięcia.");
+        }
+        positionVersion++;
+        int base = (--undoSize) * UNDO_STRIDE;
+        int moveInfo = undoStack[base];
+        int fromSquare = moveInfo & 0x1F;
+        int toSquare = (moveInfo >>> 5) & 0x1F;
+        boolean moverWhite = (moveInfo & (1 << 11)) != 0;
+
+        if ((moveInfo & (1 << 10)) != 0) {
+            boardState.demoteToMan(toSquare);
+        }
+        boardState.movePiece(toSquare, fromSquare);
+
+        int captured = undoStack[base + 1];
+        int capturedKings = undoStack[base + 2];
+        while (captured != 0) {
+            int square = Integer.numberOfTrailingZeros(captured);
+            captured &= captured - 1;
+            boardState.addPiece(square, !moverWhite, (capturedKings & Bitboards.bit(square)) != 0);
+        }
+
+        int turnState = undoStack[base + 3];
+        boardState.setPiecesCounts((turnState >>> 8) & 0xFF, (turnState >>> 16) & 0xFF);
+        int lastSquare = ((turnState >>> 2) & 0x3F) - 1;
+        turnManager.restore((turnState & 1) != 0 ? PlayerColor.BLACK : PlayerColor.WHITE,
+                (turnState & 2) != 0,
+                lastSquare >= 0 ? Bitboards.rowOf(lastSquare) : -1,
+                lastSquare >= 0 ? Bitboards.colOf(lastSquare) : -1);
+    }
+
+    /**
+     * Zwraca numer wersji pozycji, zmieniany przez każde wykonanie i cofnięcie ruchu.
+     * Pozwala zapamiętać wynik generowania ruchów do czasu kolejnej zmiany planszy.
+     */
+    public int getPositionVersion() {
+        return positionVersion;
+    }
+
+    /**
+     * Oznacza pozycję jako zmienioną z zewnątrz (np. po ustawieniu nowej partii).
+     */
+    public void invalidatePosition() {
+        positionVersion++;
+    }
+
+    /**
+     * Zwraca liczbę ruchów na stosie cofania.
+     */
+    public int getUndoDepth() {
+        return undoSize;
+    }
+
+    /**
+     * Czyści stos cofania (np. po wczytaniu nowej pozycji).
+     */
+    public void clearUndoHistory() {
+        undoSize = 0;
+    }
+
+    private int pushUndoEntry() {
+        int base = undoSize * UNDO_STRIDE;
+        if (base + UNDO_STRIDE > undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+        }
+        undoSize++;
+        return base;
+    }
+
+    private int packTurnState() {
+        int lastSquare = -1;
+        if (turnManager.isJumpMadeThisTurn()) {
+            lastSquare = Bitboards.toSquare(turnManager.getLastJumpingPieceRow(), turnManager.getLastJumpingPieceCol());
+        }
+        return (turnManager.getCurrentPlayer() == PlayerColor.BLACK ? 1 : 0)
+                | (turnManager.isJumpMadeThisTurn() ? 2 : 0)
+                | ((lastSquare + 1) << 2)
+                | (boardState.getWhitePiecesCount() << 8)
+                | (boardState.getBlackPiecesCount() << 16);
+    }
+}
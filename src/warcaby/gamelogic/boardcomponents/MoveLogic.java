@@ -3,23 +3,42 @@ package warcaby.gamelogic.boardcomponents;
 import warcaby.gamelogic.Piece;
 import warcaby.gamelogic.PieceType;
 import warcaby.gamelogic.PlayerColor;
+import warcaby.utils.GameConstants;
 import warcaby.utils.Logger;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Klasa MoveLogic zawiera główną logikę dotyczącą ruchów i bić w grze w warcaby.
  * Odpowiada za walidację ruchów, generowanie możliwych ruchów (w tym bić)
  * dla pionków i damek, uwzględniając zasady takie jak obowiązkowe bicie
  * oraz specyfikę długich bić damek.
+ * Generowanie działa na maskach bitowych z {@link BoardState}: ruchy i bicia zwykłych
+ * pionków wyznaczane są przesunięciami całych masek, a ruchy i bicia damek odczytywane są
+ * z tablic promieni ({@link Bitboards#ray}) po znalezieniu pierwszej przeszkody na przekątnej.
+ * Przy włączonej regule bicia maksymalnego ({@link GameConstants#MAXIMUM_CAPTURE_RULE}) dozwolone są
+ * tylko skoki leżące na sekwencji zbijającej najwięcej pionków.
  */
 public class MoveLogic {
     private BoardState boardState; // Referencja do aktualnego stanu planszy
     private TurnManager turnManager; // Referencja do managera tury (kto gra, czy jest kontynuacja bicia)
     private MoveValidator moveValidator; // Pomocniczy walidator dla prostszych sprawdzeń
     private static final Logger logger = new Logger(MoveLogic.class); // Logger dla tej klasy
+    private final IntMoveList scratchMoves = new IntMoveList(); // Lista robocza dla metod zwracających List<Move>
+    private long[] emittedSequences = new long[16]; // Klucze sekwencji już dodanych dla bieżącego pionka
+    private int emittedSequenceCount;
+    private boolean allRoutes; // Czy zwracać każdą drogę sekwencji osobno (patrz generateCompleteMoveRoutes)
+
+    // Reguła bicia maksymalnego i pamięć wyników przeszukiwania drzewa bić (ważna w obrębie jednego zapytania)
+    private static final int CAPTURE_MEMO_SIZE = 1 << 10;
+    private static final int CAPTURE_MEMO_PROBES = 8;
+    private boolean maximumCaptureRule = GameConstants.MAXIMUM_CAPTURE_RULE;
+    private final long[] captureMemoKeys = new long[CAPTURE_MEMO_SIZE];
+    private final int[] captureMemoValues = new int[CAPTURE_MEMO_SIZE];
+    private final int[] captureMemoStamps = new int[CAPTURE_MEMO_SIZE];
+    private int captureMemoGeneration = 0;
+    private int[] captureValues = new int[64]; // Wartości skoków liczone przez keepMaximumCaptures
 
     public MoveLogic(BoardState boardState, TurnManager turnManager) {
         this.boardState = boardState;
@@ -27,6 +46,18 @@ public class MoveLogic {
         this.moveValidator = new MoveValidator(boardState);
     }
 
+    /**
+     * Włącza lub wyłącza regułę bicia maksymalnego (domyślnie {@link GameConstants#MAXIMUM_CAPTURE_RULE}).
+     * @param enabled true, jeśli gracz musi wybrać sekwencję zbijającą najwięcej pionków.
+     */
+    public void setMaximumCaptureRule(boolean enabled) {
+        this.maximumCaptureRule = enabled;
+    }
+
+    public boolean isMaximumCaptureRule() {
+        return maximumCaptureRule;
+    }
+
     /**
      * Identyfikuje koordynaty pionka, który zostałby zbity podczas ruchu
      * z (fromR, fromC) do (toR, toC).
@@ -45,69 +76,44 @@ public class MoveLogic {
      *         lub null jeśli ruch nie jest prawidłowym biciem.
      */
     public int[] getCapturedPieceCoordinatesIfValidJump(Piece movingPiece, int fromR, int fromC, int toR, int toC) {
-        if (movingPiece == null || !boardState.isValidCoordinate(toR, toC) || boardState.getPiece(toR, toC) != null) {
-            return null; // Warunki początkowe: pionek istnieje, pole docelowe jest na planszy i puste
+        if (movingPiece == null) {
+            return null;
         }
-
-        int rowDiff = toR - fromR;
-        int colDiff = toC - fromC;
-
-        // Ruch musi być diagonalny i mieć długość co najmniej 2 (aby przeskoczyć przynajmniej jedno pole)
-        if (Math.abs(rowDiff) != Math.abs(colDiff) || Math.abs(rowDiff) < 2) {
+        int capturedSquare = getCapturedSquareIfValidJump(movingPiece.getColor(), movingPiece.getType() == PieceType.KING, fromR, fromC, toR, toC);
+        if (capturedSquare < 0) {
             return null;
         }
+        return new int[]{Bitboards.rowOf(capturedSquare), Bitboards.colOf(capturedSquare)};
+    }
 
-        int stepR = Integer.signum(rowDiff); // Kierunek ruchu w wierszach (-1, 0, lub 1)
-        int stepC = Integer.signum(colDiff); // Kierunek ruchu w kolumnach (-1, 0, lub 1)
-        int distance = Math.abs(rowDiff);    // Całkowita "długość" ruchu w liczbie kroków po diagonali
-
-        int opponentPiecesOnPath = 0;    // Licznik pionków przeciwnika na ścieżce
-        int[] capturedPieceCoords = null; // Koordynaty znalezionego pionka przeciwnika
+    /**
+     * Wersja {@link #getCapturedPieceCoordinatesIfValidJump} operująca na indeksach pól.
+     * @return Indeks pola zbitego pionka lub -1, jeśli ruch nie jest prawidłowym biciem.
+     */
+    int getCapturedSquareIfValidJump(PlayerColor color, boolean isKing, int fromR, int fromC, int toR, int toC) {
+        int fromSquare = Bitboards.toSquare(fromR, fromC);
+        int toSquare = Bitboards.toSquare(toR, toC);
+        if (fromSquare < 0 || toSquare < 0 || (boardState.getOccupiedMask() & Bitboards.bit(toSquare)) != 0) {
+            return -1; // Pole docelowe musi być ciemnym, pustym polem planszy
+        }
 
-        // Iteruj po wszystkich polach znajdujących się MIĘDZY polem startowym a docelowym
-        for (int i = 1; i < distance; i++) {
-            int currentR = fromR + i * stepR;
-            int currentC = fromC + i * stepC;
+        int rowDiff = toR - fromR;
+        int distance = Math.abs(rowDiff);
+        // Ruch musi być diagonalny i mieć długość co najmniej 2; pionek skacze dokładnie o 2 pola
+        if (distance != Math.abs(toC - fromC) || distance < 2 || (!isKing && distance != 2)) {
+            return -1;
+        }
 
-            Piece pieceOnPath = boardState.getPiece(currentR, currentC);
-            if (pieceOnPath != null) { // Jeśli na sprawdzanym polu jest jakiś pionek
-                if (pieceOnPath.getColor() != movingPiece.getColor()) { // Jeśli to pionek przeciwnika
-                    opponentPiecesOnPath++;
-                    if (opponentPiecesOnPath > 1) return null; // Nie można przeskoczyć więcej niż jednego pionka
-                    capturedPieceCoords = new int[]{currentR, currentC}; // Zapamiętaj koordynaty tego pionka
-                } else { // Jeśli to własny pionek na drodze
-                    return null; // Bicie jest niemożliwe
-                }
-            }
-            // Jeśli pole jest puste:
-            // - Dla damki: jeśli już minęła pionka przeciwnika (opponentPiecesOnPath == 1),
-            //   puste pole jest częścią drogi do lądowania - kontynuuj sprawdzanie.
-            // - Dla pionka MAN: jeśli minął pionka przeciwnika i napotkał puste pole,
-            //   to oznacza, że nie ląduje bezpośrednio za nim (chyba że toR, toC jest tym polem).
-            //   Warunek dla MAN (distance == 2) jest sprawdzany później.
-        }
-
-        // Aby ruch był prawidłowym biciem, na ścieżce musi być dokładnie jeden pionek przeciwnika.
-        if (opponentPiecesOnPath == 1) {
-            // Dla pionka (MAN) istnieje dodatkowe ograniczenie: musi wylądować dokładnie jedno pole
-            // za bitym pionkiem, co oznacza, że całkowita długość ruchu musi wynosić 2.
-            if (movingPiece.getType() == PieceType.MAN) {
-                if (distance == 2) { // Pionek skacze o 2 pola
-                    // Upewnij się, że capturedPieceCoords nie jest null (powinno być, jeśli opponentPiecesOnPath==1)
-                    // i że jest to rzeczywiście pole między startem a końcem.
-                    if (capturedPieceCoords != null && capturedPieceCoords[0] == fromR + stepR && capturedPieceCoords[1] == fromC + stepC) {
-                        return capturedPieceCoords;
-                    } else {
-                        //logger.error("Błąd logiki w getCapturedPieceCoordinatesIfValidJump dla MANA");
-                        return null; // Coś poszło nie tak z identyfikacją bitego pionka
-                    }
-                } else {
-                    return null; // Pionek nie może wykonać "długiego" bicia
-                }
-            }
-            return capturedPieceCoords; // Dla damki, jeśli warunki są spełnione, zwraca koordynaty
+        int own = boardState.getPiecesMask(color);
+        int opponent = boardState.getPiecesMask(opponentOf(color));
+        int direction = Bitboards.direction(rowDiff, toC - fromC);
+        // Pola znajdujące się MIĘDZY polem startowym a docelowym, odczytane z tablicy promieni
+        int path = Bitboards.between(fromSquare, toSquare, direction);
+        int opponentsOnPath = path & opponent;
+        if ((path & own) != 0 || Integer.bitCount(opponentsOnPath) != 1) {
+            return -1; // Własny pionek na drodze albo nie dokładnie jeden pionek przeciwnika do przeskoczenia
         }
-        return null; // Nie znaleziono dokładnie jednego pionka przeciwnika do zbicia lub inne warunki nie spełnione
+        return Integer.numberOfTrailingZeros(opponentsOnPath);
     }
 
     /**
@@ -116,7 +122,7 @@ public class MoveLogic {
      * @return true, jeśli ruch jest prawidłowym biciem.
      */
     public boolean isJump(Piece piece, int fromRow, int fromCol, int toRow, int toCol) {
-        return getCapturedPieceCoordinatesIfValidJump(piece, fromRow, fromCol, toRow, toCol) != null;
+        return piece != null && getCapturedSquareIfValidJump(piece.getColor(), piece.getType() == PieceType.KING, fromRow, fromCol, toRow, toCol) >= 0;
     }
 
     /**
@@ -127,84 +133,54 @@ public class MoveLogic {
      * @return true, jeśli pionek może wykonać przynajmniej jedno bicie.
      */
     public boolean canPieceMakeAnyJump(Piece piece, int r, int c) {
-        if (piece == null) return false;
-        // Generuje wszystkie możliwe bicia dla tego pionka i sprawdza, czy lista nie jest pusta.
-        // To jest bardziej kosztowne, ale pewniejsze niż iterowanie po wszystkich polach planszy.
-        List<Move> potentialJumps = new ArrayList<>();
-        if (piece.getType() == PieceType.MAN) {
-            int[] dR_offsets = {-2, -2, 2, 2};
-            int[] dC_offsets = {-2, 2, -2, 2};
-            for (int i = 0; i < 4; i++) {
-                if (isJump(piece, r, c, r + dR_offsets[i], c + dC_offsets[i])) return true;
+        int square = Bitboards.toSquare(r, c);
+        if (piece == null || square < 0) return false;
+        return canJumpFrom(square, piece.getColor(), piece.getType() == PieceType.KING);
+    }
+
+    /**
+     * Sprawdza, czy pionek danego koloru i typu stojący na polu {@code square} ma jakiekolwiek bicie.
+     */
+    boolean canJumpFrom(int square, PlayerColor color, boolean isKing) {
+        int opponent = boardState.getPiecesMask(opponentOf(color));
+        int empty = boardState.getEmptyMask();
+        int origin = Bitboards.bit(square);
+        for (int direction = 0; direction < 4; direction++) {
+            // Damka dochodzi do pierwszego zajętego pola, pionek sprawdza sąsiada
+            int next = isKing ? firstOccupied(square, direction, empty) : Bitboards.shift(origin, direction);
+            if ((next & opponent) != 0 && (Bitboards.shift(next, direction) & empty) != 0) {
+                return true;
             }
-        } else if (piece.getType() == PieceType.KING) {
-            checkAndAddKingJumpsInDirection(piece, r, c, -1, -1, potentialJumps);
-            if (!potentialJumps.isEmpty()) return true;
-            checkAndAddKingJumpsInDirection(piece, r, c, -1, 1, potentialJumps);
-            if (!potentialJumps.isEmpty()) return true;
-            checkAndAddKingJumpsInDirection(piece, r, c, 1, -1, potentialJumps);
-            if (!potentialJumps.isEmpty()) return true;
-            checkAndAddKingJumpsInDirection(piece, r, c, 1, 1, potentialJumps);
-            if (!potentialJumps.isEmpty()) return true;
         }
         return false;
     }
 
     /**
-     * Pomocnicza metoda do znajdowania i dodawania do listy `jumpsList` wszystkich możliwych
-     * długich bić dla damki (`king`) z pozycji (`startRow`, `startCol`) w określonym
-     * kierunku diagonalnym (`rowDir`, `colDir`).
+     * Dodaje do listy `jumps` wszystkie długie bicia damki z pola `square` w podanym kierunku:
+     * damka przechodzi po pustych polach do pierwszego pionka; jeśli to pionek przeciwnika,
+     * każde puste pole za nim (aż do kolejnej przeszkody) jest możliwym polem lądowania.
      */
-    private void checkAndAddKingJumpsInDirection(Piece king, int startRow, int startCol, int rowDir, int colDir, List<Move> jumpsList) {
-        int opponentPieceR = -1, opponentPieceC = -1;
-        boolean opponentFoundOnPath = false;
-
-        // Krok 1: Znajdź pierwszego pionka na diagonali (pionka do zbicia)
-        for (int k = 1; k < BoardState.SIZE; k++) {
-            int currentR = startRow + k * rowDir;
-            int currentC = startCol + k * colDir;
-
-            if (!boardState.isValidCoordinate(currentR, currentC)) break; // Poza planszą
-
-            Piece pieceOnPath = boardState.getPiece(currentR, currentC);
-            if (pieceOnPath != null) { // Znaleziono jakiś pionek
-                if (pieceOnPath.getColor() != king.getColor()) { // Jeśli to pionek przeciwnika
-                    opponentPieceR = currentR;
-                    opponentPieceC = currentC;
-                    opponentFoundOnPath = true;
-                }
-                // Niezależnie czy swój, czy przeciwnika, to jest pierwszy napotkany,
-                // więc przerywamy szukanie *pionka do zbicia* dalej w tym kierunku.
-                break;
-            }
-            // Jeśli pole jest puste, kontynuuj szukanie pionka do zbicia
+    private void checkAndAddKingJumpsInDirection(int square, int direction, int opponent, int empty, IntMoveList jumps) {
+        int victim = firstOccupied(square, direction, empty);
+        if ((victim & opponent) == 0) {
+            return; // Krawędź planszy albo własny pionek
         }
-
-        // Krok 2: Jeśli znaleziono pionka przeciwnika do zbicia
-        if (opponentFoundOnPath) {
-            // Teraz szukaj wszystkich pustych pól ZA tym pionkiem (na tej samej diagonali) do lądowania
-            for (int m = 1; m < BoardState.SIZE; m++) {
-                int landR = opponentPieceR + m * rowDir; // Ląduj za zbitym pionkiem
-                int landC = opponentPieceC + m * colDir;
-
-                if (!boardState.isValidCoordinate(landR, landC)) break; // Poza planszą
-
-                if (boardState.getPiece(landR, landC) == null) { // Puste pole do lądowania
-                    // isJump zweryfikuje, czy ruch od (startRow,startCol) do (landR,landC)
-                    // jest prawidłowym biciem (przeskakuje tylko TEGO JEDNEGO zidentyfikowanego
-                    // pionka przeciwnika na (opponentPieceR, opponentPieceC), a droga
-                    // między startem a tym bitym pionkiem była pusta).
-                    if (isJump(king, startRow, startCol, landR, landC)) {
-                        jumpsList.add(new Move(startRow, startCol, landR, landC, true));
-                    }
-                } else {
-                    // Napotkano inny pionek za pionkiem do bicia - dalej w tym kierunku lądować nie można.
-                    break;
-                }
-            }
+        int victimSquare = Integer.numberOfTrailingZeros(victim);
+        int landings = Bitboards.emptyRay(victimSquare, direction, ~empty);
+        while (landings != 0) {
+            jumps.add(PackedMove.encode(square, Integer.numberOfTrailingZeros(landings), victimSquare, false));
+            landings &= landings - 1;
         }
     }
 
+    /**
+     * Zwraca bit pierwszego zajętego pola na przekątnej z pola {@code square} (0, jeśli przekątna jest pusta).
+     */
+    private static int firstOccupied(int square, int direction, int empty) {
+        int blocker = Bitboards.firstBlocker(square, direction, ~empty);
+        return (blocker < 0) ? 0 : Bitboards.bit(blocker);
+    }
+
     /**
      * Generuje listę wszystkich możliwych (prawidłowych) bić dla gracza o danym kolorze.
      * Uwzględnia krótkie bicia dla pionków (MAN) i długie bicia dla damek (KING).
@@ -212,36 +188,43 @@ public class MoveLogic {
      * @return Lista obiektów Move reprezentujących wszystkie możliwe bicia.
      */
     public List<Move> getAllPossibleJumpsForPlayer(PlayerColor playerColor) {
-        List<Move> jumps = new ArrayList<>();
-        for (int r = 0; r < BoardState.SIZE; r++) {
-            for (int c = 0; c < BoardState.SIZE; c++) {
-                Piece piece = boardState.getPiece(r, c);
-                if (piece != null && piece.getColor() == playerColor) {
-                    if (piece.getType() == PieceType.MAN) {
-                        // Dla pionka, sprawdzamy tylko 4 kierunki skoku o 2 pola
-                        int[] dR_offsets = {-2, -2, 2, 2};
-                        int[] dC_offsets = {-2, 2, -2, 2};
-                        for (int i = 0; i < 4; i++) {
-                            int toR = r + dR_offsets[i];
-                            int toC = c + dC_offsets[i];
-                            if (isJump(piece, r, c, toR, toC)) {
-                                jumps.add(new Move(r, c, toR, toC, true));
-                            }
-                        }
-                    } else if (piece.getType() == PieceType.KING) {
-                        // Dla damki, używamy dedykowanej logiki do znajdowania długich bić
-                        checkAndAddKingJumpsInDirection(piece, r, c, -1, -1, jumps); // G-L
-                        checkAndAddKingJumpsInDirection(piece, r, c, -1, 1, jumps);  // G-P
-                        checkAndAddKingJumpsInDirection(piece, r, c, 1, -1, jumps);  // D-L
-                        checkAndAddKingJumpsInDirection(piece, r, c, 1, 1, jumps);   // D-P
-                    }
-                }
+        scratchMoves.clear();
+        generateJumps(playerColor, scratchMoves);
+        return scratchMoves.toMoveList();
+    }
+
+    /**
+     * Wersja {@link #getAllPossibleJumpsForPlayer} dopisująca bicia do listy {@link IntMoveList} (bez alokacji).
+     */
+    public void generateJumps(PlayerColor playerColor, IntMoveList jumps) {
+        int own = boardState.getPiecesMask(playerColor);
+        int opponent = boardState.getPiecesMask(opponentOf(playerColor));
+        int empty = boardState.getEmptyMask();
+        int men = own & ~boardState.getKingsMask();
+        int kings = own & boardState.getKingsMask();
+        int promotionRow = (playerColor == PlayerColor.WHITE) ? Bitboards.ROW_0 : Bitboards.ROW_7;
+
+        // Pionki: skok przez sąsiada przeciwnika na puste pole tuż za nim, we wszystkich 4 kierunkach
+        for (int direction = 0; direction < 4; direction++) {
+            int back = Bitboards.opposite(direction);
+            int jumpers = Bitboards.shift(Bitboards.shift(empty, back) & opponent, back) & men;
+            while (jumpers != 0) {
+                int from = Integer.numberOfTrailingZeros(jumpers);
+                jumpers &= jumpers - 1;
+                int victim = Bitboards.shift(Bitboards.bit(from), direction);
+                int to = Bitboards.shift(victim, direction);
+                jumps.add(PackedMove.encode(from, Integer.numberOfTrailingZeros(to),
+                        Integer.numberOfTrailingZeros(victim), (to & promotionRow) != 0));
+            }
+        }
+        // Damki: długie bicia wzdłuż przekątnych
+        while (kings != 0) {
+            int square = Integer.numberOfTrailingZeros(kings);
+            kings &= kings - 1;
+            for (int direction = 0; direction < 4; direction++) {
+                checkAndAddKingJumpsInDirection(square, direction, opponent, empty, jumps);
             }
         }
-        // Teoretycznie, jeśli logika jest poprawna, duplikaty nie powinny powstawać.
-        // Jeśli jednak by powstały (np. przez różne ścieżki prowadzące do tego samego bicia),
-        // można by je tu odfiltrować, ale wymagałoby to implementacji equals/hashCode w Move.
-        return jumps;
     }
 
     /**
@@ -260,68 +243,79 @@ public class MoveLogic {
      * @return `true`, jeśli ruch jest poprawny, `false` w przeciwnym razie.
      */
     public boolean isValidMoveInternal(int fromRow, int fromCol, int toRow, int toCol, boolean checkingSpecificJump) {
-        if (!boardState.isValidCoordinate(fromRow, fromCol) || !boardState.isValidCoordinate(toRow, toCol)) return false;
-        if (boardState.getPiece(toRow, toCol) != null) return false; // Pole docelowe musi być puste
+        int fromSquare = Bitboards.toSquare(fromRow, fromCol);
+        int toSquare = Bitboards.toSquare(toRow, toCol);
+        if (fromSquare < 0 || toSquare < 0) return false;
+        if ((boardState.getOccupiedMask() & Bitboards.bit(toSquare)) != 0) return false; // Pole docelowe musi być puste
 
-        Piece piece = boardState.getPiece(fromRow, fromCol);
+        PlayerColor currentPlayer = turnManager.getCurrentPlayer();
         // Pionek musi istnieć i należeć do aktualnego gracza
-        if (piece == null || piece.getColor() != turnManager.getCurrentPlayer()) return false;
+        if (boardState.getColorAt(fromSquare) != currentPlayer) return false;
+        boolean isKing = boardState.isKingAt(fromSquare);
 
-        boolean isAttemptedMoveAJump = isJump(piece, fromRow, fromCol, toRow, toCol);
+        boolean isAttemptedMoveAJump = getCapturedSquareIfValidJump(currentPlayer, isKing, fromRow, fromCol, toRow, toCol) >= 0;
 
         // Sprawdzanie reguł obowiązkowego bicia i kontynuacji,
         // tylko jeśli nie sprawdzamy poprawności pojedynczego, konkretnego skoku z listy.
         if (!checkingSpecificJump) {
-            List<Move> allPossibleJumpsForCurrentPlayer = getAllPossibleJumpsForPlayer(turnManager.getCurrentPlayer());
-            boolean mandatoryJumpExistsForPlayer = !allPossibleJumpsForCurrentPlayer.isEmpty();
-
             if (turnManager.isJumpMadeThisTurn()) { // Jeśli gracz jest w trakcie wielokrotnego bicia
                 if (fromRow != turnManager.getLastJumpingPieceRow() || fromCol != turnManager.getLastJumpingPieceCol()) return false; // Musi użyć tego samego pionka
                 if (!isAttemptedMoveAJump) return false; // Następny ruch musi być biciem
-            } else if (mandatoryJumpExistsForPlayer) { // Jeśli jest obowiązkowe bicie na planszy
-                if (!isAttemptedMoveAJump) return false; // Próbowany ruch musi być biciem
-                // Dodatkowo, sprawdź, czy to próbowane bicie jest jednym z dostępnych obowiązkowych bić
-                boolean isThisSpecificJumpValid = allPossibleJumpsForCurrentPlayer.stream()
-                        .anyMatch(jump -> jump.fromRow == fromRow && jump.fromCol == fromCol && jump.toRow == toRow && jump.toCol == toCol);
-                if (!isThisSpecificJumpValid) return false; // To nie jest jedno z obowiązkowych bić
-            }
-            // Jeśli nie ma `jumpMadeThisTurn` i nie ma `mandatoryJumpExistsForPlayer`,
-            // to próbowany ruch może być zwykłym ruchem (jeśli `isAttemptedMoveAJump` jest false).
-        }
-
-        // Logika specyficzna dla typu pionka
-        if (piece.getType() == PieceType.MAN) {
-            int rowDiff = toRow - fromRow;
-            int colDiffAbs = Math.abs(toCol - fromCol);
-            if (isAttemptedMoveAJump) {
-                // isJump już zweryfikowało poprawność bicia (w tym odległość 2 dla MANa)
-                return Math.abs(rowDiff) == 2 && colDiffAbs == 2;
-            } else { // Zwykły ruch pionka
-                int expectedForwardStep = (piece.getColor() == PlayerColor.WHITE) ? -1 : 1;
-                return rowDiff == expectedForwardStep && colDiffAbs == 1;
+            } else if (!isAttemptedMoveAJump && hasAnyJump(currentPlayer)) {
+                return false; // Jest obowiązkowe bicie na planszy, a próbowany ruch nim nie jest
             }
-        } else if (piece.getType() == PieceType.KING) {
-            int rowDiff = toRow - fromRow;
-            int colDiff = toCol - fromCol;
-            if (Math.abs(rowDiff) != Math.abs(colDiff)) return false; // Ruch damki musi być diagonalny
-
-            if (isAttemptedMoveAJump) {
-                return true; // isJump już zweryfikowało poprawność długiego bicia dla damki
-            } else { // Zwykły ruch damki (nie bicie)
-                int stepRow = Integer.signum(rowDiff);
-                int stepCol = Integer.signum(colDiff);
-                // Sprawdź, czy wszystkie pola na ścieżce są puste
-                for (int i = 1; i < Math.abs(rowDiff); i++) {
-                    if (boardState.getPiece(fromRow + i * stepRow, fromCol + i * stepCol) != null) {
-                        return false; // Ścieżka jest zablokowana
-                    }
+            // Każde poprawne bicie jest jednym z dostępnych bić gracza; przy regule bicia maksymalnego
+            // musi jeszcze leżeć na sekwencji zbijającej najwięcej pionków.
+            if (isAttemptedMoveAJump && maximumCaptureRule) {
+                scratchMoves.clear();
+                generateJumpCandidates(currentPlayer, scratchMoves);
+                keepMaximumCaptures(scratchMoves, currentPlayer);
+                if (scratchMoves.indexOf(fromSquare, toSquare) < 0) {
+                    return false;
                 }
-                return true; // Ścieżka czysta
             }
         }
-        return false; // Domyślnie ruch jest nieprawidłowy
+
+        if (isAttemptedMoveAJump) {
+            return true; // Poprawność bicia (w tym odległość 2 dla pionka) sprawdziło getCapturedSquareIfValidJump
+        }
+
+        int rowDiff = toRow - fromRow;
+        int colDiff = toCol - fromCol;
+        if (!isKing) { // Zwykły ruch pionka
+            int expectedForwardStep = (currentPlayer == PlayerColor.WHITE) ? -1 : 1;
+            return rowDiff == expectedForwardStep && Math.abs(colDiff) == 1;
+        }
+        // Zwykły ruch damki: diagonalny, po pustych polach
+        if (Math.abs(rowDiff) != Math.abs(colDiff)) return false;
+        int direction = Bitboards.direction(rowDiff, colDiff);
+        return (Bitboards.between(fromSquare, toSquare, direction) & boardState.getOccupiedMask()) == 0; // Ścieżka nie może być zablokowana
     }
 
+    /**
+     * Sprawdza bez tworzenia listy ruchów, czy gracz ma jakiekolwiek bicie.
+     */
+    boolean hasAnyJump(PlayerColor playerColor) {
+        int own = boardState.getPiecesMask(playerColor);
+        int opponent = boardState.getPiecesMask(opponentOf(playerColor));
+        int empty = boardState.getEmptyMask();
+        int men = own & ~boardState.getKingsMask();
+        for (int direction = 0; direction < 4; direction++) {
+            int back = Bitboards.opposite(direction);
+            if ((Bitboards.shift(Bitboards.shift(empty, back) & opponent, back) & men) != 0) {
+                return true;
+            }
+        }
+        int kings = own & boardState.getKingsMask();
+        while (kings != 0) {
+            int square = Integer.numberOfTrailingZeros(kings);
+            kings &= kings - 1;
+            if (canJumpFrom(square, playerColor, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
     /**
      * Generuje listę wszystkich prawidłowych ruchów (bić lub zwykłych ruchów)
@@ -333,64 +327,378 @@ public class MoveLogic {
      * @return Lista obiektów Move reprezentujących wszystkie prawidłowe ruchy.
      */
     public List<Move> getAllValidMovesForPlayer(PlayerColor playerColor) {
-        List<Move> allPossibleJumps = getAllPossibleJumpsForPlayer(playerColor);
-
-        if (!allPossibleJumps.isEmpty()) { // Jeśli są dostępne jakiekolwiek bicia
-            // Jeśli gracz kontynuuje wielokrotne bicie (i to jego tura)
-            if (turnManager.isJumpMadeThisTurn() && playerColor == turnManager.getCurrentPlayer()) {
-                // Zwróć tylko te bicia, które mogą być wykonane przez pionka, który ostatnio skakał
-                return allPossibleJumps.stream()
-                        .filter(jump -> jump.fromRow == turnManager.getLastJumpingPieceRow() &&
-                                jump.fromCol == turnManager.getLastJumpingPieceCol())
-                        .collect(Collectors.toList());
-            }
-            // W przeciwnym razie (początek tury lub nie ma kontynuacji), zwróć wszystkie dostępne bicia
-            return allPossibleJumps;
+        scratchMoves.clear();
+        generateValidMoves(playerColor, scratchMoves);
+        return scratchMoves.toMoveList();
+    }
+
+    /**
+     * Wersja {@link #getAllValidMovesForPlayer} zapisująca ruchy do listy {@link IntMoveList}
+     * (lista jest najpierw czyszczona). Nie alokuje pamięci, więc nadaje się do przeszukiwania drzewa gry.
+     */
+    public void generateValidMoves(PlayerColor playerColor, IntMoveList moves) {
+        moves.clear();
+        generateJumpCandidates(playerColor, moves);
+        if (!moves.isEmpty() || isContinuingCapture(playerColor)) { // Jeśli są dostępne jakiekolwiek bicia
+            keepMaximumCaptures(moves, playerColor);
+            return;
         }
 
         // Jeśli nie ma dostępnych bić, zbierz wszystkie zwykłe (niebędące biciami) ruchy
-        List<Move> simpleMoves = new ArrayList<>();
-        for (int r = 0; r < BoardState.SIZE; r++) {
-            for (int c = 0; c < BoardState.SIZE; c++) {
-                Piece piece = boardState.getPiece(r, c);
-                if (piece != null && piece.getColor() == playerColor) {
-                    // Generowanie zwykłych ruchów dla pionka
-                    if (piece.getType() == PieceType.MAN) {
-                        int forwardStep = (playerColor == PlayerColor.WHITE) ? -1 : 1;
-                        int[] dc = {-1, 1}; // Możliwe zmiany w kolumnie
-                        for (int colOffset : dc) {
-                            int toR = r + forwardStep;
-                            int toC = c + colOffset;
-                            // isValidMoveInternal z false sprawdzi, czy to poprawny zwykły ruch
-                            // (zakładając, że nie ma obowiązkowych bić, co już sprawdziliśmy)
-                            if (isValidMoveInternal(r, c, toR, toC, false)) {
-                                simpleMoves.add(new Move(r, c, toR, toC, false));
-                            }
-                        }
-                    } else if (piece.getType() == PieceType.KING) { // Generowanie zwykłych ruchów dla damki
-                        int[] drKing = {-1, -1, 1, 1}; // Kierunki delta dla wierszy
-                        int[] dcKing = {-1, 1, -1, 1}; // Kierunki delta dla kolumn
-                        for (int i = 0; i < 4; i++) { // Dla każdego z 4 kierunków diagonalnych
-                            int currentStepRow = drKing[i];
-                            int currentStepCol = dcKing[i];
-                            for (int step = 1; step < BoardState.SIZE; step++) { // Iteruj po odległości
-                                int toR = r + step * currentStepRow;
-                                int toC = c + step * currentStepCol;
-                                if (!boardState.isValidCoordinate(toR, toC)) break; // Poza planszą
-
-                                if (boardState.getPiece(toR, toC) == null) { // Jeśli pole jest puste
-                                    if (isValidMoveInternal(r, c, toR, toC, false)) {
-                                        simpleMoves.add(new Move(r, c, toR, toC, false));
-                                    }
-                                } else {
-                                    break; // Napotkano przeszkodę, dalej w tym kierunku nie można iść
-                                }
-                            }
-                        }
+        int own = boardState.getPiecesMask(playerColor);
+        int empty = boardState.getEmptyMask();
+        int men = own & ~boardState.getKingsMask();
+        int kings = own & boardState.getKingsMask();
+        int promotionRow = (playerColor == PlayerColor.WHITE) ? Bitboards.ROW_0 : Bitboards.ROW_7;
+
+        int firstForward = (playerColor == PlayerColor.WHITE) ? Bitboards.UP_LEFT : Bitboards.DOWN_LEFT;
+        for (int direction = firstForward; direction <= firstForward + 1; direction++) {
+            int movers = Bitboards.shift(empty, Bitboards.opposite(direction)) & men;
+            while (movers != 0) {
+                int from = Integer.numberOfTrailingZeros(movers);
+                movers &= movers - 1;
+                int to = Bitboards.shift(Bitboards.bit(from), direction);
+                moves.add(PackedMove.encode(from, Integer.numberOfTrailingZeros(to), -1, (to & promotionRow) != 0));
+            }
+        }
+        while (kings != 0) {
+            int square = Integer.numberOfTrailingZeros(kings);
+            kings &= kings - 1;
+            for (int direction = 0; direction < 4; direction++) {
+                int targets = Bitboards.emptyRay(square, direction, ~empty); // Damka idzie do pierwszej przeszkody
+                while (targets != 0) {
+                    moves.add(PackedMove.encode(square, Integer.numberOfTrailingZeros(targets), -1, false));
+                    targets &= targets - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Generuje wszystkie pełne ruchy gracza: jeśli ma bicie, każda sekwencja bić jest jednym
+     * ruchem złożonym (patrz {@link Move#path}) prowadzącym aż do pola, z którego nie ma już
+     * kolejnego bicia; w przeciwnym razie zwraca zwykłe ruchy. W trakcie kontynuacji bicia
+     * zwraca tylko dokończenia sekwencji pionka, który ostatnio skakał.
+     * Sekwencje dające tę samą pozycję końcową (to samo pole końcowe, te same zbite pionki
+     * i ten sam typ pionka) są zwracane tylko raz.
+     * @param playerColor Kolor gracza.
+     * @return Lista pełnych ruchów gracza.
+     */
+    public List<Move> getAllCompleteMovesForPlayer(PlayerColor playerColor) {
+        scratchMoves.clear();
+        generateCompleteMoves(playerColor, scratchMoves);
+        return scratchMoves.toMoveList();
+    }
+
+    /**
+     * Wersja {@link #getAllCompleteMovesForPlayer} zwracająca każdą drogę sekwencji bić osobno
+     * (patrz {@link #generateCompleteMoveRoutes}).
+     * @param playerColor Kolor gracza.
+     * @return Lista pełnych ruchów gracza ze wszystkimi drogami bić.
+     */
+    public List<Move> getAllCompleteMoveRoutesForPlayer(PlayerColor playerColor) {
+        scratchMoves.clear();
+        generateCompleteMoveRoutes(playerColor, scratchMoves);
+        return scratchMoves.toMoveList();
+    }
+
+    /**
+     * Jak {@link #generateCompleteMoves}, ale sekwencje prowadzące różnymi drogami do tej samej pozycji
+     * końcowej są zwracane osobno, każda ze swoją drogą. Służy do sprawdzania ruchów podanych drogą
+     * (z GUI lub z zapisu partii), bo gracz może wybrać dowolną z nich; przeszukiwanie korzysta
+     * z {@link #generateCompleteMoves}, gdzie każda pozycja końcowa występuje raz.
+     */
+    public void generateCompleteMoveRoutes(PlayerColor playerColor, IntMoveList moves) {
+        allRoutes = true;
+        try {
+            generateCompleteMoves(playerColor, moves);
+        } finally {
+            allRoutes = false;
+        }
+    }
+
+    /**
+     * Wersja {@link #getAllCompleteMovesForPlayer} zapisująca ruchy do listy {@link IntMoveList}
+     * (lista jest najpierw czyszczona); sekwencje bić mają flagę {@link PackedMove#SEQUENCE}.
+     */
+    public void generateCompleteMoves(PlayerColor playerColor, IntMoveList moves) {
+        moves.clear();
+        if (isContinuingCapture(playerColor)) {
+            int square = Bitboards.toSquare(turnManager.getLastJumpingPieceRow(), turnManager.getLastJumpingPieceCol());
+            if (square >= 0 && boardState.getColorAt(square) == playerColor) {
+                addCaptureSequencesFrom(square, playerColor, moves);
+            }
+            keepLongestSequences(moves);
+            return;
+        }
+
+        int own = boardState.getPiecesMask(playerColor);
+        int opponent = boardState.getPiecesMask(opponentOf(playerColor));
+        int empty = boardState.getEmptyMask();
+        int men = own & ~boardState.getKingsMask();
+        int jumpers = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            int back = Bitboards.opposite(direction);
+            jumpers |= Bitboards.shift(Bitboards.shift(empty, back) & opponent, back) & men;
+        }
+        int kings = own & boardState.getKingsMask();
+        while (kings != 0) {
+            int square = Integer.numberOfTrailingZeros(kings);
+            kings &= kings - 1;
+            if (canJumpFrom(square, playerColor, true)) {
+                jumpers |= Bitboards.bit(square);
+            }
+        }
+        if (jumpers == 0) {
+            generateValidMoves(playerColor, moves); // Bez bić każdy zwykły ruch jest pełnym ruchem
+            return;
+        }
+        while (jumpers != 0) {
+            int square = Integer.numberOfTrailingZeros(jumpers);
+            jumpers &= jumpers - 1;
+            addCaptureSequencesFrom(square, playerColor, moves);
+        }
+        keepLongestSequences(moves);
+    }
+
+    /**
+     * Przy włączonej regule bicia maksymalnego zostawia tylko sekwencje zbijające najwięcej pionków.
+     */
+    private void keepLongestSequences(IntMoveList sequences) {
+        if (!maximumCaptureRule || sequences.size() <= 1) {
+            return;
+        }
+        int best = 0;
+        for (int i = 0; i < sequences.size(); i++) {
+            best = Math.max(best, sequences.getCaptureCount(i));
+        }
+        int kept = 0;
+        for (int i = 0; i < sequences.size(); i++) {
+            if (sequences.getCaptureCount(i) == best) {
+                sequences.copyEntry(i, kept++);
+            }
+        }
+        sequences.truncate(kept);
+    }
+
+    /**
+     * Dodaje do listy wszystkie sekwencje bić pionka stojącego na polu {@code square}.
+     */
+    private void addCaptureSequencesFrom(int square, PlayerColor color, IntMoveList moves) {
+        emittedSequenceCount = 0;
+        boolean isKing = boardState.isKingAt(square);
+        searchCaptureSequences(square, square, isKing, isKing, color == PlayerColor.WHITE,
+                boardState.getPiecesMask(opponentOf(color)), boardState.getEmptyMask(), 0, 0L, 0, moves);
+    }
+
+    /**
+     * Przeszukuje w głąb drzewo bić na samych maskach, bez zmieniania planszy: zbity pionek
+     * znika od razu (tak jak w {@link MoveExecutor}), pole startowe zwalnia się po pierwszym skoku,
+     * a pionek, który w trakcie bicia stanie na ostatnim wierszu, dalej bije jako damka.
+     * Droga sekwencji jest składana w liczbie {@code path} (po 5 bitów na skok), więc
+     * przeszukiwanie niczego nie alokuje.
+     */
+    private void searchCaptureSequences(int rootSquare, int square, boolean startedAsKing, boolean isKing, boolean white,
+                                        int opponent, int empty, int depth, long path, int captured, IntMoveList moves) {
+        int origin = Bitboards.bit(square);
+        int promotionRow = white ? Bitboards.ROW_0 : Bitboards.ROW_7;
+        boolean extended = false;
+        for (int direction = 0; direction < 4; direction++) {
+            int victim = isKing ? firstOccupied(square, direction, empty) : Bitboards.shift(origin, direction);
+            if ((victim & opponent) == 0) {
+                continue;
+            }
+            // Damka może wylądować na dowolnym pustym polu za bitym pionkiem, pionek tylko tuż za nim
+            int landings = isKing ? Bitboards.emptyRay(Integer.numberOfTrailingZeros(victim), direction, ~empty)
+                    : Bitboards.shift(victim, direction) & empty;
+            while (landings != 0) {
+                int landing = landings & -landings;
+                landings ^= landing;
+                extended = true;
+                int landingSquare = Integer.numberOfTrailingZeros(landing);
+                searchCaptureSequences(rootSquare, landingSquare, startedAsKing, isKing || (landing & promotionRow) != 0, white,
+                        opponent & ~victim, (empty | origin | victim) & ~landing, depth + 1,
+                        path | ((long) landingSquare << (5 * depth)), captured | victim, moves);
+            }
+        }
+        if (!extended && depth > 0) {
+            // Koniec sekwencji: pomiń, jeśli inna droga dała już tę samą pozycję końcową
+            if (!allRoutes && !markSequenceEmitted(rootSquare, square, isKing, captured)) {
+                return;
+            }
+            boolean promotion = isKing && !startedAsKing;
+            int variant = countSameEndpointSequences(moves, PackedMove.encodeSequence(rootSquare, square, promotion));
+            moves.add(PackedMove.encodeSequence(rootSquare, square, promotion, variant), captured, path);
+        }
+    }
+
+    /**
+     * Zwraca liczbę sekwencji na liście o tych samych polach startowym i docelowym (i tej samej promocji)
+     * co {@code move}; jest to numer wariantu nowej sekwencji, dzięki któremu każda sekwencja na liście ma
+     * inną liczbę PackedMove. Kolejność generowania jest stała, więc w tej samej pozycji wariant jest ten sam.
+     */
+    private static int countSameEndpointSequences(IntMoveList moves, int move) {
+        int count = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            if ((moves.get(i) & ~PackedMove.SEQUENCE_VARIANT_MASK) == move) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Zapamiętuje pozycję końcową sekwencji bieżącego pionka.
+     * @return false, jeśli inna droga dała już tę samą pozycję końcową.
+     */
+    private boolean markSequenceEmitted(int rootSquare, int square, boolean isKing, int captured) {
+        long key = rootSquare | ((long) square << 5) | (isKing ? 1L << 10 : 0) | ((captured & 0xFFFFFFFFL) << 11);
+        for (int i = 0; i < emittedSequenceCount; i++) {
+            if (emittedSequences[i] == key) {
+                return false;
+            }
+        }
+        if (emittedSequenceCount == emittedSequences.length) {
+            emittedSequences = Arrays.copyOf(emittedSequences, emittedSequenceCount * 2);
+        }
+        emittedSequences[emittedSequenceCount++] = key;
+        return true;
+    }
+
+    private boolean isContinuingCapture(PlayerColor playerColor) {
+        return turnManager.isJumpMadeThisTurn() && playerColor == turnManager.getCurrentPlayer();
+    }
+
+    /**
+     * Dopisuje do listy wszystkie bicia gracza bez uwzględniania reguły bicia maksymalnego;
+     * w trakcie kontynuacji bicia tylko skoki pionka, który ostatnio skakał.
+     */
+    private void generateJumpCandidates(PlayerColor playerColor, IntMoveList jumps) {
+        if (!isContinuingCapture(playerColor)) {
+            generateJumps(playerColor, jumps);
+            return;
+        }
+        // Kontynuacja wielokrotnego bicia: tylko bicia pionka, który ostatnio skakał
+        int square = Bitboards.toSquare(turnManager.getLastJumpingPieceRow(), turnManager.getLastJumpingPieceCol());
+        if (square >= 0 && boardState.getColorAt(square) == playerColor) {
+            int opponent = boardState.getPiecesMask(opponentOf(playerColor));
+            int empty = boardState.getEmptyMask();
+            int promotionRow = (playerColor == PlayerColor.WHITE) ? Bitboards.ROW_0 : Bitboards.ROW_7;
+            boolean isKing = boardState.isKingAt(square);
+            for (int direction = 0; direction < 4; direction++) {
+                if (isKing) {
+                    checkAndAddKingJumpsInDirection(square, direction, opponent, empty, jumps);
+                } else {
+                    int over = Bitboards.shift(Bitboards.bit(square), direction) & opponent;
+                    int landing = Bitboards.shift(over, direction) & empty;
+                    if (landing != 0) {
+                        jumps.add(PackedMove.encode(square, Integer.numberOfTrailingZeros(landing),
+                                Integer.numberOfTrailingZeros(over), (landing & promotionRow) != 0));
                     }
                 }
             }
         }
-        return simpleMoves;
     }
-}
\ No newline at end of file
+
+    /**
+     * Przy włączonej regule bicia maksymalnego zostawia na liście (w miejscu) tylko skoki, od których
+     * zaczyna się sekwencja zbijająca najwięcej pionków. Wartość każdego skoku liczy {@link #countMaxCaptures}.
+     */
+    private void keepMaximumCaptures(IntMoveList jumps, PlayerColor playerColor) {
+        if (!maximumCaptureRule || jumps.size() <= 1) {
+            return;
+        }
+        nextCaptureMemoGeneration();
+        boolean white = playerColor == PlayerColor.WHITE;
+        int opponent = boardState.getPiecesMask(opponentOf(playerColor));
+        int empty = boardState.getEmptyMask();
+        int promotionRow = white ? Bitboards.ROW_0 : Bitboards.ROW_7;
+        if (captureValues.length < jumps.size()) {
+            captureValues = new int[jumps.size() * 2];
+        }
+        int best = 0;
+        for (int i = 0; i < jumps.size(); i++) {
+            int jump = jumps.get(i);
+            int from = PackedMove.from(jump);
+            int to = PackedMove.to(jump);
+            int victim = Bitboards.bit(PackedMove.capturedSquare(jump));
+            int landing = Bitboards.bit(to);
+            captureValues[i] = 1 + countMaxCaptures(from, to, boardState.isKingAt(from) || (landing & promotionRow) != 0, white,
+                    opponent & ~victim, (empty | Bitboards.bit(from) | victim) & ~landing);
+            best = Math.max(best, captureValues[i]);
+        }
+        int kept = 0;
+        for (int i = 0; i < jumps.size(); i++) {
+            if (captureValues[i] == best) {
+                jumps.copyEntry(i, kept++);
+            }
+        }
+        jumps.truncate(kept);
+    }
+
+    /**
+     * Zwraca największą liczbę pionków, jaką może jeszcze zbić pionek stojący na {@code square}
+     * (który rozpoczął sekwencję na {@code rootSquare}). Przeszukiwanie w głąb na samych maskach,
+     * z tymi samymi zasadami co {@link #searchCaptureSequences}. Wyniki są zapamiętywane, bo damki
+     * zbijające te same pionki w różnej kolejności dochodzą do tych samych stanów, a gałąź jest
+     * przerywana, gdy najlepszy dotąd wynik zbija już wszystkie pozostałe pionki przeciwnika.
+     */
+    private int countMaxCaptures(int rootSquare, int square, boolean isKing, boolean white, int opponent, int empty) {
+        int remaining = Integer.bitCount(opponent);
+        if (remaining == 0) {
+            return 0;
+        }
+        // Przy ustalonej planszy i polu startowym stan jest wyznaczony przez pole, typ pionka i pozostałych przeciwników
+        long key = (opponent & 0xFFFFFFFFL) | ((long) square << 32) | (isKing ? 1L << 37 : 0) | ((long) rootSquare << 38);
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 54);
+        int freeSlot = -1;
+        for (int probe = 0; probe < CAPTURE_MEMO_PROBES; probe++) {
+            int index = (slot + probe) & (CAPTURE_MEMO_SIZE - 1);
+            if (captureMemoStamps[index] != captureMemoGeneration) {
+                freeSlot = index;
+                break;
+            }
+            if (captureMemoKeys[index] == key) {
+                return captureMemoValues[index];
+            }
+        }
+
+        int origin = Bitboards.bit(square);
+        int promotionRow = white ? Bitboards.ROW_0 : Bitboards.ROW_7;
+        int best = 0;
+        for (int direction = 0; direction < 4 && best < remaining; direction++) {
+            int victim = isKing ? firstOccupied(square, direction, empty) : Bitboards.shift(origin, direction);
+            if ((victim & opponent) == 0) {
+                continue;
+            }
+            int landings = isKing ? Bitboards.emptyRay(Integer.numberOfTrailingZeros(victim), direction, ~empty)
+                    : Bitboards.shift(victim, direction) & empty;
+            while (landings != 0 && best < remaining) {
+                int landing = landings & -landings;
+                landings ^= landing;
+                int value = 1 + countMaxCaptures(rootSquare, Integer.numberOfTrailingZeros(landing),
+                        isKing || (landing & promotionRow) != 0, white,
+                        opponent & ~victim, (empty | origin | victim) & ~landing);
+                best = Math.max(best, value);
+            }
+        }
+
+        if (freeSlot >= 0) {
+            captureMemoKeys[freeSlot] = key;
+            captureMemoValues[freeSlot] = best;
+            captureMemoStamps[freeSlot] = captureMemoGeneration;
+        }
+        return best;
+    }
+
+    private void nextCaptureMemoGeneration() {
+        if (++captureMemoGeneration == 0) {
+            Arrays.fill(captureMemoStamps, 0);
+            captureMemoGeneration = 1;
+        }
+    }
+
+    static PlayerColor opponentOf(PlayerColor color) {
+        return color == PlayerColor.WHITE ? PlayerColor.BLACK : PlayerColor.WHITE;
+    }
+}
@@ -0,0 +1,81 @@
+package warcaby.gamelogic.boardcomponents;
+
+/**
+ * Zapis ruchu w jednej liczbie int, używany przez generator ruchów i przeszukiwanie
+ * zamiast obiektów {@link Move}:
+ * <pre>
+ * bity 0-4   pole startowe (indeks z {@link Bitboards})
+ * bity 5-9   pole docelowe
+ * bity 10-15 pole zbitego pionka + 1 dla pojedynczego skoku (0, jeśli ruch nie bije);
+ *            dla sekwencji bić numer wariantu (patrz {@link #encodeSequence(int, int, boolean, int)})
+ * bit 16     bicie
+ * bit 17     promocja na damkę
+ * bit 18     cała sekwencja bić (zbite pola i droga są zapisane obok, w {@link IntMoveList})
+ * </pre>
+ */
+public final class PackedMove {
+    public static final int JUMP = 1 << 16;
+    public static final int PROMOTION = 1 << 17;
+    public static final int SEQUENCE = 1 << 18;
+    static final int SEQUENCE_VARIANT_MASK = 0x3F << 10;
+
+    private PackedMove() {
+        throw new IllegalStateException("Klasa narzędziowa nie powinna być instancjonowana");
+    }
+
+    /**
+     * Koduje zwykły ruch albo pojedynczy skok.
+     * @param capturedSquare Pole zbitego pionka lub -1, jeśli ruch nie jest biciem.
+     */
+    public static int encode(int fromSquare, int toSquare, int capturedSquare, boolean promotion) {
+        int move = fromSquare | (toSquare << 5) | ((capturedSquare + 1) << 10);
+        if (capturedSquare >= 0) move |= JUMP;
+        if (promotion) move |= PROMOTION;
+        return move;
+    }
+
+    /**
+     * Koduje całą sekwencję bić (pola pośrednie i zbite pionki przechowuje lista ruchów).
+     */
+    public static int encodeSequence(int fromSquare, int toSquare, boolean promotion) {
+        return encodeSequence(fromSquare, toSquare, promotion, 0);
+    }
+
+    /**
+     * Koduje sekwencję bić z numerem wariantu. Sekwencje o tych samych polach startowym i docelowym,
+     * ale zbijające inne pionki, dostają w jednej liście ruchów kolejne numery wariantu, więc w danej
+     * pozycji liczba wskazuje dokładnie jedną sekwencję (np. ruch z tablicy transpozycji).
+     * @param variant Numer wariantu 0-63.
+     */
+    public static int encodeSequence(int fromSquare, int toSquare, boolean promotion, int variant) {
+        return fromSquare | (toSquare << 5) | ((variant << 10) & SEQUENCE_VARIANT_MASK)
+                | JUMP | SEQUENCE | (promotion ? PROMOTION : 0);
+    }
+
+    public static int from(int move) {
+        return move & 0x1F;
+    }
+
+    public static int to(int move) {
+        return (move >>> 5) & 0x1F;
+    }
+
+    /**
+     * Zwraca pole zbitego pionka pojedynczego skoku lub -1 (także dla sekwencji bić).
+     */
+    public static int capturedSquare(int move) {
+        return isSequence(move) ? -1 : ((move >>> 10) & 0x3F) - 1;
+    }
+
+    public static boolean isJump(int move) {
+        return (move & JUMP) != 0;
+    }
+
+    public static boolean isPromotion(int move) {
+        return (move & PROMOTION) != 0;
+    }
+
+    public static boolean isSequence(int move) {
+        return (move & SEQUENCE) != 0;
+    }
+}
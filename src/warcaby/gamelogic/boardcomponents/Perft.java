@@ -0,0 +1,451 @@
+package warcaby.gamelogic.boardcomponents;
+
+import warcaby.gamelogic.PlayerColor;
+import warcaby.utils.ApplicationConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Narzędzie perft: liczy liście drzewa gry do zadanej głębokości, korzystając z
+ * {@link MoveLogic#generateValidMoves} (ruchy w zapisie {@link PackedMove}) i {@link MoveExecutor#executeValidatedMove}.
+ * Służy do wykrywania regresji w generowaniu ruchów (bicia wielokrotne, długie bicia damek)
+ * oraz do mierzenia przepustowości generatora (węzły na sekundę).
+ * Jeden poziom głębokości to jeden skok lub ruch, więc kontynuacja bicia jest osobnym poziomem.
+ * Z opcją {@code --unmake} drzewo jest przechodzone przez {@link MoveExecutor#make}/{@link MoveExecutor#unmake}
+ * zamiast kopiowania stanu; oba tryby muszą dawać te same wyniki.
+ * Opcja {@code --check-routes} sprawdza zamiast liczenia, czy każda droga bicia z
+ * {@link MoveLogic#generateCompleteMoveRoutes} składa się z dozwolonych skoków i prowadzi do pozycji
+ * jednego z ruchów {@link MoveLogic#generateCompleteMoves} (głębokość liczona w pełnych ruchach) oraz czy
+ * każdy pełny ruch ma w liście inną liczbę {@link PackedMove}; oprócz podanej pozycji sprawdzane są pozycje
+ * wzorcowe z damką bijącą tych samych pionków różnymi drogami albo różnych pionków między tymi samymi polami.
+ *
+ * Użycie: {@code Perft <głębokość> [--fen <pozycja>] [--divide] [--parallel [wątki]] [--hash <MB>] [--unmake] [--check-routes]}
+ */
+public class Perft {
+    private static final int MAX_PLY = 128;
+    // Damka zbija te same pionki kilkoma drogami (np. 29x11x4, 29x15x4, 29x18x4), kończąc na tym samym polu,
+    // albo różne pionki między tymi samymi polami (12x19x10x21 i 12x23x14x21)
+    static final String[] ROUTE_CHECK_POSITIONS = {"W:WK29:B8,22", "W:WK1:B6,7,24", "W:WK21:B9,17,23", "W:WK12:B15,16,17,18"};
+
+    private final String fen;
+    private final PerftHashTable hashTable;
+    private boolean useUnmake = false;
+
+    /**
+     * @param fen        Pozycja startowa w formacie {@link PositionFormat}.
+     * @param hashSizeMb Rozmiar tablicy z zapamiętanymi wynikami poddrzew w MB (0 wyłącza tablicę).
+     */
+    public Perft(String fen, int hashSizeMb) {
+        this.fen = fen;
+        this.hashTable = (hashSizeMb > 0) ? new PerftHashTable(hashSizeMb) : null;
+        new Position(fen); // Wczesna walidacja zapisu pozycji
+    }
+
+    /**
+     * Przełącza przechodzenie drzewa na make/unmake zamiast kopiowania stanu planszy.
+     */
+    public void setUseUnmake(boolean useUnmake) {
+        this.useUnmake = useUnmake;
+    }
+
+    /**
+     * Liczy liście do głębokości {@code depth} w jednym wątku.
+     */
+    public long count(int depth) {
+        return newPosition().perft(depth, 0, hashTable);
+    }
+
+    private Position newPosition() {
+        Position position = new Position(fen);
+        position.useUnmake = useUnmake;
+        return position;
+    }
+
+    /**
+     * Sprawdza drogi bić we wszystkich pozycjach drzewa pełnych ruchów do głębokości {@code depth}
+     * (patrz opis klasy).
+     * @return Liczba sprawdzonych dróg bić.
+     * @throws IllegalStateException przy pierwszej niezgodności, z zapisem pozycji w komunikacie.
+     */
+    public long checkCaptureRoutes(int depth) {
+        return newPosition().checkCaptureRoutes(depth, 0);
+    }
+
+    /**
+     * Zwraca liczbę liści osobno dla każdego ruchu z pozycji startowej (tryb "divide").
+     */
+    public List<DivideEntry> divide(int depth) {
+        Position position = newPosition();
+        List<DivideEntry> entries = new ArrayList<>();
+        for (Move move : position.rootMoves()) {
+            Position child = newPosition();
+            child.moveExecutor.executeValidatedMove(move.fromRow, move.fromCol, move.toRow, move.toCol);
+            entries.add(new DivideEntry(PositionFormat.moveName(move), child.perft(depth - 1, 0, hashTable)));
+        }
+        return entries;
+    }
+
+    /**
+     * Liczy liście równolegle: każdy ruch z korzenia jest osobnym zadaniem fork-join
+     * z własną kopią komponentów planszy. Tablica wyników (jeśli włączona) jest współdzielona.
+     */
+    public long countParallel(int depth, int threads) {
+        if (depth <= 1) {
+            return count(depth);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new RootTask(this, depth));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Wynik trybu "divide" dla jednego ruchu z korzenia.
+     */
+    public static class DivideEntry {
+        public final String move;
+        public final long nodes;
+
+        DivideEntry(String move, long nodes) {
+            this.move = move;
+            this.nodes = nodes;
+        }
+    }
+
+    /**
+     * Zestaw komponentów planszy używany przez jeden wątek, z buforami do cofania pozycji na każdym poziomie.
+     */
+    private static class Position {
+        final BoardState boardState = new BoardState();
+        final TurnManager turnManager = new TurnManager(boardState);
+        final MoveLogic moveLogic = new MoveLogic(boardState, turnManager);
+        final MoveExecutor moveExecutor = new MoveExecutor(boardState, turnManager, moveLogic);
+        final BoardState[] savedStates = new BoardState[MAX_PLY];
+        final TurnManager[] savedTurns = new TurnManager[MAX_PLY];
+        final IntMoveList[] moveLists = new IntMoveList[MAX_PLY]; // Osobna lista ruchów na każdy poziom
+        boolean useUnmake;
+
+        Position(String fen) {
+            PositionFormat.load(fen, boardState, turnManager);
+            for (int i = 0; i < MAX_PLY; i++) {
+                savedStates[i] = new BoardState();
+                savedTurns[i] = new TurnManager();
+                moveLists[i] = new IntMoveList();
+            }
+        }
+
+        List<Move> rootMoves() {
+            return moveLogic.getAllValidMovesForPlayer(turnManager.getCurrentPlayer());
+        }
+
+        long perft(int depth, int ply, PerftHashTable hashTable) {
+            if (depth == 0) {
+                return 1;
+            }
+            IntMoveList moves = moveLists[ply];
+            moveLogic.generateValidMoves(turnManager.getCurrentPlayer(), moves);
+            if (depth == 1) {
+                return moves.size();
+            }
+            long keyHigh = 0, keyLow = 0;
+            if (hashTable != null) {
+                keyHigh = ((long) boardState.getWhiteMask() << 32) | (boardState.getBlackMask() & 0xFFFFFFFFL);
+                keyLow = ((long) boardState.getKingsMask() << 32) | turnStateBits(depth);
+                long cached = hashTable.probe(keyHigh, keyLow);
+                if (cached >= 0) {
+                    return cached;
+                }
+            }
+
+            long nodes = 0;
+            if (useUnmake) {
+                for (int i = 0; i < moves.size(); i++) {
+                    moveExecutor.make(moves.get(i), moves.getCapturedMask(i));
+                    nodes += perft(depth - 1, ply + 1, hashTable);
+                    moveExecutor.unmake();
+                }
+            } else {
+                BoardState savedState = savedStates[ply];
+                TurnManager savedTurn = savedTurns[ply];
+                savedState.copyFrom(boardState);
+                savedTurn.copyFrom(turnManager);
+                for (int i = 0; i < moves.size(); i++) {
+                    int from = PackedMove.from(moves.get(i));
+                    int to = PackedMove.to(moves.get(i));
+                    moveExecutor.executeValidatedMove(Bitboards.rowOf(from), Bitboards.colOf(from), Bitboards.rowOf(to), Bitboards.colOf(to));
+                    nodes += perft(depth - 1, ply + 1, hashTable);
+                    boardState.copyFrom(savedState);
+                    turnManager.copyFrom(savedTurn);
+                }
+            }
+
+            if (hashTable != null) {
+                hashTable.store(keyHigh, keyLow, nodes);
+            }
+            return nodes;
+        }
+
+        long checkCaptureRoutes(int depth, int ply) {
+            if (depth == 0) {
+                return 0;
+            }
+            PlayerColor player = turnManager.getCurrentPlayer();
+            IntMoveList moves = new IntMoveList();
+            IntMoveList routes = new IntMoveList();
+            IntMoveList hops = new IntMoveList();
+            moveLogic.generateCompleteMoves(player, moves);
+            moveLogic.generateCompleteMoveRoutes(player, routes);
+            BoardState savedState = savedStates[ply];
+            TurnManager savedTurn = savedTurns[ply];
+            savedState.copyFrom(boardState);
+            savedTurn.copyFrom(turnManager);
+            String fen = PositionFormat.format(boardState, turnManager);
+
+            long checked = 0;
+            for (int i = 0; i < routes.size(); i++) {
+                Move route = routes.toMove(i);
+                if (!route.isCaptureSequence()) {
+                    if (indexOfPath(moves, route) < 0) {
+                        throw new IllegalStateException("Pozycja " + fen + ": ruch " + route + " nie występuje wśród pełnych ruchów.");
+                    }
+                    continue;
+                }
+                for (int hop = 0; hop < route.getHopCount(); hop++) {
+                    Move step = route.getHop(hop);
+                    moveLogic.generateValidMoves(turnManager.getCurrentPlayer(), hops);
+                    if (indexOfHop(hops, step) < 0) {
+                        throw new IllegalStateException("Pozycja " + fen + ": skok " + PositionFormat.moveName(step)
+                                + " drogi " + route + " nie jest dozwolony.");
+                    }
+                    moveExecutor.executeValidatedMove(step.fromRow, step.fromCol, step.toRow, step.toCol);
+                }
+                if (turnManager.getCurrentPlayer() == player) {
+                    throw new IllegalStateException("Pozycja " + fen + ": po drodze " + route + " bicie nie jest zakończone.");
+                }
+                int white = boardState.getWhiteMask();
+                int black = boardState.getBlackMask();
+                int kings = boardState.getKingsMask();
+                boardState.copyFrom(savedState);
+                turnManager.copyFrom(savedTurn);
+                if (!anyMoveReaches(moves, white, black, kings)) {
+                    throw new IllegalStateException("Pozycja " + fen + ": droga " + route
+                            + " prowadzi do pozycji, której nie daje żaden pełny ruch.");
+                }
+                checked++;
+            }
+            for (int i = 0; i < moves.size(); i++) {
+                if (indexOfPath(routes, moves.toMove(i)) < 0) {
+                    throw new IllegalStateException("Pozycja " + fen + ": ruch " + moves.toMove(i) + " nie występuje wśród dróg.");
+                }
+                for (int j = 0; j < i; j++) {
+                    if (moves.get(j) == moves.get(i)) {
+                        throw new IllegalStateException("Pozycja " + fen + ": ruchy " + moves.toMove(j) + " i " + moves.toMove(i)
+                                + " mają tę samą liczbę PackedMove.");
+                    }
+                }
+            }
+
+            for (int i = 0; i < moves.size(); i++) {
+                moveExecutor.make(moves.get(i), moves.getCapturedMask(i));
+                checked += checkCaptureRoutes(depth - 1, ply + 1);
+                moveExecutor.unmake();
+            }
+            return checked;
+        }
+
+        private boolean anyMoveReaches(IntMoveList moves, int white, int black, int kings) {
+            for (int i = 0; i < moves.size(); i++) {
+                moveExecutor.make(moves.get(i), moves.getCapturedMask(i));
+                boolean same = boardState.getWhiteMask() == white && boardState.getBlackMask() == black
+                        && boardState.getKingsMask() == kings;
+                moveExecutor.unmake();
+                if (same) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int indexOfPath(IntMoveList moves, Move move) {
+            for (int i = 0; i < moves.size(); i++) {
+                if (moves.toMove(i).hasSamePath(move)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int indexOfHop(IntMoveList hops, Move step) {
+            int from = Bitboards.toSquare(step.fromRow, step.fromCol);
+            int to = Bitboards.toSquare(step.toRow, step.toCol);
+            for (int i = 0; i < hops.size(); i++) {
+                if (PackedMove.from(hops.get(i)) == from && PackedMove.to(hops.get(i)) == to) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Pakuje głębokość, stronę na ruchu i pole kontynuowanego bicia do dolnych 32 bitów klucza.
+         */
+        private long turnStateBits(int depth) {
+            long bits = ((long) depth << 8) | (turnManager.getCurrentPlayer() == PlayerColor.BLACK ? 0x80 : 0);
+            if (turnManager.isJumpMadeThisTurn()) {
+                bits |= 0x40 | (Bitboards.toSquare(turnManager.getLastJumpingPieceRow(), turnManager.getLastJumpingPieceCol()) & 0x3F);
+            }
+            return bits;
+        }
+    }
+
+    private static class RootTask extends RecursiveTask<Long> {
+        private final Perft perft;
+        private final int depth;
+
+        RootTask(Perft perft, int depth) {
+            this.perft = perft;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            List<MoveTask> tasks = new ArrayList<>();
+            for (Move move : perft.newPosition().rootMoves()) {
+                tasks.add(new MoveTask(perft, move, depth - 1));
+            }
+            long nodes = 0;
+            for (MoveTask task : invokeAll(tasks)) {
+                nodes += task.join();
+            }
+            return nodes;
+        }
+    }
+
+    private static class MoveTask extends RecursiveTask<Long> {
+        private final Perft perft;
+        private final Move move;
+        private final int depth;
+
+        MoveTask(Perft perft, Move move, int depth) {
+            this.perft = perft;
+            this.move = move;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            Position position = perft.newPosition();
+            position.moveExecutor.executeValidatedMove(move.fromRow, move.fromCol, move.toRow, move.toCol);
+            return position.perft(depth, 0, perft.hashTable);
+        }
+    }
+
+    /**
+     * Tablica wyników poddrzew bez blokad: klucz (128 bitów dokładnego opisu pozycji i głębokości)
+     * jest zapisany z XOR liczby węzłów, więc wpis rozerwany przez równoległy zapis nie przejdzie weryfikacji.
+     */
+    private static class PerftHashTable {
+        private static final int LONGS_PER_ENTRY = 3;
+        private final long[] entries;
+        private final int mask;
+
+        PerftHashTable(int sizeMb) {
+            long requested = ((long) sizeMb << 20) / (Long.BYTES * LONGS_PER_ENTRY);
+            int capacity = Integer.highestOneBit((int) Math.min(requested, 1 << 26));
+            this.entries = new long[capacity * LONGS_PER_ENTRY];
+            this.mask = capacity - 1;
+        }
+
+        long probe(long keyHigh, long keyLow) {
+            int index = indexOf(keyHigh, keyLow);
+            long nodes = entries[index + 2];
+            if ((entries[index] ^ nodes) == keyHigh && (entries[index + 1] ^ nodes) == keyLow) {
+                return nodes;
+            }
+            return -1;
+        }
+
+        void store(long keyHigh, long keyLow, long nodes) {
+            int index = indexOf(keyHigh, keyLow);
+            entries[index] = keyHigh ^ nodes;
+            entries[index + 1] = keyLow ^ nodes;
+            entries[index + 2] = nodes;
+        }
+
+        private int indexOf(long keyHigh, long keyLow) {
+            long h = keyHigh * 0x9E3779B97F4A7C15L ^ keyLow * 0xC2B2AE3D27D4EB4FL;
+            h ^= h >>> 29;
+            return ((int) h & mask) * LONGS_PER_ENTRY;
+        }
+    }
+
+    public static void main(String[] args) {
+        int depth = 6;
+        String fen = PositionFormat.START_POSITION;
+        boolean divide = false;
+        int threads = 0;
+        int hashMb = 0;
+        boolean unmake = false;
+        boolean checkRoutes = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--fen": fen = args[++i]; break;
+                    case "--divide": divide = true; break;
+                    case "--unmake": unmake = true; break;
+                    case "--check-routes": checkRoutes = true; break;
+                    case "--hash": hashMb = Integer.parseInt(args[++i]); break;
+                    case "--parallel":
+                        threads = Runtime.getRuntime().availableProcessors();
+                        if (i + 1 < args.length && args[i + 1].matches("\\d+")) threads = Integer.parseInt(args[++i]);
+                        break;
+                    default: depth = Integer.parseInt(args[i]);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Użycie: Perft <głębokość> [--fen <pozycja>] [--divide] [--parallel [wątki]] [--hash <MB>] [--unmake] [--check-routes]");
+            return;
+        }
+        ApplicationConfig.disableLogging(); // Logi z MoveExecutor/TurnManager zaburzyłyby pomiar
+
+        if (checkRoutes) {
+            List<String> positions = new ArrayList<>();
+            positions.add(fen);
+            positions.addAll(java.util.Arrays.asList(ROUTE_CHECK_POSITIONS));
+            for (String position : positions) {
+                try {
+                    long routes = new Perft(position, 0).checkCaptureRoutes(depth);
+                    System.out.println("Pozycja: " + position + "  głębokość " + depth + ": drogi bić zgodne (" + routes + ")");
+                } catch (IllegalStateException e) {
+                    System.out.println("BŁĄD: " + e.getMessage());
+                }
+            }
+            return;
+        }
+
+        Perft perft = new Perft(fen, hashMb);
+        perft.setUseUnmake(unmake);
+        System.out.println("Pozycja: " + fen);
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            long nodes;
+            if (divide && d == depth) {
+                nodes = 0;
+                for (DivideEntry entry : perft.divide(d)) {
+                    System.out.println("  " + entry.move + ": " + entry.nodes);
+                    nodes += entry.nodes;
+                }
+            } else {
+                nodes = (threads > 0) ? perft.countParallel(d, threads) : perft.count(d);
+            }
+            long elapsedNanos = Math.max(1, System.nanoTime() - start);
+            System.out.printf("perft(%d) = %d  czas: %.3f s  %.0f węzłów/s%n",
+                    d, nodes, elapsedNanos / 1e9, nodes * 1e9 / elapsedNanos);
+        }
+    }
+}
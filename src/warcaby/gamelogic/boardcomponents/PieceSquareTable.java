@@ -0,0 +1,78 @@
+package warcaby.gamelogic.boardcomponents;
+
+/**
+ * Tablice wartości pionków na polach (materiał + składnik pozycyjny) dla oceny pozycji.
+ * Wartość pozycji to suma wartości wszystkich pionków, z punktu widzenia białych (pionki czarnych
+ * mają wartości ujemne), więc - tak jak klucz {@link Zobrist} - {@link BoardState} może ją aktualizować
+ * przyrostowo przy każdym ruchu, biciu i promocji, bez przeglądania planszy.
+ *
+ * Wartość pionka obejmuje: materiał, zaawansowanie w stronę przemiany, kontrolę centrum
+ * i pilnowanie własnej linii przemiany. Wartość damki: materiał i premia za pola centralne
+ * (damka w centrum kontroluje obie długie przekątne). Tablice czarnych są lustrzanym odbiciem białych.
+ *
+ * {@link #DEFAULT} korzysta z poniższych stałych; tablice z innymi wagami (np. dostrojonymi) są osobnymi
+ * obiektami, które można ustawić w {@link BoardState#setPieceSquareTable}. Obiekt jest niezmienny.
+ */
+public final class PieceSquareTable {
+    public static final int MAN_VALUE = 100;
+    public static final int KING_VALUE = 300;
+
+    public static final int CENTER = 0x00066000;               // Cztery środkowe pola (wiersze 3-4, kolumny 2-5)
+    public static final int WIDE_CENTER = 0x000FF000 & ~CENTER; // Pozostałe pola wierszy 3-4
+    public static final int CENTER_BONUS = 6;
+    public static final int WIDE_CENTER_BONUS = 2;
+    public static final int BACK_RANK_BONUS = 4;  // Pionek na własnym ostatnim wierszu blokuje przemianę przeciwnika
+    public static final int ADVANCE_BONUS = 3;    // Za każdy wiersz przebyty w stronę przemiany
+    public static final int KING_CENTER_BONUS = 4;
+
+    public static final PieceSquareTable DEFAULT = new PieceSquareTable(MAN_VALUE, KING_VALUE, ADVANCE_BONUS,
+            CENTER_BONUS, WIDE_CENTER_BONUS, BACK_RANK_BONUS, KING_CENTER_BONUS);
+
+    private final int[] values = new int[4 * Bitboards.SQUARES]; // [rodzaj pionka Zobrist][pole]
+
+    /**
+     * Buduje tablice z podanych wag składników (znaczenie jak w stałych o tych samych nazwach).
+     */
+    public PieceSquareTable(int manValue, int kingValue, int advanceBonus, int centerBonus, int wideCenterBonus,
+                            int backRankBonus, int kingCenterBonus) {
+        for (int square = 0; square < Bitboards.SQUARES; square++) {
+            int bit = Bitboards.bit(square);
+            int row = Bitboards.rowOf(square);
+            int man = manValue + (BoardState.SIZE - 1 - row) * advanceBonus
+                    + ((bit & CENTER) != 0 ? centerBonus : 0)
+                    + ((bit & WIDE_CENTER) != 0 ? wideCenterBonus : 0)
+                    + ((bit & Bitboards.ROW_7) != 0 ? backRankBonus : 0);
+            int king = kingValue + ((bit & CENTER) != 0 ? kingCenterBonus : 0);
+            int mirrored = Bitboards.SQUARES - 1 - square; // Obrót planszy o 180 stopni
+            values[(Zobrist.WHITE_MAN << 5) | square] = man;
+            values[(Zobrist.WHITE_KING << 5) | square] = king;
+            values[(Zobrist.BLACK_MAN << 5) | mirrored] = -man;
+            values[(Zobrist.BLACK_KING << 5) | mirrored] = -king;
+        }
+    }
+
+    /**
+     * Zwraca wartość pionka danego rodzaju (WHITE_MAN ... BLACK_KING z {@link Zobrist}) na danym polu,
+     * dodatnią dla białych i ujemną dla czarnych.
+     */
+    public int value(int pieceKind, int square) {
+        return values[(pieceKind << 5) | square];
+    }
+
+    /**
+     * Liczy wartość pozycji od zera na podstawie masek (używane przy ustawianiu całej pozycji).
+     */
+    public int computeScore(int white, int black, int kings) {
+        return scoreOfMask(white & ~kings, Zobrist.WHITE_MAN) + scoreOfMask(white & kings, Zobrist.WHITE_KING)
+                + scoreOfMask(black & ~kings, Zobrist.BLACK_MAN) + scoreOfMask(black & kings, Zobrist.BLACK_KING);
+    }
+
+    private int scoreOfMask(int mask, int pieceKind) {
+        int score = 0;
+        while (mask != 0) {
+            score += value(pieceKind, Integer.numberOfTrailingZeros(mask));
+            mask &= mask - 1;
+        }
+        return score;
+    }
+}
@@ -0,0 +1,117 @@
+package warcaby.gamelogic.boardcomponents;
+
+import warcaby.gamelogic.PlayerColor;
+
+/**
+ * Tekstowy zapis pozycji w stylu FEN z notacji PDN, np. {@code "W:W21,22,K30:B1,2"}.
+ * Pierwsze pole to strona na ruchu (W lub B), kolejne to listy pól białych i czarnych pionków.
+ * Prefiks K oznacza damkę, zapis "1-12" oznacza zakres pól.
+ * Pola ciemne są numerowane od 1 do 32 wierszami, zaczynając od pola (0,1) w lewym górnym rogu
+ * (numer pola = indeks z {@link Bitboards} + 1).
+ */
+public final class PositionFormat {
+    public static final String START_POSITION = "W:W21-32:B1-12";
+
+    private PositionFormat() {
+        throw new IllegalStateException("Klasa narzędziowa nie powinna być instancjonowana");
+    }
+
+    /**
+     * Ustawia pozycję zapisaną w formacie FEN na podanych komponentach planszy.
+     * Stan kontynuacji bicia jest resetowany.
+     * @throws IllegalArgumentException jeśli zapis jest niepoprawny.
+     */
+    public static void load(String fen, BoardState boardState, TurnManager turnManager) {
+        if (fen == null) {
+            throw new IllegalArgumentException("Brak zapisu pozycji.");
+        }
+        String[] fields = fen.trim().split(":");
+        if (fields.length < 1 || fields[0].length() != 1) {
+            throw new IllegalArgumentException("Niepoprawny zapis pozycji: " + fen);
+        }
+        PlayerColor sideToMove = parseColor(fields[0].charAt(0), fen);
+
+        int white = 0, black = 0, kings = 0;
+        for (int i = 1; i < fields.length; i++) {
+            String field = fields[i].trim();
+            if (field.isEmpty()) continue;
+            PlayerColor color = parseColor(field.charAt(0), fen);
+            String list = field.substring(1).trim();
+            if (list.isEmpty()) continue;
+            for (String token : list.split(",")) {
+                token = token.trim();
+                boolean king = token.startsWith("K");
+                if (king) token = token.substring(1);
+                int[] range = parseRange(token, fen);
+                for (int number = range[0]; number <= range[1]; number++) {
+                    int bit = Bitboards.bit(number - 1);
+                    if (((white | black) & bit) != 0) {
+                        throw new IllegalArgumentException("Pole " + number + " zajęte więcej niż raz: " + fen);
+                    }
+                    if (color == PlayerColor.WHITE) white |= bit; else black |= bit;
+                    if (king) kings |= bit;
+                }
+            }
+        }
+        boardState.setPosition(white, black, kings);
+        turnManager.reset();
+        turnManager.forceSetCurrentPlayer(sideToMove);
+    }
+
+    /**
+     * Zapisuje pozycję z podanych komponentów w formacie FEN.
+     */
+    public static String format(BoardState boardState, TurnManager turnManager) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(turnManager.getCurrentPlayer() == PlayerColor.BLACK ? 'B' : 'W');
+        appendPieces(sb, 'W', boardState.getWhiteMask(), boardState.getKingsMask());
+        appendPieces(sb, 'B', boardState.getBlackMask(), boardState.getKingsMask());
+        return sb.toString();
+    }
+
+    public static String squareName(int square) {
+        return String.valueOf(square + 1);
+    }
+
+    /**
+     * Zwraca zapis pojedynczego ruchu w notacji pól, np. "22-18" lub "15x22".
+     */
+    public static String moveName(Move move) {
+        int from = Bitboards.toSquare(move.fromRow, move.fromCol);
+        int to = Bitboards.toSquare(move.toRow, move.toCol);
+        return squareName(from) + (move.isJump ? "x" : "-") + squareName(to);
+    }
+
+    private static void appendPieces(StringBuilder sb, char colorChar, int pieces, int kings) {
+        sb.append(':').append(colorChar);
+        boolean first = true;
+        while (pieces != 0) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            if (!first) sb.append(',');
+            if ((kings & Bitboards.bit(square)) != 0) sb.append('K');
+            sb.append(squareName(square));
+            first = false;
+        }
+    }
+
+    private static PlayerColor parseColor(char c, String fen) {
+        if (c == 'W' || c == 'w') return PlayerColor.WHITE;
+        if (c == 'B' || c == 'b') return PlayerColor.BLACK;
+        throw new IllegalArgumentException("Nieznany kolor '" + c + "' w zapisie pozycji: " + fen);
+    }
+
+    private static int[] parseRange(String token, String fen) {
+        try {
+            int dash = token.indexOf('-');
+            int from = Integer.parseInt((dash < 0 ? token : token.substring(0, dash)).trim());
+            int to = (dash < 0) ? from : Integer.parseInt(token.substring(dash + 1).trim());
+            if (from < 1 || to > Bitboards.SQUARES || from > to) {
+                throw new IllegalArgumentException("Pole spoza zakresu 1-32: " + token + " w " + fen);
+            }
+            return new int[]{from, to};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Niepoprawny numer pola: " + token + " w " + fen);
+        }
+    }
+}
@@ -13,9 +13,20 @@ public class TurnManager {
     private boolean jumpMadeThisTurn;  // Flaga wskazująca, czy w tej turze wykonano już bicie (dla wielokrotnych bić)
     private int lastJumpingPieceRow;   // Wiersz pionka, który ostatnio wykonał bicie
     private int lastJumpingPieceCol;   // Kolumna pionka, który ostatnio wykonał bicie
+    private final BoardState boardState; // Plansza, której klucz Zobrista uwzględnia stronę na ruchu (może być null)
     private static final Logger logger = new Logger(TurnManager.class);
 
     public TurnManager() {
+        this(null);
+    }
+
+    /**
+     * Tworzy managera tury powiązanego z planszą: każda zmiana strony na ruchu
+     * jest od razu uwzględniana w kluczu Zobrista tej planszy.
+     * @param boardState Plansza do powiadamiania o zmianie strony na ruchu.
+     */
+    public TurnManager(BoardState boardState) {
+        this.boardState = boardState;
         reset(); // Inicjalizacja stanu na początku gry
     }
 
@@ -27,6 +38,40 @@ public class TurnManager {
         this.jumpMadeThisTurn = false;
         this.lastJumpingPieceRow = -1;
         this.lastJumpingPieceCol = -1;
+        updateSideToMoveKey();
+    }
+
+    /**
+     * Kopiuje stan tury z innej instancji (bez logowania, używane przy cofaniu pozycji w analizie).
+     */
+    void copyFrom(TurnManager other) {
+        this.currentPlayer = other.currentPlayer;
+        this.jumpMadeThisTurn = other.jumpMadeThisTurn;
+        this.lastJumpingPieceRow = other.lastJumpingPieceRow;
+        this.lastJumpingPieceCol = other.lastJumpingPieceCol;
+        updateSideToMoveKey();
+    }
+
+    /**
+     * Ustawia pełny stan tury bez logowania (używane przez make/unmake w MoveExecutor
+     * oraz przy wczytywaniu migawki pozycji).
+     * @param player Gracz na ruchu.
+     * @param jumpMade Czy trwa kontynuacja bicia.
+     * @param row Wiersz pionka kontynuującego bicie lub -1.
+     * @param col Kolumna pionka kontynuującego bicie lub -1.
+     */
+    public void restore(PlayerColor player, boolean jumpMade, int row, int col) {
+        this.currentPlayer = player;
+        this.jumpMadeThisTurn = jumpMade;
+        this.lastJumpingPieceRow = row;
+        this.lastJumpingPieceCol = col;
+        updateSideToMoveKey();
+    }
+
+    private void updateSideToMoveKey() {
+        if (boardState != null) {
+            boardState.setSideToMove(currentPlayer);
+        }
     }
 
     public PlayerColor getCurrentPlayer() { return currentPlayer; }
@@ -38,6 +83,7 @@ public class TurnManager {
      */
     public void switchPlayer() {
         currentPlayer = (currentPlayer == PlayerColor.WHITE) ? PlayerColor.BLACK : PlayerColor.WHITE;
+        updateSideToMoveKey();
         this.jumpMadeThisTurn = false;
         this.lastJumpingPieceRow = -1;
         this.lastJumpingPieceCol = -1;
@@ -54,6 +100,7 @@ public class TurnManager {
         if (this.currentPlayer != player) {
             logger.info("Wymuszanie ustawienia tury z " + this.currentPlayer + " na " + player + " (np. przez serwer).");
             this.currentPlayer = player;
+            updateSideToMoveKey();
             // Jeśli tura jest wymuszana na innego gracza, a poprzedni był w trakcie bicia,
             // to ta sekwencja bicia jest przerywana.
             if (this.isJumpMadeThisTurn()) {
@@ -0,0 +1,71 @@
+package warcaby.gamelogic.boardcomponents;
+
+/**
+ * Losowe klucze do haszowania pozycji metodą Zobrista.
+ * Klucz pozycji to XOR kluczy wszystkich pionków (rodzaj x pole) oraz klucza strony na ruchu,
+ * więc każdy ruch, bicie i promocję można uwzględnić w kluczu w czasie O(1).
+ * Klucze są generowane ze stałego ziarna, dzięki czemu są takie same przy każdym uruchomieniu
+ * (np. dla plików z zapisanymi pozycjami).
+ */
+public final class Zobrist {
+    public static final int WHITE_MAN = 0;
+    public static final int WHITE_KING = 1;
+    public static final int BLACK_MAN = 2;
+    public static final int BLACK_KING = 3;
+
+    private static final long[] PIECE_KEYS = new long[4 * Bitboards.SQUARES];
+    public static final long BLACK_TO_MOVE;
+
+    static {
+        long seed = 0x5741524341425921L; // Stałe ziarno
+        for (int i = 0; i < PIECE_KEYS.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            PIECE_KEYS[i] = mix(seed);
+        }
+        seed += 0x9E3779B97F4A7C15L;
+        BLACK_TO_MOVE = mix(seed);
+    }
+
+    private Zobrist() {
+        throw new IllegalStateException("Klasa narzędziowa nie powinna być instancjonowana");
+    }
+
+    /**
+     * Zwraca klucz dla pionka danego rodzaju (WHITE_MAN ... BLACK_KING) na danym polu.
+     */
+    public static long pieceKey(int pieceKind, int square) {
+        return PIECE_KEYS[(pieceKind << 5) | square];
+    }
+
+    public static int pieceKind(boolean white, boolean king) {
+        return (white ? 0 : 2) | (king ? 1 : 0);
+    }
+
+    /**
+     * Liczy klucz pionków od zera na podstawie masek (używane przy ustawianiu całej pozycji).
+     */
+    public static long computePieceKey(int white, int black, int kings) {
+        long key = 0;
+        key ^= keyOfMask(white & ~kings, WHITE_MAN);
+        key ^= keyOfMask(white & kings, WHITE_KING);
+        key ^= keyOfMask(black & ~kings, BLACK_MAN);
+        key ^= keyOfMask(black & kings, BLACK_KING);
+        return key;
+    }
+
+    private static long keyOfMask(int mask, int pieceKind) {
+        long key = 0;
+        while (mask != 0) {
+            key ^= pieceKey(pieceKind, Integer.numberOfTrailingZeros(mask));
+            mask &= mask - 1;
+        }
+        return key;
+    }
+
+    // Funkcja mieszająca SplitMix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -2,18 +2,24 @@ package warcaby.gui;
 
 import warcaby.gamelogic.Board;
 import warcaby.ai.ComputerPlayer;
+import warcaby.ai.PositionAnalysis;
+import warcaby.ai.PositionAnalyzer;
 import warcaby.gamelogic.Piece;
 import warcaby.gamelogic.PieceType;
 import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.PositionSnapshot;
 import warcaby.gamelogic.boardcomponents.Move;
 import warcaby.gui.frame.CheckersFrame;
 import warcaby.network.CheckersClient;
+import warcaby.utils.GameConstants;
 import warcaby.utils.Logger;
 
 import javax.swing.JPanel;
 import javax.swing.JOptionPane;
 import javax.swing.Timer;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.SwingUtilities;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
@@ -28,6 +34,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 public class BoardPanel extends JPanel {
@@ -47,6 +54,7 @@ public class BoardPanel extends JPanel {
 
     private CheckersFrame mainFrame;
     private JButton surrenderButton;
+    private JCheckBox analysisToggle;
 
     private boolean isOnlineGameMode = false;
     private PlayerColor myOnlineColor = null;
@@ -55,7 +63,12 @@ public class BoardPanel extends JPanel {
     private boolean playingWithComputer = false;
     private ComputerPlayer computerAI;
     private PlayerColor computerColor = PlayerColor.BLACK;
-    private Timer computerMoveTimer;
+    private CompletableFuture<Move> pendingComputerMove; // Trwające obliczenie ruchu komputera lub null
+
+    private boolean analysisEnabled = GameConstants.AI_ANALYSIS_OVERLAY; // Podpowiedzi włączone przełącznikiem pod planszą
+    private PositionAnalyzer positionAnalyzer;   // Analiza w tle dla podpowiedzi (tworzona przy pierwszym użyciu)
+    private PositionSnapshot analyzedPosition;   // Pozycja zleconej analizy lub null
+    private PositionAnalysis currentAnalysis;    // Najnowszy wynik analizy bieżącej pozycji lub null; rysowany przez paintComponent
 
     public BoardPanel(Board board, InfoPanel infoPanel, CheckersFrame mainFrame) {
         this.gameBoard = board;
@@ -78,6 +91,7 @@ public class BoardPanel extends JPanel {
         this.myOnlineColor = myColor;
         if (isOnline) this.playingWithComputer = false;
         updateSurrenderButtonText();
+        getAnalysisToggle().setEnabled(!isOnline); // Podpowiedzi nie są dostępne w grze online
     }
 
     public void setComputerGameMode(boolean vsComputer) {
@@ -89,6 +103,7 @@ public class BoardPanel extends JPanel {
             }
             logger.info("BoardPanel: Tryb gry z komputerem włączony. Komputer gra jako " + computerColor);
         } else {
+            cancelComputerMove();
             logger.info("BoardPanel: Tryb gry z komputerem wyłączony.");
         }
         updateSurrenderButtonText();
@@ -126,13 +141,6 @@ public class BoardPanel extends JPanel {
         }
     }
 
-    private void initializeComputerMoveTimer() {
-        if (computerMoveTimer == null) {
-            computerMoveTimer = new Timer(1000, e -> executeComputerMove());
-            computerMoveTimer.setRepeats(false);
-        }
-    }
-
     public void startGameTime() {
         initializeTimer();
         if (gameTimer != null && !gameTimer.isRunning() && !isOnlineGameMode) {
@@ -162,6 +170,7 @@ public class BoardPanel extends JPanel {
     }
 
     public void updateMandatoryJumpStatus() {
+        refreshAnalysis(); // Wywoływane po każdej zmianie pozycji; w grze online analiza tylko się zatrzymuje
         if ((isOnlineGameMode && myOnlineColor == null) || gameBoard.getWinner() != null) {
             mandatoryJumpExistsForCurrentPlayer = false;
             return;
@@ -181,6 +190,70 @@ public class BoardPanel extends JPanel {
         }
     }
 
+    /**
+     * Zleca analizę w tle, jeśli pozycja na planszy zmieniła się od ostatniego zlecenia. Nie czeka na wynik:
+     * kolejne wyniki trafiają do wątku Swing i odświeżają nakładkę z podpowiedzią. Włączone podpowiedzi
+     * zastępują myślenie komputera na czasie gracza, więc oba przeszukiwania nie dzielą procesora.
+     */
+    private void refreshAnalysis() {
+        boolean analysisWanted = analysisEnabled && !isOnlineGameMode && gameBoard.getWinner() == null
+                && !(playingWithComputer && gameBoard.getCurrentPlayer() == computerColor);
+        if (!analysisWanted) {
+            stopAnalysis();
+            return;
+        }
+        PositionSnapshot position = gameBoard.snapshot();
+        if (position.equals(analyzedPosition)) {
+            return;
+        }
+        if (positionAnalyzer == null) {
+            positionAnalyzer = new PositionAnalyzer();
+        }
+        analyzedPosition = position;
+        currentAnalysis = null;
+        positionAnalyzer.analyze(position, analysis -> SwingUtilities.invokeLater(() -> {
+            if (analysis.getPosition() == analyzedPosition) { // Wynik dla starej pozycji jest pomijany
+                currentAnalysis = analysis;
+                repaint();
+            }
+        }));
+    }
+
+    private void stopAnalysis() {
+        if (positionAnalyzer != null) {
+            positionAnalyzer.cancel();
+        }
+        if (currentAnalysis != null) {
+            repaint();
+        }
+        analyzedPosition = null;
+        currentAnalysis = null;
+    }
+
+    private void setAnalysisEnabled(boolean enabled) {
+        analysisEnabled = enabled;
+        if (enabled) {
+            if (computerAI != null) {
+                computerAI.stopPondering();
+            }
+            refreshAnalysis();
+        } else {
+            stopAnalysis();
+            startPonderingIfWanted();
+        }
+    }
+
+    /**
+     * Zaczyna myślenie komputera na czasie gracza, jeśli gracz jest na początku tury, a podpowiedzi są wyłączone.
+     */
+    private void startPonderingIfWanted() {
+        if (GameConstants.AI_PONDER && !analysisEnabled && playingWithComputer && computerAI != null
+                && gameBoard.getWinner() == null && gameBoard.getCurrentPlayer() != computerColor
+                && !gameBoard.isJumpMadeThisTurn()) {
+            computerAI.startPondering(gameBoard); // Komputer myśli, zanim gracz wykona ruch
+        }
+    }
+
     private void handleSurrender() {
         if (isOnlineGameMode) {
             if (gameBoard.getWinner() != null && gameBoard.forcedWinner == null) {
@@ -215,6 +288,8 @@ public class BoardPanel extends JPanel {
                 JOptionPane.QUESTION_MESSAGE);
 
         if (response == JOptionPane.YES_OPTION) {
+            cancelComputerMove();
+            stopAnalysis();
             stopGameTime();
             gameBoard.surrenderGame();
             showGameOverDialog(gameBoard.getWinner());
@@ -356,8 +431,7 @@ public class BoardPanel extends JPanel {
             repaint();
 
             if (playingWithComputer && gameBoard.getCurrentPlayer() == computerColor && gameBoard.getWinner() == null) {
-                if (computerMoveTimer.isRunning()) computerMoveTimer.restart();
-                else computerMoveTimer.start();
+                scheduleComputerMove();
             } else if (!isOnlineGameMode) {
                 PlayerColor winner = gameBoard.getWinner();
                 if (winner != null) {
@@ -371,15 +445,51 @@ public class BoardPanel extends JPanel {
         }
     }
 
-    private void executeComputerMove() {
+    /**
+     * Zleca komputerowi obliczenie ruchu w tle. Wątek Swing nie jest blokowany: ruch zostanie
+     * wykonany na planszy (w wątku Swing) dopiero po zakończeniu obliczeń, czyli po faktycznym
+     * czasie namysłu, najwyżej GameConstants.AI_TIME_LIMIT_MS.
+     */
+    private void scheduleComputerMove() {
+        if (!playingWithComputer || computerAI == null || gameBoard.getCurrentPlayer() != computerColor || gameBoard.getWinner() != null) {
+            cancelComputerMove();
+            return;
+        }
+        pendingComputerMove = null; // Poprzednie obliczenie anuluje getComputerMoveAsync, które przejmuje też myślenie na czasie gracza
+        logger.info("Komputer (" + computerColor + ") oblicza ruch...");
+        CompletableFuture<Move> request = computerAI.getComputerMoveAsync(gameBoard);
+        pendingComputerMove = request;
+        request.whenComplete((move, error) -> SwingUtilities.invokeLater(() -> {
+            if (pendingComputerMove != request || request.isCancelled()) {
+                return; // Obliczenie anulowane (nowa gra, poddanie) albo już nieaktualne
+            }
+            pendingComputerMove = null;
+            if (error != null) {
+                logger.error("Błąd podczas obliczania ruchu komputera.", error);
+                return;
+            }
+            executeComputerMove(move);
+        }));
+    }
+
+    /**
+     * Przerywa trwające obliczanie ruchu komputera (także na czasie gracza); jego wynik zostanie zignorowany.
+     */
+    private void cancelComputerMove() {
+        pendingComputerMove = null;
+        if (computerAI != null) {
+            computerAI.cancelPendingMove();
+            computerAI.stopPondering();
+        }
+    }
+
+    private void executeComputerMove(Move computerMove) {
         if (!playingWithComputer || gameBoard.getCurrentPlayer() != computerColor || gameBoard.getWinner() != null) {
             return;
         }
-        logger.info("Komputer (" + computerColor + ") wykonuje ruch...");
-        Move computerMove = computerAI.getComputerMove(gameBoard);
 
         if (computerMove != null) {
-            boolean success = gameBoard.makeMove(computerMove.fromRow, computerMove.fromCol, computerMove.toRow, computerMove.toCol);
+            boolean success = gameBoard.makeMove(computerMove); // Cała sekwencja bić wykonywana jest naraz
             if (success) {
                 logger.info("Komputer wykonał ruch: " + computerMove);
                 boolean canComputerJumpAgain = gameBoard.isJumpMadeThisTurn() &&
@@ -389,8 +499,7 @@ public class BoardPanel extends JPanel {
 
                 if (canComputerJumpAgain) {
                     logger.info("Komputer kontynuuje bicie.");
-                    if (computerMoveTimer.isRunning()) computerMoveTimer.restart();
-                    else computerMoveTimer.start();
+                    scheduleComputerMove();
                 } else {
                     logger.info("Komputer zakończył turę. Nowa tura: " + gameBoard.getCurrentPlayer());
                     switchPlayerTime();
@@ -411,22 +520,20 @@ public class BoardPanel extends JPanel {
         PlayerColor winner = gameBoard.getWinner();
         if (winner != null) {
             stopGameTime();
-            if(computerMoveTimer.isRunning()) computerMoveTimer.stop();
             showGameOverDialog(winner);
+        } else {
+            startPonderingIfWanted();
         }
     }
 
     public void resetGame() {
         initializeTimer();
-        initializeComputerMoveTimer();
         if (computerAI == null && playingWithComputer) {
             computerAI = new ComputerPlayer(computerColor);
         }
 
         stopGameTime();
-        if (computerMoveTimer != null && computerMoveTimer.isRunning()) {
-            computerMoveTimer.stop();
-        }
+        cancelComputerMove();
         gameBoard.initializeBoard();
         deselectPiece();
         whitePlayerTimeSeconds = 0;
@@ -443,7 +550,7 @@ public class BoardPanel extends JPanel {
                 infoPanel.updatePlayerInfo(computerColor);
                 infoPanel.updateWhiteTime(0);
                 infoPanel.updateBlackTime(0);
-                if (computerMoveTimer.isRunning()) computerMoveTimer.restart(); else computerMoveTimer.start();
+                scheduleComputerMove();
             }
         } else {
             infoPanel.updateWhiteTime(0);
@@ -509,6 +616,16 @@ public class BoardPanel extends JPanel {
         return surrenderButton;
     }
 
+    public JCheckBox getAnalysisToggle() {
+        if (analysisToggle == null) {
+            analysisToggle = new JCheckBox("Podpowiedzi", analysisEnabled);
+            analysisToggle.setFont(new Font("Arial", Font.PLAIN, 12));
+            analysisToggle.setFocusPainted(false);
+            analysisToggle.addActionListener(e -> setAnalysisEnabled(analysisToggle.isSelected()));
+        }
+        return analysisToggle;
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
@@ -517,6 +634,15 @@ public class BoardPanel extends JPanel {
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
 
+        // Ruchy do podświetlenia obowiązkowych bić są generowane raz na całe rysowanie, a nie dla każdego pola
+        PlayerColor playerForHighlight = gameBoard.getCurrentPlayer();
+        List<Move> allPlayerMoves = null;
+        if (!(isOnlineGameMode && playerForHighlight != myOnlineColor) && playerForHighlight != null && selectedRow == -1
+                && mandatoryJumpExistsForCurrentPlayer && !gameBoard.isJumpMadeThisTurn()) {
+            allPlayerMoves = gameBoard.getAllValidMovesForPlayer(playerForHighlight);
+        }
+        PositionAnalysis analysis = currentAnalysis;
+
         for (int loopRow = 0; loopRow < Board.SIZE; loopRow++) {
             for (int loopCol = 0; loopCol < Board.SIZE; loopCol++) {
                 if ((loopRow + loopCol) % 2 == 0) {
@@ -526,20 +652,14 @@ public class BoardPanel extends JPanel {
                 }
                 g2d.fillRect(loopCol * SQUARE_SIZE, loopRow * SQUARE_SIZE, SQUARE_SIZE, SQUARE_SIZE);
 
-                PlayerColor playerForHighlight = gameBoard.getCurrentPlayer();
-                if (isOnlineGameMode && playerForHighlight != myOnlineColor) {
-                    // Nie podświetlaj
-                } else if (playerForHighlight != null && selectedRow == -1 && mandatoryJumpExistsForCurrentPlayer && !gameBoard.isJumpMadeThisTurn()) {
+                if (allPlayerMoves != null) {
                     Piece p = gameBoard.getPiece(loopRow, loopCol);
                     if (p != null && p.getColor() == playerForHighlight) {
                         boolean canThisPieceJump = false;
-                        List<Move> allPlayerMoves = gameBoard.getAllValidMovesForPlayer(playerForHighlight);
-                        if (allPlayerMoves != null) {
-                            for(Move currentMove : allPlayerMoves) {
-                                if (currentMove.fromRow == loopRow && currentMove.fromCol == loopCol && currentMove.isJump) {
-                                    canThisPieceJump = true;
-                                    break;
-                                }
+                        for(Move currentMove : allPlayerMoves) {
+                            if (currentMove.fromRow == loopRow && currentMove.fromCol == loopCol && currentMove.isJump) {
+                                canThisPieceJump = true;
+                                break;
                             }
                         }
                         if (canThisPieceJump) {
@@ -605,5 +725,56 @@ public class BoardPanel extends JPanel {
                 }
             }
         }
+
+        if (analysis != null) {
+            paintAnalysisOverlay(g2d, analysis);
+        }
+    }
+
+    /**
+     * Rysuje nakładkę analizy: czerwone obwódki pionków zagrożonych biciem, strzałkę podpowiadanego
+     * ruchu (skok po skoku) i ocenę pozycji. Korzysta tylko z gotowego wyniku analizy, niczego nie liczy.
+     */
+    private void paintAnalysisOverlay(Graphics2D g2d, PositionAnalysis analysis) {
+        int pieceDiameter = (int) (SQUARE_SIZE * 0.80);
+        int margin = (SQUARE_SIZE - pieceDiameter) / 2;
+        g2d.setColor(new Color(220, 0, 0, 200));
+        g2d.setStroke(new BasicStroke(3));
+        for (int row = 0; row < Board.SIZE; row++) {
+            for (int col = 0; col < Board.SIZE; col++) {
+                if (analysis.isThreatened(row, col)) {
+                    g2d.drawOval(col * SQUARE_SIZE + margin - 2, row * SQUARE_SIZE + margin - 2, pieceDiameter + 4, pieceDiameter + 4);
+                }
+            }
+        }
+
+        Move hint = analysis.getBestMove();
+        if (hint == null) {
+            return;
+        }
+        g2d.setColor(new Color(30, 110, 255, 170));
+        g2d.setStroke(new BasicStroke(5, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        for (int i = 0; i < hint.getHopCount(); i++) {
+            Move hop = hint.getHop(i);
+            g2d.drawLine(hop.fromCol * SQUARE_SIZE + SQUARE_SIZE / 2, hop.fromRow * SQUARE_SIZE + SQUARE_SIZE / 2,
+                    hop.toCol * SQUARE_SIZE + SQUARE_SIZE / 2, hop.toRow * SQUARE_SIZE + SQUARE_SIZE / 2);
+        }
+        Move lastHop = hint.getHop(hint.getHopCount() - 1);
+        g2d.fillOval(lastHop.toCol * SQUARE_SIZE + SQUARE_SIZE / 2 - 9, lastHop.toRow * SQUARE_SIZE + SQUARE_SIZE / 2 - 9, 18, 18);
+
+        String label = "Podpowiedź: " + hint + "  " + formatAnalysisScore(analysis) + "  (gł. " + analysis.getDepth() + ")";
+        g2d.setFont(new Font("Arial", Font.BOLD, 12));
+        FontMetrics fm = g2d.getFontMetrics();
+        g2d.setColor(new Color(0, 0, 0, 150));
+        g2d.fillRect(0, 0, fm.stringWidth(label) + 10, fm.getHeight() + 4);
+        g2d.setColor(Color.WHITE);
+        g2d.drawString(label, 5, fm.getAscent() + 2);
+    }
+
+    private static String formatAnalysisScore(PositionAnalysis analysis) {
+        if (analysis.isDecisive()) {
+            return analysis.getScore() > 0 ? "wygrana" : "przegrana";
+        }
+        return String.format("%+.2f", analysis.getScore() / 100.0);
     }
 }
\ No newline at end of file
@@ -68,7 +68,10 @@ public class CheckersFrame extends JFrame {
         JPanel gameScreenPanel = new JPanel(new BorderLayout());
         gameScreenPanel.add(infoPanel, BorderLayout.NORTH);
         gameScreenPanel.add(boardPanel, BorderLayout.CENTER);
-        gameScreenPanel.add(boardPanel.getSurrenderButton(), BorderLayout.SOUTH); // Przycisk jest częścią BoardPanel
+        JPanel gameControlsPanel = new JPanel(new BorderLayout());
+        gameControlsPanel.add(boardPanel.getAnalysisToggle(), BorderLayout.WEST); // Przełącznik podpowiedzi
+        gameControlsPanel.add(boardPanel.getSurrenderButton(), BorderLayout.CENTER); // Przycisk jest częścią BoardPanel
+        gameScreenPanel.add(gameControlsPanel, BorderLayout.SOUTH);
 
         // Dodawanie głównych widoków (kart) do managera widoków
         viewManager.addView(startMenuPanel, FrameViewManager.MENU_PANEL_ID);
@@ -1,7 +1,12 @@
 package warcaby.network;
 
+import warcaby.ai.BotEnginePool;
+import warcaby.ai.EndgameTablebase;
+import warcaby.ai.OpeningBook;
 import warcaby.gamelogic.Board;
 import warcaby.gamelogic.PlayerColor;
+import warcaby.gamelogic.PositionSnapshot;
+import warcaby.gamelogic.boardcomponents.Move;
 import warcaby.utils.GameConstants;
 import warcaby.utils.Logger;
 
@@ -12,11 +17,18 @@ import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Random;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -29,6 +41,16 @@ public class Server {
 
     private static final Map<String, ClientHandler> waitingPlayers = new ConcurrentHashMap<>();
     private static final Map<String, GameSession> activeGameSessions = new ConcurrentHashMap<>();
+    // Baza końcówek (lub null) do kończenia partii remisowych; wspólna dla wszystkich sesji
+    private static final EndgameTablebase tablebase = EndgameTablebase.openIfExists(Paths.get(GameConstants.AI_TABLEBASE));
+    // Przeciwnicy komputerowi: wspólna pula silników wszystkich botów i licznik trwających partii z botami
+    private static final BotEnginePool botEngines = createBotEngines();
+    private static final AtomicInteger activeBotGames = new AtomicInteger();
+    private static final ScheduledExecutorService matchmakingScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "warcaby-matchmaking");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public static void main(String[] args) {
         logger.info("Serwer warcabów uruchamiany na porcie " + PORT + "...");
@@ -49,10 +71,63 @@ public class Server {
             logger.error("Nie można uruchomić serwera na porcie " + PORT + ": " + e.getMessage(), e);
         } finally {
             clientProcessingPool.shutdown();
+            matchmakingScheduler.shutdownNow();
+            botEngines.shutdown();
             logger.info("Serwer zakończył działanie.");
         }
     }
 
+    private static BotEnginePool createBotEngines() {
+        BotEnginePool pool = new BotEnginePool(GameConstants.SERVER_BOT_THREADS, GameConstants.SERVER_BOT_HASH_SIZE_MB,
+                GameConstants.SERVER_BOT_MOVE_TIME_MS, GameConstants.SERVER_BOT_NODES_PER_MOVE, GameConstants.SERVER_BOT_CPU_BUDGET_MS);
+        pool.setTablebase(tablebase);
+        pool.setOpeningBook(OpeningBook.openIfExists(Paths.get(GameConstants.AI_OPENING_BOOK)));
+        return pool;
+    }
+
+    /**
+     * Planuje dobranie bota graczowi, który od {@link GameConstants#SERVER_BOT_MATCH_TIMEOUT_MS} czeka w kolejce.
+     * @param searchRequestId Numer wyszukiwania gracza; po anulowaniu i ponownym wyszukiwaniu stare zadanie nic nie robi.
+     */
+    private static void scheduleBotMatch(ClientHandler player, int searchRequestId) {
+        matchmakingScheduler.schedule(() -> offerBotOpponent(player, searchRequestId),
+                GameConstants.SERVER_BOT_MATCH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Jeśli gracz wciąż czeka na przeciwnika, zdejmuje go z kolejki i rozpoczyna jego partię z botem.
+     * Gdy limit równoczesnych partii z botami jest wyczerpany, gracz czeka dalej (na człowieka lub wolnego bota).
+     */
+    private static void offerBotOpponent(ClientHandler player, int searchRequestId) {
+        synchronized (waitingPlayers) {
+            synchronized (player.stateLock) {
+                if (!player.isSearching || player.searchRequestId != searchRequestId || player.currentSession != null
+                        || !player.isClientConnected()) {
+                    return;
+                }
+                if (activeBotGames.get() >= GameConstants.SERVER_MAX_BOT_GAMES) {
+                    logger.info("Klient " + player.playerId + ": Brak wolnego bota (" + activeBotGames.get() + " partii z botami), nadal czeka.");
+                    scheduleBotMatch(player, searchRequestId);
+                    return;
+                }
+                if (!waitingPlayers.remove(player.playerId, player)) {
+                    return;
+                }
+                player.isSearching = false;
+                activeBotGames.incrementAndGet();
+            }
+
+            BotHandler bot = new BotHandler(botEngines.newBot());
+            logger.info("Parowanie gracza " + player.playerId + " z botem " + bot.getPlayerId() + " (brak przeciwnika po "
+                    + GameConstants.SERVER_BOT_MATCH_TIMEOUT_MS + " ms).");
+            GameSession newSession = new GameSession(player, bot);
+            activeGameSessions.put(newSession.getSessionId(), newSession);
+            player.setCurrentSession(newSession);
+            bot.setCurrentSession(newSession);
+            newSession.startGame();
+        }
+    }
+
     private static class ClientHandler implements Runnable {
         private final Socket clientSocket;
         private PrintWriter out;
@@ -61,11 +136,16 @@ public class Server {
         private volatile GameSession currentSession = null;
         private volatile boolean isSearching = false;
         private volatile boolean isConnected = false;
+        private int searchRequestId = 0; // Numer bieżącego wyszukiwania gry (chroniony przez stateLock)
         private final Object stateLock = new Object();
 
         public ClientHandler(Socket socket) {
+            this(socket, UUID.randomUUID().toString());
+        }
+
+        protected ClientHandler(Socket socket, String playerId) {
             this.clientSocket = socket;
-            this.playerId = UUID.randomUUID().toString();
+            this.playerId = playerId;
         }
 
         @Override
@@ -148,6 +228,7 @@ public class Server {
                     return;
                 }
                 isSearching = true;
+                searchRequestId++;
                 logger.info("Klient " + playerId + " ustawił isSearching=true.");
             }
             tryToPair();
@@ -218,6 +299,7 @@ public class Server {
                     if (this.isSearching && this.currentSession == null && this.isConnected) {
                         if (!waitingPlayers.containsKey(this.playerId)) {
                             waitingPlayers.put(this.playerId, this);
+                            scheduleBotMatch(this, searchRequestId);
                         }
                         sendMessage(NetworkProtocol.RSP_WAITING);
                         logger.info("Klient " + playerId + " dodany/pozostaje w kolejce oczekujących.");
@@ -286,6 +368,122 @@ public class Server {
         public boolean isClientConnected() { return isConnected && clientSocket != null && !clientSocket.isClosed(); }
     }
 
+    /**
+     * Przeciwnik komputerowy w sesji gry. Dla sesji wygląda jak klient: dostaje te same komunikaty co
+     * człowiek, a swój ruch przekazuje przez {@link GameSession#forwardMove} skok po skoku, tak jak klient.
+     * Ruchy liczy wspólna pula {@link BotEnginePool}, więc bot nie ma własnych wątków.
+     */
+    private static class BotHandler extends ClientHandler {
+        private final BotEnginePool.Bot bot;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        BotHandler(BotEnginePool.Bot bot) {
+            super(null, "bot-" + UUID.randomUUID());
+            this.bot = bot;
+        }
+
+        @Override
+        public void sendMessage(String message) {
+            String[] parts = NetworkProtocol.parseMessage(message);
+            switch (parts[0]) {
+                case NetworkProtocol.RSP_GAME_STARTED:
+                case NetworkProtocol.RSP_OPPONENT_MOVE:
+                case NetworkProtocol.RSP_OPPONENT_CAPTURE_CONTINUED:
+                    requestMoveIfOnTurn();
+                    break;
+                case NetworkProtocol.RSP_OPPONENT_QUIT:
+                case NetworkProtocol.RSP_SESSION_ENDED:
+                    release();
+                    break;
+                case NetworkProtocol.RSP_ERROR:
+                    logger.warning("Bot " + getPlayerId() + ": Serwer odrzucił ruch: " + parts[1]);
+                    break;
+                default:
+                    break; // GAME_FOUND, TIME_UPDATE: bot nie potrzebuje tych informacji
+            }
+        }
+
+        @Override
+        public void setCurrentSession(GameSession session) {
+            super.setCurrentSession(session);
+            if (session == null) {
+                release();
+            }
+        }
+
+        @Override
+        public boolean isClientConnected() {
+            return !released.get();
+        }
+
+        /**
+         * Zleca obliczenie ruchu, jeśli w partii jest tura bota (po zakończonej turze przeciwnika).
+         */
+        private void requestMoveIfOnTurn() {
+            GameSession session = getCurrentSession();
+            if (session == null || released.get()) {
+                return;
+            }
+            PositionSnapshot position = snapshotIfOnTurn(session, true);
+            if (position == null) {
+                return;
+            }
+            CompletableFuture<Move> futureMove = bot.requestMove(position);
+            // Ruch z książki jest gotowy od razu, więc zawsze jest zagrywany w osobnym wątku, po bieżącej wiadomości
+            futureMove.whenCompleteAsync((move, error) -> playMove(session, move, error), matchmakingScheduler);
+        }
+
+        private void playMove(GameSession session, Move move, Throwable error) {
+            if (error != null) {
+                if (!(error instanceof CancellationException)) {
+                    logger.error("Bot " + getPlayerId() + ": Błąd obliczania ruchu.", error);
+                }
+                return;
+            }
+            if (move == null || released.get() || getCurrentSession() != session) {
+                return;
+            }
+            for (int i = 0; i < move.getHopCount(); i++) {
+                Move hop = move.getHop(i);
+                String moveData = hop.fromCol + "," + hop.fromRow + "->" + hop.toCol + "," + hop.toRow;
+                session.forwardMove(this, i == 0 ? NetworkProtocol.CMD_MOVE : NetworkProtocol.CMD_CAPTURE_CONTINUED, moveData);
+            }
+            if (GameConstants.SERVER_BOT_PONDER && !released.get()) {
+                PositionSnapshot position = snapshotIfOnTurn(session, false);
+                if (position != null) {
+                    bot.startPondering(position); // Bot myśli, zanim przeciwnik odpowie
+                }
+            }
+        }
+
+        /**
+         * Zwraca pozycję sesji, jeśli partia trwa, a na ruchu jest bot ({@code botTurn}) albo jego przeciwnik.
+         */
+        private PositionSnapshot snapshotIfOnTurn(GameSession session, boolean botTurn) {
+            synchronized (session) {
+                PlayerColor botColor = (session.whitePlayer == this) ? PlayerColor.WHITE : PlayerColor.BLACK;
+                if (!session.gameInProgress || (session.serverSideBoard.getCurrentPlayer() == botColor) != botTurn
+                        || session.serverSideBoard.getWinner() != null) {
+                    return null;
+                }
+                return session.serverSideBoard.snapshot();
+            }
+        }
+
+        /**
+         * Kończy udział bota w partii: przerywa obliczenia i zwalnia miejsce w limicie partii z botami.
+         */
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                bot.cancel();
+                activeBotGames.decrementAndGet();
+                logger.info("Bot " + getPlayerId() + " zakończył partię (czas procesora " + bot.getCpuMillis() + " ms"
+                        + ", trafione przewidywania " + bot.getPonderHits() + "/" + (bot.getPonderHits() + bot.getPonderMisses())
+                        + (bot.isBudgetExhausted() ? ", budżet wyczerpany" : "") + ").");
+            }
+        }
+    }
+
     private static class GameSession {
         private final String sessionId;
         private final ClientHandler player1;
@@ -356,7 +554,10 @@ public class Server {
                         }
                     }
                     logger.info("Sesja " + sessionId + ": Wysyłanie RSP_GAME_STARTED.");
-                    broadcastMessage(NetworkProtocol.RSP_GAME_STARTED);
+                    synchronized (GameSession.this) {
+                        // Pod blokadą sesji: ruch bota (forwardMove) nie wyprzedzi wiadomości o starcie u drugiego gracza
+                        broadcastMessage(NetworkProtocol.RSP_GAME_STARTED);
+                    }
                     startServerSideTimer();
                     sendTimeUpdateToPlayers();
                 }
@@ -443,11 +644,27 @@ public class Server {
                 }
                 logger.info("Sesja " + sessionId + ": Koniec gry! " + winnerMsg);
                 broadcastMessage(NetworkProtocol.createMessage(NetworkProtocol.RSP_SESSION_ENDED, winnerMsg));
+            } else if (hasBot() && isTablebaseDraw()) {
+                // Końcówka remisowa z botem: bez tego partia damek mogłaby trwać bez końca. Partie dwóch ludzi toczą się dalej.
+                gameInProgress = false;
+                if (gameLogicTimer != null) gameLogicTimer.cancel();
+
+                String drawMsg = "REMIS! Pozycja jest remisowa według bazy końcówek.";
+                logger.info("Sesja " + sessionId + ": Koniec gry! " + drawMsg);
+                broadcastMessage(NetworkProtocol.createMessage(NetworkProtocol.RSP_SESSION_ENDED, drawMsg));
             } else {
                 sendTimeUpdateToPlayers();
             }
         }
 
+        private boolean hasBot() {
+            return whitePlayer instanceof BotHandler || blackPlayer instanceof BotHandler;
+        }
+
+        private boolean isTablebaseDraw() {
+            return tablebase != null && tablebase.probe(serverSideBoard.snapshot()) == EndgameTablebase.DRAW;
+        }
+
         public synchronized void sendTimeUpdateToPlayers() {
             if (!gameInProgress && serverSideBoard.getWinner() == null) {
                 return;
@@ -12,8 +12,33 @@ public class GameConstants {
     public static final int CONNECT_TIMEOUT = 5000;
     public static final int DISCONNECT_WAIT_TIME = 300;
 
+    // --- Przeciwnicy komputerowi na serwerze ---
+    public static final long SERVER_BOT_MATCH_TIMEOUT_MS = 15000; // Po tym czasie bez przeciwnika-człowieka gracz dostaje bota
+    public static final int SERVER_MAX_BOT_GAMES = 500;           // Największa liczba równoczesnych partii z botami
+    public static final int SERVER_BOT_THREADS = 0;               // Wątki wspólnej puli silników botów (0 = połowa rdzeni)
+    public static final int SERVER_BOT_HASH_SIZE_MB = 64;         // Wspólna tablica transpozycji wszystkich botów
+    public static final long SERVER_BOT_MOVE_TIME_MS = 1000;      // Limit czasu na ruch bota
+    public static final long SERVER_BOT_NODES_PER_MOVE = 300_000; // Limit węzłów na ruch bota
+    public static final long SERVER_BOT_CPU_BUDGET_MS = 30_000;   // Czas procesora bota na całą partię
+    public static final boolean SERVER_BOT_PONDER = true;         // Boty myślą na czasie przeciwnika (w ramach budżetu partii)
+
     // --- Stałe Logiki Gry ---
     // public static final int BOARD_SIZE_LOGIC = 8; // Lepiej używać Board.SIZE lub BoardState.SIZE
+    public static final boolean MAXIMUM_CAPTURE_RULE = true; // Obowiązek bicia największej możliwej liczby pionków
+
+    // --- Stałe AI ---
+    public static final long AI_TIME_LIMIT_MS = 500; // Maksymalny czas namysłu komputera na jeden ruch (siła gry)
+    public static final int AI_MAX_DEPTH = 64;       // Maksymalna głębokość przeszukiwania (w pełnych ruchach)
+    public static final int AI_HASH_SIZE_MB = 16;    // Rozmiar tablicy transpozycji silnika
+    public static final int AI_THREADS = 0;          // Liczba wątków przeszukiwania (0 = wszystkie rdzenie)
+    public static final String AI_OPENING_BOOK = "warcaby-book.bin"; // Książka debiutowa (używana, jeśli plik istnieje)
+    public static final String AI_TABLEBASE = "warcaby-tb.bin";      // Baza końcówek (używana, jeśli plik istnieje)
+    public static final String AI_EVALUATION_WEIGHTS = "warcaby-weights.txt"; // Dostrojone wagi oceny (używane, jeśli plik istnieje)
+    public static final int AI_MCTS_TREE_SIZE_MB = 64; // Rozmiar puli węzłów drzewa silnika MCTS
+    public static final boolean AI_PONDER = true;    // Komputer myśli także na czasie przeciwnika
+    public static final boolean AI_ANALYSIS_OVERLAY = false; // Domyślny stan przełącznika podpowiedzi pod planszą (poza grą online)
+    public static final long AI_ANALYSIS_TIME_MS = 10000;   // Czas analizy jednej pozycji dla podpowiedzi
+    public static final int AI_ANALYSIS_HASH_SIZE_MB = 16;  // Tablica transpozycji analizy
 
     // --- Stałe GUI (jeśli chcesz je scentralizować) ---
     // public static final int SQUARE_SIZE_GUI = 70;